@@ -1,29 +1,39 @@
 package enigma;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Alphabets are immutable, so
+ *  one may be shared freely between threads.
  *  @author Bon Hee Koo
  */
 class Alphabet {
     /** _Chars. */
-    private String _characterstring;
+    private final String _characterstring;
     /** _Char. */
-    private char[] _char;
-    /** Check outcome. */
-    private boolean outcome = true;
+    private final char[] _char;
+    /** Code point of each character. */
+    private final int[] _symbols;
+    /** Index of each character. */
+    private final SymbolIndex _index;
     /** A new alphabet containing CHARS.  Character number #k has index
-     K (numbering from 0). No character may be duplicated. */
+     K (numbering from 0). No character may be duplicated, and each must
+     lie in the Basic Multilingual Plane, since messages are converted a
+     char at a time. */
     Alphabet(String chars) {
-        int p = -2;
         _characterstring = chars;
-        _char = new char[chars.length()];
+        _symbols = chars.codePoints().toArray();
+        _char = new char[_symbols.length];
         int i = 0;
-        while (i < chars.length()) {
-            if (i > p) {
-                _char[i] = chars.charAt(i);
-                i++;
+        while (i < _symbols.length) {
+            if (!Character.isBmpCodePoint(_symbols[i])
+                || Character.isSurrogate((char) _symbols[i])) {
+                throw EnigmaException.error(
+                    "character U+%04X is outside the Basic Multilingual "
+                    + "Plane", _symbols[i]);
             }
+            _char[i] = (char) _symbols[i];
+            i++;
         }
+        _index = new SymbolIndex(_symbols);
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -37,16 +47,7 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        outcome = false;
-        int i = 1;
-        while (i < _characterstring.length() + 1) {
-            if (i >= 1
-                    && _characterstring.charAt(i - 1) != ch) {
-                outcome = true;
-            }
-            i++;
-        }
-        return outcome;
+        return _index.get(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -57,16 +58,52 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        int i = 0;
-        while (i < size()) {
-            if (ch == _char[i]) {
-                return i;
-            }
-            if (ch != _char[i]) {
-                i++;
+        int i = _index.get(ch);
+        if (i < 0) {
+            throw EnigmaException.error("No character found");
+        }
+        return i;
+    }
+
+    /** Returns the code point of character number INDEX. */
+    int toCodePoint(int index) {
+        return _symbols[index];
+    }
+
+    /** Returns the index of code point CP, or -1 if it is not in this
+     *  alphabet. */
+    int indexOf(int cp) {
+        return _index.get(cp);
+    }
+
+    /** Returns the characters of this alphabet, in order. */
+    String chars() {
+        return _characterstring;
+    }
+
+    /** Returns true iff this is the alphabet of byte values, whose
+     *  character number K is (char) K for each 0 <= K < BYTES. */
+    boolean isBytes() {
+        if (size() != BYTES) {
+            return false;
+        }
+        for (int k = 0; k < BYTES; k += 1) {
+            if (_symbols[k] != k) {
+                return false;
             }
         }
-        throw EnigmaException.error("No character found");
+        return true;
     }
-}
 
+    /** Returns the alphabet of byte values (see isBytes). */
+    static Alphabet bytes() {
+        char[] chars = new char[BYTES];
+        for (int k = 0; k < BYTES; k += 1) {
+            chars[k] = (char) k;
+        }
+        return new Alphabet(new String(chars));
+    }
+
+    /** Number of byte values. */
+    static final int BYTES = 256;
+}
@@ -0,0 +1,84 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Bon Hee Koo
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Check that ALPHA maps each character of CHARS to its index and
+     *  back, and does not contain any character of OTHERS. */
+    private void checkAlphabet(Alphabet alpha, String chars, String others) {
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            assertTrue(alpha.contains(c));
+            assertEquals(i, alpha.toInt(c));
+            assertEquals(c, alpha.toChar(i));
+        }
+        for (int i = 0; i < others.length(); i += 1) {
+            assertFalse(alpha.contains(others.charAt(i)));
+        }
+    }
+
+    @Test
+    public void checkUpper() {
+        checkAlphabet(UPPER, UPPER_STRING, "az09 _()");
+    }
+
+    @Test
+    public void checkSparse() {
+        String chars = "A\u00e9\u03a9\u4e2d\uff21z";
+        checkAlphabet(new Alphabet(chars), chars, "BZ\u00e8\u4e2e");
+    }
+
+    @Test
+    public void checkHighBmp() {
+        String chars = "A\u4e00B\uf600\ufffd";
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(5, alpha.size());
+        assertEquals(1, alpha.indexOf(0x4e00));
+        assertEquals(0xfffd, alpha.toCodePoint(4));
+        assertEquals(-1, alpha.indexOf(0x4e01));
+        assertEquals(2, alpha.toInt('B'));
+        for (int i = 0; i < alpha.size(); i += 1) {
+            assertEquals(i, alpha.toInt(alpha.toChar(i)));
+            assertEquals(chars.charAt(i), alpha.toChar(i));
+        }
+        assertFalse(alpha.contains('\uf601'));
+        Permutation p = new Permutation("(A\u4e00\ufffd)", alpha);
+        assertEquals(1, p.permute(0));
+        assertEquals(4, p.permute(1));
+        assertEquals(2, p.permute(2));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkSupplementary() {
+        new Alphabet("A\ud83d\ude00\uf600");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkLoneSurrogate() {
+        new Alphabet("A\ud83d");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkMissing() {
+        UPPER.toInt('a');
+    }
+}
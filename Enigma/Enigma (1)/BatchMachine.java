@@ -0,0 +1,355 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A batch of independent machines (lanes) that convert one message each,
+ *  all lanes advancing together.  The lanes' state is held in
+ *  struct-of-arrays form: for each rotor slot, one array of that slot's
+ *  setting in every lane.  Lanes are arranged in groups that have the
+ *  same rotors in every slot, so that within a group a keypress is the
+ *  same sequence of lookups in the same tables for every lane, and only
+ *  the settings and the message characters differ.  Each lane's
+ *  plugboard is applied as its message is laid out by step and lane.
+ *
+ *  Where the incubating Vector API is present (the JVM was started with
+ *  --add-modules jdk.incubator.vector), VectorKernel converts a vector's
+ *  worth of a group's lanes at a time, looking up the shared rotor
+ *  wirings in registers; otherwise a scalar loop does the same work one
+ *  lane at a time.  Lanes are copied from machines, whose own state is
+ *  unchanged.
+ *  @author Bon Hee Koo
+ */
+final class BatchMachine {
+
+    /** The code that converts the lanes of a batch. */
+    interface Kernel {
+        /** Convert keypresses of the lanes of group G of BATCH.  The input
+         *  of the lane in column L at step T is IN[T * BATCH.lanes() + L],
+         *  after its plugboard, and its output, before its plugboard, goes
+         *  to the same index of OUT.  The lane takes part in only the
+         *  first LENGTHS[L] steps. */
+        void convert(BatchMachine batch, int g, byte[] in, byte[] out,
+                     int[] lengths);
+    }
+
+    /** A batch with a lane in the current state of each of MACHINES,
+     *  converted by the default kernel. */
+    BatchMachine(Machine... machines) {
+        this(defaultKernel(), machines);
+    }
+
+    /** A batch with a lane in the current state of each of MACHINES,
+     *  converted by KERNEL.  The machines must have rotors inserted and
+     *  agree in alphabet size and number of rotors. */
+    BatchMachine(Kernel kernel, Machine... machines) {
+        if (machines.length == 0) {
+            throw error("a batch needs at least one machine");
+        }
+        _kernel = kernel;
+        _lanes = machines.length;
+        _alphabet = machines[0].alphabet();
+        _n = _alphabet.size();
+        _r = machines[0].numRotors();
+        if (_n > Rotor.TABLE_LIMIT) {
+            throw error("batches need an alphabet of at most %d characters",
+                        Rotor.TABLE_LIMIT);
+        }
+        Map<List<Object>, List<Integer>> groups = new LinkedHashMap<>();
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            Machine M = machines[lane];
+            if (M.alphabet().size() != _n || M.numRotors() != _r
+                || M.rotor(0) == null) {
+                throw error("machines in a batch must be set up alike");
+            }
+            List<Object> key = new ArrayList<>();
+            for (int k = 0; k < _r; k += 1) {
+                key.add(M.rotor(k).wiring());
+                key.add(M.rotor(k).rotates());
+            }
+            groups.computeIfAbsent(key, x -> new ArrayList<>()).add(lane);
+        }
+        _column = new int[_lanes];
+        _plugs = new int[_lanes][];
+        _settings = new byte[_r * _lanes];
+        _groupStart = new int[groups.size() + 1];
+        _wirings = new RotorWiring[groups.size()][_r];
+        _rotates = new boolean[groups.size()][_r];
+        int g = 0;
+        int col = 0;
+        for (List<Integer> group : groups.values()) {
+            _groupStart[g] = col;
+            Machine first = machines[group.get(0)];
+            for (int k = 0; k < _r; k += 1) {
+                _wirings[g][k] = first.rotor(k).wiring();
+                _rotates[g][k] = first.rotor(k).rotates();
+            }
+            for (int lane : group) {
+                _column[lane] = col;
+                _plugs[col] = machines[lane].plugboard().toArray();
+                int[] settings = machines[lane].settings();
+                for (int k = 0; k < _r; k += 1) {
+                    _settings[k * _lanes + col] = (byte) settings[k];
+                }
+                col += 1;
+            }
+            g += 1;
+        }
+        _groupStart[g] = col;
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return the current settings of the rotors of LANE, slot 0
+     *  first. */
+    int[] settings(int lane) {
+        int[] result = new int[_r];
+        for (int k = 0; k < _r; k += 1) {
+            result[k] = _settings[k * _lanes + _column[lane]] & BYTE_MASK;
+        }
+        return result;
+    }
+
+    /** Return the conversions of MSGS, where MSGS[L] is converted by lane
+     *  L as for Machine.convert(String). */
+    String[] convert(String... msgs) {
+        int[][] codes = new int[msgs.length][];
+        for (int lane = 0; lane < msgs.length; lane += 1) {
+            String msg = msgs[lane];
+            int[] code = new int[msg.length()];
+            int n = 0;
+            for (int i = 0; i < msg.length(); i += 1) {
+                char ch = msg.charAt(i);
+                if (ch != ' ') {
+                    code[n] = _alphabet.toInt(Character.toUpperCase(ch));
+                    n += 1;
+                }
+            }
+            codes[lane] = Arrays.copyOf(code, n);
+        }
+        convert(codes, codes);
+        String[] result = new String[msgs.length];
+        for (int lane = 0; lane < msgs.length; lane += 1) {
+            char[] chars = new char[codes[lane].length];
+            for (int i = 0; i < chars.length; i += 1) {
+                chars[i] = _alphabet.toChar(codes[lane][i]);
+            }
+            result[lane] = new String(chars);
+        }
+        return result;
+    }
+
+    /** Convert MSGS[L], a message of indices, with lane L, writing the
+     *  result into OUTS[L], which must be at least as long (and may be
+     *  MSGS[L]). */
+    void convert(int[][] msgs, int[][] outs) {
+        if (msgs.length != _lanes || outs.length != _lanes) {
+            throw error("a batch of %d lanes needs %d messages", _lanes,
+                        _lanes);
+        }
+        int steps = 0;
+        for (int[] msg : msgs) {
+            steps = Math.max(steps, msg.length);
+        }
+        int block = Math.min(steps, BLOCK_STEPS);
+        byte[] in = new byte[block * _lanes];
+        byte[] out = new byte[block * _lanes];
+        int[] lengths = new int[_lanes];
+        for (int t0 = 0; t0 < steps; t0 += block) {
+            for (int lane = 0; lane < _lanes; lane += 1) {
+                int[] msg = msgs[lane];
+                int col = _column[lane];
+                int[] plug = _plugs[col];
+                int len = Math.max(0, Math.min(block, msg.length - t0));
+                lengths[col] = len;
+                for (int t = 0; t < len; t += 1) {
+                    in[t * _lanes + col] = (byte) plug[msg[t0 + t]];
+                }
+            }
+            for (int g = 0; g < groups(); g += 1) {
+                _kernel.convert(this, g, in, out, lengths);
+            }
+            for (int lane = 0; lane < _lanes; lane += 1) {
+                int[] result = outs[lane];
+                int col = _column[lane];
+                int[] plug = _plugs[col];
+                for (int t = 0; t < lengths[col]; t += 1) {
+                    result[t0 + t] = plug[out[t * _lanes + col] & BYTE_MASK];
+                }
+            }
+        }
+    }
+
+    /** Convert steps FIRST .. LENGTHS[L]-1 of the lanes in columns FROM
+     *  .. TO-1 of group G, one lane at a time, as for Kernel.convert. */
+    void convertScalar(int g, int from, int to, byte[] in, byte[] out,
+                       int[] lengths, int first) {
+        int n = _n;
+        int r = _r;
+        int last = r - 1;
+        int[][] forward = new int[r][];
+        int[][] backward = new int[r][];
+        boolean[] carries = new boolean[r];
+        for (int k = 0; k < r; k += 1) {
+            forward[k] = _wirings[g][k].forwardTable();
+            backward[k] = _wirings[g][k].backwardTable();
+            carries[k] = k >= 2 && _rotates[g][k - 1];
+        }
+        RotorWiring[] wirings = _wirings[g];
+        boolean fast = _rotates[g][last];
+        int[] set = new int[r];
+        for (int col = from; col < to; col += 1) {
+            for (int k = 0; k < r; k += 1) {
+                set[k] = _settings[k * _lanes + col] & BYTE_MASK;
+            }
+            for (int t = first; t < lengths[col]; t += 1) {
+                boolean fromRight = fast;
+                for (int k = last; k >= 0; k -= 1) {
+                    boolean carry = carries[k] && wirings[k].notchAt(set[k]);
+                    if (carry || fromRight) {
+                        set[k] = set[k] + 1 == n ? 0 : set[k] + 1;
+                    }
+                    fromRight = carry;
+                }
+                int c = in[t * _lanes + col] & BYTE_MASK;
+                for (int k = last; k >= 0; k -= 1) {
+                    c = forward[k][set[k] * n + c];
+                }
+                for (int k = 1; k < r; k += 1) {
+                    c = backward[k][set[k] * n + c];
+                }
+                out[t * _lanes + col] = (byte) c;
+            }
+            for (int k = 0; k < r; k += 1) {
+                _settings[k * _lanes + col] = (byte) set[k];
+            }
+        }
+    }
+
+    /** Return the number of groups of lanes with the same rotors. */
+    int groups() {
+        return _groupStart.length - 1;
+    }
+
+    /** Return the first column of group G. */
+    int groupStart(int g) {
+        return _groupStart[g];
+    }
+
+    /** Return the column after the last of group G. */
+    int groupEnd(int g) {
+        return _groupStart[g + 1];
+    }
+
+    /** Return the wiring of the rotor in slot K of the lanes of group
+     *  G. */
+    RotorWiring wiring(int g, int k) {
+        return _wirings[g][k];
+    }
+
+    /** Returns true iff the rotor in slot K of the lanes of group G
+     *  advances. */
+    boolean rotates(int g, int k) {
+        return _rotates[g][k];
+    }
+
+    /** Return the size of my alphabet. */
+    int alphabetSize() {
+        return _n;
+    }
+
+    /** Return the number of rotor slots in each lane. */
+    int numRotors() {
+        return _r;
+    }
+
+    /** Return the rotor settings of the lanes, which kernels update: the
+     *  setting of slot K of the lane in column L is at K * lanes() + L. */
+    byte[] settingArray() {
+        return _settings;
+    }
+
+    /** Return the kernel that converts one lane at a time. */
+    static Kernel scalarKernel() {
+        return SCALAR;
+    }
+
+    /** Return the Vector API kernel, or null if the Vector API is not
+     *  present in this JVM. */
+    static Kernel vectorKernel() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return (Kernel) Class.forName("enigma.VectorKernel")
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return null;
+        }
+    }
+
+    /** Return the vector kernel where it is available, and otherwise the
+     *  scalar kernel. */
+    static Kernel defaultKernel() {
+        return DEFAULT;
+    }
+
+    /** Name of the module providing the Vector API. */
+    static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /** Largest number of keypresses of each lane laid out at once. */
+    private static final int BLOCK_STEPS = 1 << 10;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The kernel that converts one lane at a time. */
+    private static final Kernel SCALAR = (batch, g, in, out, lengths) ->
+        batch.convertScalar(g, batch.groupStart(g), batch.groupEnd(g), in,
+                            out, lengths, 0);
+
+    /** The default kernel. */
+    private static final Kernel DEFAULT =
+        vectorKernel() != null ? vectorKernel() : SCALAR;
+
+    /** Converts my lanes. */
+    private final Kernel _kernel;
+
+    /** Number of lanes. */
+    private final int _lanes;
+
+    /** Alphabet of the lanes' messages. */
+    private final Alphabet _alphabet;
+
+    /** Alphabet size. */
+    private final int _n;
+
+    /** Number of rotor slots. */
+    private final int _r;
+
+    /** Column of each lane in the per-lane arrays. */
+    private final int[] _column;
+
+    /** Plugboard of the lane in each column. */
+    private final int[][] _plugs;
+
+    /** Setting of slot k of the lane in column l, at k * _lanes + l. */
+    private final byte[] _settings;
+
+    /** First column of each group, followed by _lanes. */
+    private final int[] _groupStart;
+
+    /** Wiring of each slot of each group. */
+    private final RotorWiring[][] _wirings;
+
+    /** Whether the rotor in each slot of each group advances. */
+    private final boolean[][] _rotates;
+}
@@ -0,0 +1,142 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchMachine class.
+ *  @author Bon Hee Koo
+ */
+public class BatchMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return random naval rotor names for a machine, chosen using
+     *  RANDOM. */
+    private static String randomRotors(Random random) {
+        List<String> moving = new ArrayList<>(Arrays.asList(
+            "I", "II", "III", "IV", "V", "VI", "VII", "VIII"));
+        Collections.shuffle(moving, random);
+        return (random.nextBoolean() ? "B" : "C") + " "
+            + (random.nextBoolean() ? "Beta" : "Gamma") + " "
+            + String.join(" ", moving.subList(0, 3));
+    }
+
+    /** Return a machine with naval rotors ROTORS (drawn from CATALOG), and
+     *  setting and plugboard chosen using RANDOM. */
+    private static Machine randomMachine(Random random, String rotors,
+                                         Machine catalog) {
+        List<Character> letters = new ArrayList<>();
+        for (char c : UPPER_STRING.toCharArray()) {
+            letters.add(c);
+        }
+        Collections.shuffle(letters, random);
+        String plugboard = "";
+        for (int i = 0; i < 2 * random.nextInt(8); i += 2) {
+            plugboard += "(" + letters.get(i) + letters.get(i + 1) + ")";
+        }
+        Machine result = catalog.copy();
+        result.insertRotors(rotors.split(" "));
+        result.setRotors(randomText(random, 4));
+        result.setPlugboard(new Permutation(plugboard, UPPER));
+        return result;
+    }
+
+    /** Check that KERNEL converts messages of assorted lengths in a batch
+     *  of LANES lanes, using ORDERS choices of rotors, exactly as the
+     *  lanes' machines do one by one. */
+    private static void checkKernel(BatchMachine.Kernel kernel, int lanes,
+                                    int orders) {
+        Random random = new Random(lanes);
+        Machine catalog = navalMachine("B Beta I II III", "AAAA", "");
+        String[] rotors = new String[orders];
+        for (int i = 0; i < orders; i += 1) {
+            rotors[i] = randomRotors(random);
+        }
+        Machine[] machines = new Machine[lanes];
+        String[] msgs = new String[lanes];
+        for (int i = 0; i < lanes; i += 1) {
+            machines[i] = randomMachine(random,
+                                        rotors[random.nextInt(orders)],
+                                        catalog);
+            msgs[i] = randomText(random, random.nextBoolean() ? 2000
+                                 : random.nextInt(3000));
+        }
+        BatchMachine batch = new BatchMachine(kernel, machines);
+        String[] results = batch.convert(msgs);
+        for (int i = 0; i < lanes; i += 1) {
+            assertEquals("lane " + i, machines[i].convert(msgs[i]),
+                         results[i]);
+            assertArrayEquals(machines[i].settings(), batch.settings(i));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkScalarKernel() {
+        checkKernel(BatchMachine.scalarKernel(), 1, 1);
+        checkKernel(BatchMachine.scalarKernel(), 37, 37);
+        checkKernel(BatchMachine.scalarKernel(), 300, 2);
+    }
+
+    @Test
+    public void checkVectorKernel() {
+        BatchMachine.Kernel kernel = BatchMachine.vectorKernel();
+        if (kernel != null) {
+            checkKernel(kernel, 1, 1);
+            checkKernel(kernel, 37, 37);
+            checkKernel(kernel, 300, 2);
+        }
+    }
+
+    @Test
+    public void checkStartsFromMachineState() {
+        Machine m = navalMachine("B Beta III IV I", "AXLE",
+                                 "(HQ) (EX) (IP) (TR) (BY)");
+        assertEquals("QVPQ", m.convert("FROM"));
+        Machine other = m.copy();
+        BatchMachine batch = new BatchMachine(m, other);
+        String[] results = batch.convert("his shoulder Hiawatha", "");
+        assertEquals("SOKOILPUBKJZPISFXDW", results[0]);
+        assertEquals("", results[1]);
+        assertEquals(4, m.position());
+        assertArrayEquals(m.settings(), batch.settings(1));
+    }
+
+    @Test
+    public void checkSharedWirings() {
+        Machine template = navalMachine("B Beta I II III", "AAAA", "");
+        Machine[] machines = new Machine[20];
+        String[] msgs = new String[machines.length];
+        for (int i = 0; i < machines.length; i += 1) {
+            machines[i] = template.copy();
+            machines[i].setRotors(UPPER_STRING.substring(i, i + 4));
+            msgs[i] = UPPER_STRING.substring(i) + UPPER_STRING;
+        }
+        String[] results = new BatchMachine(machines).convert(msgs);
+        for (int i = 0; i < machines.length; i += 1) {
+            assertEquals(machines[i].convert(msgs[i]), results[i]);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkMismatchedLanes() {
+        Machine m = navalMachine("B Beta I II III", "AAAA", "");
+        new BatchMachine(m).convert("A", "B");
+    }
+}
@@ -0,0 +1,554 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** A search for the keys under which a known crib enciphers to part of a
+ *  ciphertext, after the Turing bombe.  The crib and the ciphertext it
+ *  lies under make a menu: a graph on the letters, with an edge from
+ *  crib letter p to cipher letter c for each position i, where c is p
+ *  enciphered by the machine at position i.  Under plugboard P and
+ *  scrambler S_i (the rotors and reflector at position i), each edge
+ *  requires S_i(P(p)) = P(c).
+ *
+ *  Each rotor order (a reflector, then fixed rotors, then moving rotors
+ *  in the pawled slots, all different) and each setting of its rotors is
+ *  a position.  At each, the bombe supposes in turn that the menu's most
+ *  connected letter is plugged to each letter of the alphabet, and
+ *  follows the edges to the plugging of every letter reachable from it;
+ *  since P is an involution, plugging a to b also plugs b to a, and the
+ *  edges of b are followed too.  A supposition that plugs some letter
+ *  to two others is rejected.  A position where one survives is a stop,
+ *  and is reported with the plugboard pairs the supposition implied
+ *  (assuming the plugboard is made of 2-cycles).  Rotors step exactly as
+ *  in Machine.convert(int), by SteppingSchedule.step.
+ *
+ *  The positions are split into units of one rotor order and one setting
+ *  of the leftmost rotor, which are searched by a ForkJoinPool, so idle
+ *  workers steal units from busy ones.
+ *  @author Bon Hee Koo
+ */
+final class Bombe {
+
+    /** A stop: a rotor order and setting, and the plugboard pairs implied
+     *  there. */
+    static final class Stop {
+        /** A stop with rotors named ROTORS, at SETTING, implying the
+         *  plugboard PLUGBOARD, in cycle notation. */
+        Stop(String[] rotors, String setting, String plugboard) {
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, the reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my setting, as in a settings line. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my implied plugboard pairs, in cycle notation. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return me as a settings line. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My setting. */
+        private final String _setting;
+        /** My implied plugboard. */
+        private final String _plugboard;
+    }
+
+    /** A bombe for machines of TEMPLATE's configuration, with the rotors
+     *  in its catalog, looking for CRIB under the characters of
+     *  CIPHERTEXT starting at OFFSET.  Blanks in CRIB and CIPHERTEXT are
+     *  skipped and letters upper-cased, as by Machine.convert. */
+    Bombe(Machine template, String ciphertext, String crib, int offset) {
+        _template = template;
+        _alphabet = template.alphabet();
+        _size = _alphabet.size();
+        int[] cipher = indices(ciphertext);
+        _crib = indices(crib);
+        if (_crib.length == 0 || offset < 0
+            || offset + _crib.length > cipher.length) {
+            throw error("crib does not fit the ciphertext at %d", offset);
+        }
+        _offset = offset;
+        _cipher = Arrays.copyOfRange(cipher, offset, offset + _crib.length);
+        int[] degree = new int[_size];
+        for (int i = 0; i < _crib.length; i += 1) {
+            if (_crib[i] == _cipher[i]) {
+                throw error("crib cannot be at %d: %c would encipher to "
+                            + "itself", offset, _alphabet.toChar(_crib[i]));
+            }
+            degree[_crib[i]] += 1;
+            degree[_cipher[i]] += 1;
+        }
+        _edges = new int[_size][];
+        int test = 0;
+        for (int c = 0; c < _size; c += 1) {
+            _edges[c] = new int[2 * degree[c]];
+            if (degree[c] > degree[test]) {
+                test = c;
+            }
+        }
+        _test = test;
+        int[] filled = new int[_size];
+        for (int i = 0; i < _crib.length; i += 1) {
+            addEdge(filled, _crib[i], _cipher[i], i);
+            addEdge(filled, _cipher[i], _crib[i], i);
+        }
+    }
+
+    /** Return every rotor order of my template's catalog: the names of a
+     *  reflector, then of fixed rotors for the slots without pawls, then
+     *  of moving rotors for those with pawls, all different. */
+    List<String[]> orders() {
+        List<Rotor> reflectors = new ArrayList<>();
+        List<Rotor> fixed = new ArrayList<>();
+        List<Rotor> moving = new ArrayList<>();
+        for (Rotor rotor : _template.catalog()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor);
+            } else if (rotor.rotates()) {
+                moving.add(rotor);
+            } else {
+                fixed.add(rotor);
+            }
+        }
+        int r = _template.numRotors();
+        int pawls = _template.numPawls();
+        List<String[]> result = new ArrayList<>();
+        String[] order = new String[r];
+        for (Rotor reflector : reflectors) {
+            order[0] = reflector.name();
+            addOrders(result, order, 1, r - pawls, fixed, moving);
+        }
+        return result;
+    }
+
+    /** Search every position of the rotor orders ORDERS on POOL, passing
+     *  each stop to STOPS as it is found (from any of POOL's threads, so
+     *  STOPS must be thread-safe), and return the number of positions
+     *  tested. */
+    long search(List<String[]> orders, ForkJoinPool pool,
+                Consumer<Stop> stops) {
+        if (_template.numPawls() == 0) {
+            throw error("a bombe needs a machine with moving rotors");
+        }
+        long before = _positions.sum();
+        List<Order> prepared = new ArrayList<>();
+        for (String[] order : orders) {
+            prepared.add(new Order(order));
+        }
+        pool.invoke(new Units(prepared, 0, prepared.size() * _size,
+                              stops));
+        return _positions.sum() - before;
+    }
+
+    /** Return the number of positions tested so far. */
+    long positions() {
+        return _positions.sum();
+    }
+
+    /** Return the indices of the characters of TEXT, skipping blanks and
+     *  upper-casing letters. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                result[n] = _alphabet.toInt(Character.toUpperCase(ch));
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Add an edge of the menu from letter A to letter B at crib
+     *  position I, where FILLED counts the entries of each _edges[c]
+     *  filled so far. */
+    private void addEdge(int[] filled, int a, int b, int i) {
+        _edges[a][filled[a]] = b;
+        _edges[a][filled[a] + 1] = i;
+        filled[a] += 2;
+    }
+
+    /** Add to RESULT every completion of ORDER, whose slots before K are
+     *  chosen, with rotors of FIXED in slots before PAWLED and of MOVING
+     *  from there on, not repeating a rotor. */
+    private static void addOrders(List<String[]> result, String[] order,
+                                  int k, int pawled, List<Rotor> fixed,
+                                  List<Rotor> moving) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (Rotor rotor : k < pawled ? fixed : moving) {
+            boolean used = false;
+            for (int j = 1; j < k; j += 1) {
+                used |= order[j].equals(rotor.name());
+            }
+            if (!used) {
+                order[k] = rotor.name();
+                addOrders(result, order, k + 1, pawled, fixed, moving);
+            }
+        }
+    }
+
+    /** A rotor order, prepared for searching. */
+    private final class Order {
+        /** The order of the rotors named NAMES. */
+        Order(String[] names) {
+            _names = names.clone();
+            int r = names.length;
+            if (r != _template.numRotors()) {
+                throw error("wrong number of rotors in %s",
+                            String.join(" ", names));
+            }
+            Rotor[] slots = new Rotor[r];
+            _wirings = new RotorWiring[r];
+            _forward = new int[r][];
+            _backward = new int[r][];
+            for (int k = 0; k < r; k += 1) {
+                for (Rotor rotor : _template.catalog()) {
+                    if (rotor.name().equals(names[k])) {
+                        slots[k] = rotor.copy();
+                    }
+                }
+                if (slots[k] == null) {
+                    throw error("no rotor named %s", names[k]);
+                }
+                _wirings[k] = slots[k].wiring();
+                _forward[k] = _wirings[k].forwardTable();
+                _backward[k] = _wirings[k].backwardTable();
+            }
+            _schedule = new SteppingSchedule(slots);
+        }
+
+        /** Return the conversion of P by slot K at setting S. */
+        int forward(int k, int p, int s) {
+            return _forward[k] != null ? _forward[k][s * _size + p]
+                : _wirings[k].convertForward(p, s);
+        }
+
+        /** Return the inverse conversion of E by slot K at setting S. */
+        int backward(int k, int e, int s) {
+            return _backward[k] != null ? _backward[k][s * _size + e]
+                : _wirings[k].convertBackward(e, s);
+        }
+
+        /** Names of my rotors. */
+        private final String[] _names;
+        /** Wirings of my rotors. */
+        private final RotorWiring[] _wirings;
+        /** Forward tables of my rotors (see RotorWiring), or nulls. */
+        private final int[][] _forward;
+        /** Backward tables of my rotors, or nulls. */
+        private final int[][] _backward;
+        /** Stepping of my rotors. */
+        private final SteppingSchedule _schedule;
+    }
+
+    /** Searches a range of units. */
+    private final class Units extends RecursiveAction {
+        /** Search units FROM .. TO-1 of ORDERS, where unit u is order
+         *  u / _size with its leftmost settable rotor at u % _size,
+         *  passing stops to STOPS. */
+        Units(List<Order> orders, int from, int to, Consumer<Stop> stops) {
+            _orders = orders;
+            _from = from;
+            _to = to;
+            _stops = stops;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= 1) {
+                if (_to > _from) {
+                    new Search(_orders.get(_from / _size), _stops)
+                        .unit(_from % _size);
+                }
+                return;
+            }
+            int mid = (_from + _to) >>> 1;
+            invokeAll(new Units(_orders, _from, mid, _stops),
+                      new Units(_orders, mid, _to, _stops));
+        }
+
+        /** Prepared rotor orders. */
+        private final List<Order> _orders;
+        /** First unit. */
+        private final int _from;
+        /** One past the last unit. */
+        private final int _to;
+        /** Receives stops. */
+        private final Consumer<Stop> _stops;
+    }
+
+    /** The state of a search of one unit. */
+    private final class Search {
+        /** A search of units of ORDER, passing stops to STOPS. */
+        Search(Order order, Consumer<Stop> stops) {
+            _order = order;
+            _stops = stops;
+            int r = _template.numRotors();
+            _start = new int[r];
+            _current = new int[r];
+            _scratch = new boolean[r];
+            _at = new int[_crib.length][r];
+            _innerAt = new int[_crib.length][];
+            _inners = new int[_crib.length][_size];
+            _innerKeys = new long[_crib.length];
+            _atKeys = new long[_crib.length];
+            Arrays.fill(_innerKeys, -1);
+            _partner = new int[_size];
+            Arrays.fill(_partner, -1);
+            _touched = new int[_size];
+            _pending = new int[2 * _size];
+        }
+
+        /** Test every position with the leftmost settable rotor at
+         *  FIRST. */
+        void unit(int first) {
+            int r = _start.length;
+            _start[1] = first;
+            long count = 0;
+            while (true) {
+                test();
+                count += 1;
+                int k = r - 1;
+                while (k > 1 && _start[k] == _size - 1) {
+                    _start[k] = 0;
+                    k -= 1;
+                }
+                if (k <= 1) {
+                    break;
+                }
+                _start[k] += 1;
+            }
+            _positions.add(count);
+            POSITIONS.add(count);
+        }
+
+        /** Test the position _start. */
+        private void test() {
+            System.arraycopy(_start, 0, _current, 0, _start.length);
+            SteppingSchedule schedule = _order._schedule;
+            schedule.advance(_current, _offset, _scratch);
+            for (int i = 0; i < _crib.length; i += 1) {
+                schedule.step(_current, _scratch);
+                System.arraycopy(_current, 0, _at[i], 0, _current.length);
+                _innerAt[i] = inner(i);
+            }
+            for (int x = 0; x < _size; x += 1) {
+                if (consistent(x)) {
+                    _stops.accept(stop());
+                }
+            }
+        }
+
+        /** Return true iff plugging the test letter to X implies no
+         *  contradiction along the menu, leaving the implied pairs in
+         *  _partner. */
+        private boolean consistent(int x) {
+            for (int i = 0; i < _numTouched; i += 1) {
+                _partner[_touched[i]] = -1;
+            }
+            _numTouched = 0;
+            _numPending = 0;
+            if (!plug(_test, x)) {
+                return false;
+            }
+            while (_numPending > 0) {
+                _numPending -= 1;
+                int u = _pending[_numPending];
+                int v = _partner[u];
+                int[] edges = _edges[u];
+                for (int e = 0; e < edges.length; e += 2) {
+                    if (!plug(edges[e], scramble(edges[e + 1], v))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Plug A to B, and B to A, unless that contradicts what is
+         *  already plugged, in which case return false. */
+        private boolean plug(int a, int b) {
+            if (_partner[a] == b) {
+                return true;
+            }
+            if (_partner[a] >= 0 || _partner[b] >= 0) {
+                return false;
+            }
+            _partner[a] = b;
+            _partner[b] = a;
+            _touched[_numTouched] = a;
+            _numTouched += 1;
+            _pending[_numPending] = a;
+            _numPending += 1;
+            if (a != b) {
+                _touched[_numTouched] = b;
+                _numTouched += 1;
+                _pending[_numPending] = b;
+                _numPending += 1;
+            }
+            return true;
+        }
+
+        /** Return the conversion of X by the scrambler at crib position
+         *  I. */
+        private int scramble(int i, int x) {
+            int last = _start.length - 1;
+            int s = _at[i][last];
+            int c = _order.forward(last, x, s);
+            return _order.backward(last, _innerAt[i][c], s);
+        }
+
+        /** Return the conversions of every letter by the slots left of
+         *  the rightmost at crib position I, there and back through the
+         *  reflector, where _innerAt holds those of the positions before
+         *  I.  Since those slots rarely move, the table is shared with
+         *  position I-1 if they have not moved since, and otherwise is
+         *  _inners[I], which is recomputed only if they were elsewhere at
+         *  I in the last position tested.  So every distinct state under
+         *  the crib has its own table. */
+        private int[] inner(int i) {
+            int[] at = _at[i];
+            int last = at.length - 1;
+            long key = 0;
+            for (int k = 0; k < last; k += 1) {
+                key = key * _size + at[k];
+            }
+            _atKeys[i] = key;
+            if (i > 0 && _atKeys[i - 1] == key) {
+                return _innerAt[i - 1];
+            }
+            int[] table = _inners[i];
+            if (_innerKeys[i] == key) {
+                return table;
+            }
+            _innerKeys[i] = key;
+            for (int x = 0; x < _size; x += 1) {
+                int c = x;
+                for (int k = last - 1; k >= 0; k -= 1) {
+                    c = _order.forward(k, c, at[k]);
+                }
+                for (int k = 1; k < last; k += 1) {
+                    c = _order.backward(k, c, at[k]);
+                }
+                table[x] = c;
+            }
+            return table;
+        }
+
+        /** Return the stop at _start with the pairs in _partner. */
+        private Stop stop() {
+            StringBuilder setting = new StringBuilder();
+            for (int k = 1; k < _start.length; k += 1) {
+                setting.append(_alphabet.toChar(_start[k]));
+            }
+            StringBuilder plugboard = new StringBuilder();
+            for (int a = 0; a < _size; a += 1) {
+                int b = _partner[a];
+                if (b > a) {
+                    if (plugboard.length() > 0) {
+                        plugboard.append(' ');
+                    }
+                    plugboard.append('(').append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(b)).append(')');
+                }
+            }
+            return new Stop(_order._names.clone(), setting.toString(),
+                            plugboard.toString());
+        }
+
+        /** The rotor order searched. */
+        private final Order _order;
+        /** Receives stops. */
+        private final Consumer<Stop> _stops;
+        /** Settings of the position being tested, slot 0 first. */
+        private final int[] _start;
+        /** Settings being stepped. */
+        private final int[] _current;
+        /** Scratch for SteppingSchedule.step. */
+        private final boolean[] _scratch;
+        /** Settings at each crib position. */
+        private final int[][] _at;
+        /** Conversions by the slots left of the rightmost (see inner())
+         *  at each crib position. */
+        private final int[][] _innerAt;
+        /** Tables returned by inner(). */
+        private final int[][] _inners;
+        /** Settings of the slots for which each of _inners was made,
+         *  packed, or -1. */
+        private final long[] _innerKeys;
+        /** Packed settings of the slots left of the rightmost at each
+         *  crib position. */
+        private final long[] _atKeys;
+        /** Letter each letter is plugged to, or -1. */
+        private final int[] _partner;
+        /** Letters plugged by the current supposition. */
+        private final int[] _touched;
+        /** Number of entries of _touched. */
+        private int _numTouched;
+        /** Letters whose edges are yet to be followed. */
+        private final int[] _pending;
+        /** Number of entries of _pending. */
+        private int _numPending;
+    }
+
+    /** Positions tested by every bombe in this process. */
+    static final LongAdder POSITIONS =
+        Metrics.GLOBAL.counter("bombe.positions");
+
+    /** Machine whose configuration and catalog I search. */
+    private final Machine _template;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Indices of the crib. */
+    private final int[] _crib;
+
+    /** Indices of the ciphertext under the crib. */
+    private final int[] _cipher;
+
+    /** Position in the ciphertext of the crib's first character. */
+    private final int _offset;
+
+    /** _edges[a] holds, for each edge of the menu at letter a, the other
+     *  letter and the crib position, in turn. */
+    private final int[][] _edges;
+
+    /** The letter with the most edges, whose plugging is supposed. */
+    private final int _test;
+
+    /** Positions tested by me. */
+    private final LongAdder _positions = new LongAdder();
+}
@@ -0,0 +1,183 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Bon Hee Koo
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Rotors of the enciphering machine. */
+    private static final String[] ROTORS = { "B", "III", "IV", "I" };
+
+    /** Setting of the enciphering machine. */
+    private static final String SETTING = "XLE";
+
+    /** Plugboard of the enciphering machine. */
+    private static final String PLUGBOARD = "(HQ) (EX) (IP) (TR) (BY)";
+
+    /** The plaintext, of which CRIB is a part. */
+    private static final String PLAIN =
+        "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD";
+
+    /** The crib. */
+    private static final String CRIB = "SHOULDER HIAWATHA TOOK";
+
+    /** Position of CRIB in PLAIN, not counting blanks. */
+    private static final int OFFSET = 7;
+
+    /** Return a machine with four slots and three pawls whose catalog
+     *  has the naval rotors named NAMES, or all of them if there are
+     *  none. */
+    private static Machine smallMachine(String... names) {
+        List<Rotor> rotors = new ArrayList<>();
+        for (Rotor rotor : navalRotors()) {
+            if (names.length == 0 || Arrays.asList(names)
+                .contains(rotor.name())) {
+                rotors.add(rotor);
+            }
+        }
+        return new Machine(UPPER, 4, 3, rotors);
+    }
+
+    /** Return PLAIN enciphered with ROTORS at SETTING and PLUGBOARD. */
+    private static String ciphertext() {
+        Machine M = smallMachine();
+        M.insertRotors(ROTORS);
+        M.setRotors(SETTING);
+        M.setPlugboard(new Permutation(PLUGBOARD, UPPER));
+        return M.convert(PLAIN);
+    }
+
+    /** Return the stops found by BOMBE in ORDERS on POOL. */
+    private static List<Bombe.Stop> stops(Bombe bombe, List<String[]> orders,
+                                          ForkJoinPool pool) {
+        List<Bombe.Stop> result =
+            Collections.synchronizedList(new ArrayList<>());
+        bombe.search(orders, pool, result::add);
+        return result;
+    }
+
+    /** Return the stop among STOPS with ROTORS at SETTING, or null. */
+    private static Bombe.Stop trueStop(List<Bombe.Stop> stops) {
+        for (Bombe.Stop stop : stops) {
+            if (Arrays.equals(ROTORS, stop.rotors())
+                && stop.setting().equals(SETTING)) {
+                return stop;
+            }
+        }
+        return null;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testOrders() {
+        Machine M = navalMachine("B Beta III IV I", "AAAA", "");
+        Bombe bombe = new Bombe(M, ciphertext(), CRIB, OFFSET);
+        List<String[]> orders = bombe.orders();
+        assertEquals(2 * 2 * 8 * 7 * 6, orders.size());
+        for (String[] order : orders) {
+            M.insertRotors(order);
+        }
+        assertEquals(2 * 4 * 3 * 2,
+                     new Bombe(smallMachine("B", "C", "I", "II", "III", "IV"),
+                               ciphertext(), CRIB, OFFSET).orders().size());
+    }
+
+    @Test
+    public void testFindsTrueStop() {
+        Bombe bombe = new Bombe(smallMachine(), ciphertext(), CRIB, OFFSET);
+        List<String[]> orders = Collections.singletonList(ROTORS);
+        List<Bombe.Stop> stops =
+            stops(bombe, orders, ForkJoinPool.commonPool());
+        assertEquals(26 * 26 * 26, bombe.positions());
+        Bombe.Stop stop = trueStop(stops);
+        assertNotNull(stop);
+        Permutation plugs = new Permutation(PLUGBOARD, UPPER);
+        String pairs = stop.plugboard();
+        assertFalse(pairs.isEmpty());
+        for (String pair : pairs.split(" ")) {
+            char a = pair.charAt(1);
+            char b = pair.charAt(2);
+            assertEquals(pair, b, plugs.permute(a));
+        }
+        assertTrue("too many stops: " + stops.size(), stops.size() < 10);
+        assertEquals("* B III IV I XLE " + pairs, stop.toString());
+    }
+
+    @Test
+    public void testSearchesAcrossWorkers() {
+        Bombe bombe = new Bombe(smallMachine("B", "I", "III", "IV"),
+                                ciphertext(), CRIB, OFFSET);
+        List<String[]> orders = bombe.orders();
+        assertEquals(6, orders.size());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Bombe.Stop> stops = stops(bombe, orders, pool);
+            assertNotNull(trueStop(stops));
+            assertEquals(6 * 26 * 26 * 26, bombe.positions());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLongCribOnTwoNotchRotors() {
+        String[] rotors = { "B", "VI", "VII", "VIII" };
+        String plain = "SHOULD THE CAMERA OF ROSEWOOD BE TAKEN FROM HIS "
+            + "SHOULDER HE WOULD SEE THE LAND OF THE DAKOTAS";
+        Machine M = smallMachine();
+        M.insertRotors(rotors);
+        M.setRotors("ABA");
+        M.setPlugboard(new Permutation(PLUGBOARD, UPPER));
+        StringBuilder cipher = new StringBuilder();
+        Set<String> inner = new HashSet<>();
+        for (char ch : plain.replace(" ", "").toCharArray()) {
+            cipher.append(M.convert(String.valueOf(ch)));
+            int[] settings = M.settings();
+            inner.add(settings[1] + " " + settings[2]);
+        }
+        assertTrue(cipher.length() >= 60);
+        assertTrue("only " + inner.size() + " inner states",
+                   inner.size() >= 5);
+        Bombe bombe = new Bombe(smallMachine(), cipher.toString(), plain, 0);
+        boolean found = false;
+        for (Bombe.Stop stop : stops(bombe, Collections.singletonList(rotors),
+                                     ForkJoinPool.commonPool())) {
+            found |= stop.setting().equals("ABA");
+        }
+        assertTrue(found);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSelfEncipherment() {
+        String ciphertext = ciphertext();
+        new Bombe(smallMachine(), ciphertext, ciphertext.substring(0, 5), 0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCribTooLong() {
+        new Bombe(smallMachine(), "ABCDE", "XYZ", 3);
+    }
+}
@@ -0,0 +1,92 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** Converts a stream of bytes with a machine over the byte alphabet (see
+ *  Alphabet.isBytes), reading it from one channel and writing it to
+ *  another.  Each byte is the index of its character, so nothing is
+ *  decoded, encoded, skipped or formatted: the stream is read into a
+ *  buffer, converted in place and written back out, and the output is
+ *  exactly as long as the input.  Buffers may be converted on several
+ *  cores by a ParallelConverter.  A converter is used by one thread at a
+ *  time.
+ *  @author Bon Hee Koo
+ */
+final class ByteConverter {
+
+    /** A converter using M, whose rotors must be set up and whose
+     *  alphabet must be the byte alphabet, on several cores with
+     *  PARALLEL, or serially if PARALLEL is null. */
+    ByteConverter(Machine M, ParallelConverter parallel) {
+        if (!M.alphabet().isBytes()) {
+            throw error("byte streams need a machine over the byte "
+                        + "alphabet");
+        }
+        _machine = M;
+        _parallel = parallel;
+        _buffer = ByteBuffer.allocate(parallel == null ? BUFFER_SIZE
+                                      : PARALLEL_BUFFER_SIZE);
+    }
+
+    /** Convert everything that remains in IN, writing the result to OUT,
+     *  and return the number of bytes converted.  Neither channel is
+     *  closed. */
+    long convert(ReadableByteChannel in, WritableByteChannel out)
+        throws IOException {
+        long total = 0;
+        boolean eof = false;
+        byte[] bytes = _buffer.array();
+        while (!eof) {
+            _buffer.clear();
+            while (_buffer.hasRemaining()) {
+                if (in.read(_buffer) < 0) {
+                    eof = true;
+                    break;
+                }
+            }
+            _buffer.flip();
+            int n = _buffer.remaining();
+            Metrics.BYTES_IN.add(n);
+            ConversionEvent event = new ConversionEvent();
+            event.begin();
+            if (_parallel == null) {
+                _machine.convert(bytes, 0, n, bytes, 0);
+            } else {
+                _parallel.convert(_machine, bytes, 0, n, bytes, 0);
+            }
+            Metrics.CHARS.add(n);
+            if (event.shouldCommit()) {
+                event.charsIn = n;
+                event.charsOut = n;
+                event.parallel = _parallel != null;
+                event.commit();
+            }
+            while (_buffer.hasRemaining()) {
+                out.write(_buffer);
+            }
+            Metrics.BYTES_OUT.add(n);
+            total += n;
+        }
+        return total;
+    }
+
+    /** Size of the buffer when converting serially. */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** Size of the buffer when converting on several cores. */
+    static final int PARALLEL_BUFFER_SIZE = 1 << 23;
+
+    /** The machine converting bytes. */
+    private final Machine _machine;
+
+    /** Converter for each buffer, or null to convert serially. */
+    private final ParallelConverter _parallel;
+
+    /** Buffer of bytes being converted. */
+    private final ByteBuffer _buffer;
+}
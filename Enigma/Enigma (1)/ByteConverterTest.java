@@ -0,0 +1,164 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for byte-alphabet machines: the
+ *  ByteConverter, ByteKernel and WiringGenerator classes.
+ *  @author Bon Hee Koo
+ */
+public class ByteConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine over the byte alphabet with wirings generated
+     *  using RANDOM, and random rotors, settings and plugboard. */
+    static Machine byteMachine(Random random) {
+        WiringGenerator generator = new WiringGenerator(random);
+        Alphabet bytes = Alphabet.bytes();
+        Machine result = generator.generate(bytes).machine();
+        String[] key = generator.byteKey().split(" ");
+        result.insertRotors(Arrays.copyOf(key, WiringGenerator.SLOTS));
+        char[] setting = new char[WiringGenerator.SLOTS - 1];
+        for (int k = 0; k < setting.length; k += 1) {
+            setting[k] = (char) random.nextInt(Alphabet.BYTES);
+        }
+        result.setRotors(new String(setting));
+        int[] plugs = new int[Alphabet.BYTES];
+        for (int c = 0; c < plugs.length; c += 1) {
+            plugs[c] = c;
+        }
+        for (int k = 0; k < WiringGenerator.PLUGS; k += 1) {
+            int a = random.nextInt(Alphabet.BYTES);
+            int b = random.nextInt(Alphabet.BYTES);
+            if (plugs[a] == a && plugs[b] == b) {
+                plugs[a] = b;
+                plugs[b] = a;
+            }
+        }
+        result.setPlugboard(new Permutation(
+            WiringGenerator.cycles(bytes, plugs), bytes, plugs));
+        return result;
+    }
+
+    /** Return N random bytes, chosen using RANDOM. */
+    static byte[] randomBytes(Random random, int n) {
+        byte[] result = new byte[n];
+        random.nextBytes(result);
+        return result;
+    }
+
+    /** Return the conversion of MSG by M using PARALLEL (or serially, if
+     *  it is null), streamed through a ByteConverter. */
+    private static byte[] stream(Machine M, ParallelConverter parallel,
+                                 byte[] msg) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long n = new ByteConverter(M, parallel).convert(
+            Channels.newChannel(new ByteArrayInputStream(msg)),
+            Channels.newChannel(out));
+        assertEquals("wrong count", msg.length, n);
+        return out.toByteArray();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBytesAlphabet() {
+        Alphabet bytes = Alphabet.bytes();
+        assertEquals(Alphabet.BYTES, bytes.size());
+        assertTrue(bytes.isBytes());
+        for (int k = 0; k < Alphabet.BYTES; k += 1) {
+            assertEquals(k, bytes.toInt((char) k));
+        }
+        assertFalse(new Alphabet("ABCD").isBytes());
+    }
+
+    @Test
+    public void testGeneratedKey() {
+        Random random = new Random(1);
+        WiringGenerator generator = new WiringGenerator(random);
+        Machine M = generator.generate(Alphabet.bytes()).machine();
+        String[] key = generator.byteKey().split(" ");
+        M.insertRotors(Arrays.copyOf(key, WiringGenerator.SLOTS));
+        assertEquals(2 * (WiringGenerator.SLOTS - 1),
+                     key[WiringGenerator.SLOTS].length());
+        assertEquals(WiringGenerator.SLOTS + 1 + WiringGenerator.PLUGS,
+                     key.length);
+    }
+
+    @Test
+    public void testKernelMatchesMachine() {
+        Random random = new Random(2);
+        for (int i = 0; i < 4; i += 1) {
+            Machine M = byteMachine(random);
+            Machine serial = M.copy();
+            byte[] msg = randomBytes(random, 100000 + random.nextInt(50000));
+            byte[] expected = new byte[msg.length];
+            for (int k = 0; k < msg.length; k += 1) {
+                expected[k] = (byte) serial.convert(msg[k] & 0xff);
+            }
+            byte[] result = new byte[msg.length];
+            assertTrue("kernel not used", ByteKernel.applies(M));
+            M.convert(msg, 0, msg.length, result, 0);
+            assertArrayEquals("wrong conversion", expected, result);
+            assertArrayEquals("wrong settings", serial.settings(),
+                              M.settings());
+            assertEquals("wrong position", serial.position(), M.position());
+        }
+    }
+
+    @Test
+    public void testSeekAndSkip() {
+        Random random = new Random(5);
+        Machine M = byteMachine(random);
+        Machine sought = M.copy();
+        Machine skipped = M.copy();
+        byte[] msg = randomBytes(random, 200000);
+        M.convert(msg, 0, msg.length, msg, 0);
+        sought.seek(msg.length);
+        assertArrayEquals("seek", M.settings(), sought.settings());
+        for (int k = 0; k < 10; k += 1) {
+            skipped.skip(msg.length / 10);
+        }
+        assertArrayEquals("skip", M.settings(), skipped.settings());
+        assertEquals(M.position(), skipped.position());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(3);
+        Machine M = byteMachine(random);
+        Machine inverse = M.copy();
+        byte[] msg = randomBytes(random, 3 * ByteConverter.BUFFER_SIZE / 2);
+        byte[] code = stream(M, null, msg);
+        assertFalse(Arrays.equals(msg, code));
+        assertArrayEquals(msg, stream(inverse, null, code));
+    }
+
+    @Test
+    public void testParallelMatchesSerial() throws IOException {
+        Random random = new Random(4);
+        Machine M = byteMachine(random);
+        Machine serial = M.copy();
+        ParallelConverter parallel =
+            new ParallelConverter(new ForkJoinPool(3), 1 << 15);
+        byte[] msg = randomBytes(random, 1 << 18);
+        assertArrayEquals(stream(serial, null, msg),
+                          stream(M, parallel, msg));
+        assertArrayEquals(serial.settings(), M.settings());
+    }
+}
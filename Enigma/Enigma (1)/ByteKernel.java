@@ -0,0 +1,213 @@
+package enigma;
+
+/** Converts long runs of bytes with a machine over the byte alphabet,
+ *  for Machine.convert(byte[], int, int, byte[], int).  With exactly 256
+ *  characters, arithmetic on settings is modulo 256 and every rotor's
+ *  permutation is a 256-entry array, so a rotor at setting s takes c to
+ *  W[(c + s) & 255] - s & 255, and all the tables fit in the first-level
+ *  cache.  The rotors to the left of the middle one (the reflector, and
+ *  any others) move rarely, so their combined conversion is kept as one
+ *  256-entry table, rebuilt only when one of them moves.  Each keypress
+ *  is then five lookups in small arrays, plus the plugboard.  Stepping is
+ *  as in BatchMachine, but only at a notch of the fast rotor or the
+ *  middle one can a keypress move more than the fast rotor, so the
+ *  keypresses between notches are converted in a run with no checks.
+ *  @author Bon Hee Koo
+ */
+final class ByteKernel {
+
+    /** Returns true iff M, whose rotors must be set up, can use a kernel:
+     *  it has the byte alphabet's size and at least three rotors, and
+     *  no state table. */
+    static boolean applies(Machine M) {
+        return M.alphabet().size() == N && M.numRotors() >= 3
+            && !M.usingStateTable();
+    }
+
+    /** Convert the LEN bytes of MSG starting at OFF with M, for which
+     *  applies() is true, writing the results into OUT starting at OUTOFF
+     *  and leaving M as Machine.convert would. */
+    static void convert(Machine M, byte[] msg, int off, int len,
+                        byte[] out, int outOff) {
+        new ByteKernel(M).run(M, msg, off, len, out, outOff);
+    }
+
+    /** A kernel for M's current rotors and plugboard. */
+    private ByteKernel(Machine M) {
+        int r = M.numRotors();
+        _last = r - 1;
+        _mid = r - 2;
+        _forward = new int[r][];
+        _backward = new int[r][];
+        _notches = new boolean[r][N];
+        _carries = new boolean[r];
+        for (int k = 0; k < r; k += 1) {
+            RotorWiring wiring = M.rotor(k).wiring();
+            _forward[k] = wiring.permutation().toArray();
+            _backward[k] = new int[N];
+            for (int c = 0; c < N; c += 1) {
+                _backward[k][_forward[k][c]] = c;
+                _notches[k][c] = wiring.notchAt(c);
+            }
+            _carries[k] = k >= 2 && M.rotor(k - 1).rotates();
+        }
+        _fast = M.rotor(_last).rotates();
+        _gaps = new int[N];
+        for (int c = 0; c < N; c += 1) {
+            while (_gaps[c] < N && !_notches[_last][(c + _gaps[c]) & MASK]) {
+                _gaps[c] += 1;
+            }
+        }
+        _plug = M.plugboard().toArray();
+        _inner = new int[N];
+    }
+
+    /** Convert as for convert(M, MSG, OFF, LEN, OUT, OUTOFF). */
+    private void run(Machine M, byte[] msg, int off, int len, byte[] out,
+                     int outOff) {
+        int[] set = M.settings();
+        int last = _last;
+        int mid = _mid;
+        int[] fwdLast = _forward[last];
+        int[] bwdLast = _backward[last];
+        int[] fwdMid = _forward[mid];
+        int[] bwdMid = _backward[mid];
+        boolean[] notchLast = _notches[last];
+        boolean[] notchMid = _notches[mid];
+        boolean carryLast = _carries[last];
+        boolean carryMid = _carries[mid];
+        int[] plug = _plug;
+        int[] inner = _inner;
+        int inc = _fast ? 1 : 0;
+        int[] gaps = _gaps;
+        int fs = set[last];
+        int ms = set[mid];
+        boolean slow = rebuild(set);
+        int i = 0;
+        while (true) {
+            int run;
+            if (slow || carryMid && notchMid[ms]) {
+                run = 0;
+            } else if (!carryLast) {
+                run = len - i;
+            } else if (inc == 0) {
+                run = notchLast[fs] ? 0 : len - i;
+            } else {
+                run = Math.min(gaps[fs], len - i);
+            }
+            for (int end = i + run; i < end; i += 1) {
+                fs = (fs + inc) & MASK;
+                int c = plug[msg[off + i] & MASK];
+                c = (fwdLast[(c + fs) & MASK] - fs) & MASK;
+                c = (fwdMid[(c + ms) & MASK] - ms) & MASK;
+                c = inner[c];
+                c = (bwdMid[(c + ms) & MASK] - ms) & MASK;
+                c = (bwdLast[(c + fs) & MASK] - fs) & MASK;
+                out[outOff + i] = (byte) plug[c];
+            }
+            if (i == len) {
+                break;
+            }
+            boolean fromLast = carryLast && notchLast[fs];
+            boolean fromMid = carryMid && notchMid[ms];
+            if (fromLast || inc != 0) {
+                fs = (fs + 1) & MASK;
+            }
+            if (fromMid || fromLast) {
+                ms = (ms + 1) & MASK;
+            }
+            if (fromMid || slow) {
+                set[last] = fs;
+                set[mid] = ms;
+                step(set, fromMid);
+                slow = rebuild(set);
+            }
+            int c = plug[msg[off + i] & MASK];
+            c = (fwdLast[(c + fs) & MASK] - fs) & MASK;
+            c = (fwdMid[(c + ms) & MASK] - ms) & MASK;
+            c = inner[c];
+            c = (bwdMid[(c + ms) & MASK] - ms) & MASK;
+            c = (bwdLast[(c + fs) & MASK] - fs) & MASK;
+            out[outOff + i] = (byte) plug[c];
+            i += 1;
+        }
+        set[last] = fs;
+        set[mid] = ms;
+        M.advanced(set, len);
+    }
+
+    /** Advance the rotors to the left of the middle one, whose settings
+     *  are in SET, as for a keypress on which the middle rotor passes a
+     *  carry to its left iff FROMMID. */
+    private void step(int[] set, boolean fromMid) {
+        boolean fromRight = fromMid;
+        for (int k = _mid - 1; k >= 0; k -= 1) {
+            boolean carry = _carries[k] && _notches[k][set[k]];
+            if (carry || fromRight) {
+                set[k] = (set[k] + 1) & MASK;
+            }
+            fromRight = carry;
+        }
+    }
+
+    /** Recompute _inner, the conversion through the rotors to the left of
+     *  the middle one at the settings in SET, and return true iff one of
+     *  them will move on the next keypress whatever the rotors to its
+     *  right do. */
+    private boolean rebuild(int[] set) {
+        for (int c = 0; c < N; c += 1) {
+            int x = c;
+            for (int k = _mid - 1; k >= 0; k -= 1) {
+                x = (_forward[k][(x + set[k]) & MASK] - set[k]) & MASK;
+            }
+            for (int k = 1; k < _mid; k += 1) {
+                x = (_backward[k][(x + set[k]) & MASK] - set[k]) & MASK;
+            }
+            _inner[c] = x;
+        }
+        for (int k = _mid - 1; k >= 0; k -= 1) {
+            if (_carries[k] && _notches[k][set[k]]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Number of byte values. */
+    private static final int N = Alphabet.BYTES;
+
+    /** Mask reducing a setting or index modulo N. */
+    private static final int MASK = N - 1;
+
+    /** Index of the fast (rightmost) rotor. */
+    private final int _last;
+
+    /** Index of the middle rotor, to the left of the fast one. */
+    private final int _mid;
+
+    /** Permutation of each rotor at setting 0. */
+    private final int[][] _forward;
+
+    /** Inverse of the permutation of each rotor at setting 0. */
+    private final int[][] _backward;
+
+    /** _notches[k][s] is true iff rotor k has a notch at setting s. */
+    private final boolean[][] _notches;
+
+    /** _carries[k] is true iff rotor k advances the rotor to its left
+     *  (and itself) when it is at a notch. */
+    private final boolean[] _carries;
+
+    /** True iff the fast rotor advances on every keypress. */
+    private final boolean _fast;
+
+    /** _gaps[s] is the number of keypresses, from setting s, before the
+     *  fast rotor reaches a notch (at most N). */
+    private final int[] _gaps;
+
+    /** The plugboard. */
+    private final int[] _plug;
+
+    /** Conversion through the rotors to the left of the middle one. */
+    private final int[] _inner;
+}
@@ -0,0 +1,31 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A flight-recorder event for reading a machine configuration, from its
+ *  text form or a snapshot.  Like the other Enigma events, it costs next
+ *  to nothing unless a recording that enables it is running.
+ *  @author Bon Hee Koo
+ */
+@Name("enigma.ConfigLoad")
+@Label("Configuration Load")
+@Category("Enigma")
+@Description("Reading of a machine configuration")
+final class ConfigLoadEvent extends Event {
+
+    /** True iff the configuration was a snapshot. */
+    @Label("Snapshot")
+    boolean snapshot;
+
+    /** Number of characters in the configuration's alphabet. */
+    @Label("Alphabet Size")
+    int alphabetSize;
+
+    /** Number of rotors described. */
+    @Label("Rotors")
+    int rotors;
+}
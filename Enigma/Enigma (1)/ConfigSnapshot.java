@@ -0,0 +1,271 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A machine configuration compiled into a binary snapshot, which can be
+ *  loaded without parsing the text format or validating any cycles.  A
+ *  snapshot holds the alphabet, the numbers of slots and pawls, and for
+ *  each rotor its kind, name, notches, cycles, compiled permutation and
+ *  (for alphabets of up to RotorWiring.TABLE_LIMIT characters) its
+ *  conversion tables at every setting.  Snapshots begin with MAGIC and
+ *  a format VERSION; all numbers are big-endian.  Everything read from
+ *  a snapshot is checked (lengths against the bytes remaining, indices
+ *  against the alphabet, and tables against the permutation), so that a
+ *  damaged snapshot is reported when it is read, not when it is used.
+ *  @author Bon Hee Koo
+ */
+final class ConfigSnapshot {
+
+    /** A configuration of machines with alphabet ALPHABET, NUMROTORS
+     *  slots and PAWLS pawls, whose available rotors are ROTORS. */
+    ConfigSnapshot(Alphabet alphabet, int numRotors, int pawls,
+                   Collection<Rotor> rotors) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _rotors = Collections.unmodifiableList(new ArrayList<>(rotors));
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int pawls() {
+        return _pawls;
+    }
+
+    /** Return the available rotors. */
+    List<Rotor> rotors() {
+        return _rotors;
+    }
+
+    /** Return a new machine of this configuration, with no rotors
+     *  inserted. */
+    Machine machine() {
+        return new Machine(_alphabet, _numRotors, _pawls, _rotors);
+    }
+
+    /** Returns true iff FILE begins with a snapshot's magic number.
+     *  Does not change the position of FILE. */
+    static boolean isSnapshot(FileChannel file) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(Long.BYTES);
+        while (head.hasRemaining()) {
+            if (file.read(head, head.position()) < 0) {
+                return false;
+            }
+        }
+        head.flip();
+        return head.getLong() == MAGIC;
+    }
+
+    /** Return the snapshot stored in FILE, which is mapped into memory
+     *  to read it. */
+    static ConfigSnapshot read(FileChannel file) throws IOException {
+        ByteBuffer in =
+            file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        if (in.remaining() < Long.BYTES + Integer.BYTES
+            || in.getLong() != MAGIC) {
+            throw error("not a configuration snapshot");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw error("unsupported snapshot version %d", version);
+        }
+        try {
+            return getConfiguration(in);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | EnigmaException excp) {
+            throw damaged();
+        }
+    }
+
+    /** Return the configuration described by the rest of IN, after its
+     *  magic number and version. */
+    private static ConfigSnapshot getConfiguration(ByteBuffer in) {
+        int[] symbols = getInts(in, in.getInt());
+        Alphabet alphabet =
+            new Alphabet(new String(symbols, 0, symbols.length));
+        int numRotors = in.getInt();
+        int pawls = in.getInt();
+        int count = in.getInt();
+        if (alphabet.size() == 0 || numRotors <= 0 || pawls < 0
+            || pawls >= numRotors || count < 0 || count > in.remaining()) {
+            throw damaged();
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (int i = 0; i < count; i += 1) {
+            rotors.add(getRotor(in, alphabet));
+        }
+        return new ConfigSnapshot(alphabet, numRotors, pawls, rotors);
+    }
+
+    /** Write me to OUT. */
+    void write(WritableByteChannel out) throws IOException {
+        int n = _alphabet.size();
+        long size = Long.BYTES + 5 * Integer.BYTES + n * Integer.BYTES;
+        for (Rotor rotor : _rotors) {
+            size += 2 + 3 * Integer.BYTES + n * Integer.BYTES
+                + 2 * (rotor.name().length()
+                       + rotor.wiring().notches().length()
+                       + rotor.permutation().cycles().length());
+            if (n <= RotorWiring.TABLE_LIMIT) {
+                size += 2L * n * n * Integer.BYTES;
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw error("configuration too large for a snapshot");
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        buf.putLong(MAGIC).putInt(VERSION);
+        buf.putInt(n);
+        for (int i = 0; i < n; i += 1) {
+            buf.putInt(_alphabet.toCodePoint(i));
+        }
+        buf.putInt(_numRotors).putInt(_pawls).putInt(_rotors.size());
+        for (Rotor rotor : _rotors) {
+            putRotor(buf, rotor);
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /** Append the description of ROTOR to BUF. */
+    private static void putRotor(ByteBuffer buf, Rotor rotor) {
+        RotorWiring wiring = rotor.wiring();
+        if (rotor.reflecting()) {
+            buf.put(REFLECTOR);
+        } else if (rotor.rotates()) {
+            buf.put(MOVING);
+        } else {
+            buf.put(FIXED);
+        }
+        putString(buf, wiring.name());
+        putString(buf, wiring.notches());
+        putString(buf, wiring.permutation().cycles());
+        for (int c : wiring.permutation().toArray()) {
+            buf.putInt(c);
+        }
+        int[] forward = wiring.forwardTable();
+        buf.put((byte) (forward == null ? 0 : 1));
+        if (forward != null) {
+            buf.asIntBuffer().put(forward).put(wiring.backwardTable());
+            buf.position(buf.position()
+                         + 2 * forward.length * Integer.BYTES);
+        }
+    }
+
+    /** Return the rotor, over ALPHABET, described next in IN. */
+    private static Rotor getRotor(ByteBuffer in, Alphabet alphabet) {
+        int n = alphabet.size();
+        byte kind = in.get();
+        String name = getString(in);
+        String notches = getString(in);
+        String cycles = getString(in);
+        Permutation perm =
+            new Permutation(cycles, alphabet, getInts(in, n));
+        RotorWiring wiring = new RotorWiring(name, perm, notches);
+        if (in.get() != 0) {
+            if (n > RotorWiring.TABLE_LIMIT) {
+                throw damaged();
+            }
+            int[] forward = getInts(in, n * n);
+            int[] backward = getInts(in, n * n);
+            for (int posn = 0; posn < n; posn += 1) {
+                for (int p = 0; p < n; p += 1) {
+                    int e = forward[posn * n + p];
+                    if (e != wiring.convertForward(p, posn)
+                        || backward[posn * n + e] != p) {
+                        throw damaged();
+                    }
+                }
+            }
+            wiring = new RotorWiring(name, perm, notches, forward, backward);
+        }
+        switch (kind) {
+        case MOVING:
+            return new MovingRotor(wiring);
+        case FIXED:
+            return new FixedRotor(wiring);
+        case REFLECTOR:
+            return new Reflector(wiring);
+        default:
+            throw error("configuration snapshot is damaged");
+        }
+    }
+
+    /** Append S to BUF, preceded by its length. */
+    private static void putString(ByteBuffer buf, String s) {
+        buf.putInt(s.length());
+        for (int i = 0; i < s.length(); i += 1) {
+            buf.putChar(s.charAt(i));
+        }
+    }
+
+    /** Return the string written by putString next in IN. */
+    private static String getString(ByteBuffer in) {
+        int n = in.getInt();
+        if (n < 0 || (long) n * Character.BYTES > in.remaining()) {
+            throw damaged();
+        }
+        char[] chars = new char[n];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + chars.length * Character.BYTES);
+        return new String(chars);
+    }
+
+    /** Return the next N integers in IN. */
+    private static int[] getInts(ByteBuffer in, int n) {
+        if (n < 0 || (long) n * Integer.BYTES > in.remaining()) {
+            throw damaged();
+        }
+        int[] result = new int[n];
+        in.asIntBuffer().get(result);
+        in.position(in.position() + n * Integer.BYTES);
+        return result;
+    }
+
+    /** Return the error reporting a damaged snapshot. */
+    private static EnigmaException damaged() {
+        return error("configuration snapshot is damaged");
+    }
+
+    /** First eight bytes of every snapshot ("ENIGMACF"). */
+    static final long MAGIC = 0x454E49474D414346L;
+
+    /** Version of the snapshot format written by this class. */
+    static final int VERSION = 1;
+
+    /** Kinds of rotor. */
+    private static final byte MOVING = 'M', FIXED = 'N', REFLECTOR = 'R';
+
+    /** Alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Available rotors. */
+    private final List<Rotor> _rotors;
+}
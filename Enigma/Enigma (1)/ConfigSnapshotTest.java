@@ -0,0 +1,151 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigSnapshot class.
+ *  @author Bon Hee Koo
+ */
+public class ConfigSnapshotTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return SNAPSHOT after writing it to a file and reading it back. */
+    private ConfigSnapshot roundTrip(ConfigSnapshot snapshot)
+        throws IOException {
+        Path file = Files.createTempFile("enigma", ".snap");
+        try {
+            try (FileChannel out = FileChannel.open(file, WRITE)) {
+                snapshot.write(out);
+            }
+            try (FileChannel in = FileChannel.open(file)) {
+                assertTrue(ConfigSnapshot.isSnapshot(in));
+                return ConfigSnapshot.read(in);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Write the naval configuration as a snapshot, replace the int at
+     *  byte POSITION (counting from the end if negative) with VALUE, and
+     *  return the message of the error reported on reading it back. */
+    private String corrupt(long position, int value) throws IOException {
+        Path file = Files.createTempFile("enigma", ".snap");
+        try {
+            try (FileChannel out = FileChannel.open(file, READ, WRITE)) {
+                naval().write(out);
+                long p = position < 0 ? out.size() + position : position;
+                ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES);
+                buf.putInt(value).flip();
+                out.write(buf, p);
+            }
+            try (FileChannel in = FileChannel.open(file)) {
+                ConfigSnapshot.read(in);
+                fail("damaged snapshot was read");
+                return null;
+            } catch (EnigmaException excp) {
+                return excp.getMessage();
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Return the naval configuration as a snapshot. */
+    private ConfigSnapshot naval() {
+        return new ConfigSnapshot(UPPER, 5, 3, navalRotors());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        ConfigSnapshot loaded = roundTrip(naval());
+        assertEquals(UPPER_STRING, loaded.alphabet().chars());
+        assertEquals(5, loaded.numRotors());
+        assertEquals(3, loaded.pawls());
+        assertEquals(naval().rotors().size(), loaded.rotors().size());
+        for (int i = 0; i < loaded.rotors().size(); i += 1) {
+            Rotor expected = naval().rotors().get(i);
+            Rotor actual = loaded.rotors().get(i);
+            assertEquals(expected.name(), actual.name());
+            assertEquals(expected.getClass(), actual.getClass());
+            assertEquals(expected.wiring().notches(),
+                         actual.wiring().notches());
+            assertEquals(expected.permutation().cycles(),
+                         actual.permutation().cycles());
+        }
+    }
+
+    @Test
+    public void checkLoadedMachine() throws IOException {
+        Machine m = roundTrip(naval()).machine();
+        m.insertRotors("B Beta III IV I".split(" "));
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                       m.alphabet()));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     m.convert("FROM his shoulder Hiawatha"));
+    }
+
+    @Test
+    public void checkNotSnapshot() throws IOException {
+        Path file = Files.createTempFile("enigma", ".conf");
+        try {
+            Files.write(file, "ABCDEFGHIJKLMNOPQRSTUVWXYZ 5 3\n".getBytes());
+            try (FileChannel in = FileChannel.open(file)) {
+                assertFalse(ConfigSnapshot.isSnapshot(in));
+                assertEquals(0, in.position());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkTruncated() throws IOException {
+        Path file = Files.createTempFile("enigma", ".snap");
+        try {
+            try (FileChannel out = FileChannel.open(file, WRITE)) {
+                naval().write(out);
+                out.truncate(out.size() / 2);
+            }
+            try (FileChannel in = FileChannel.open(file)) {
+                ConfigSnapshot.read(in);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkCorrupted() throws IOException {
+        String damaged = "configuration snapshot is damaged";
+        int header = Long.BYTES + 2 * Integer.BYTES + 26 * Integer.BYTES
+            + 3 * Integer.BYTES;
+        assertEquals(damaged, corrupt(header + 1, Integer.MAX_VALUE));
+        assertEquals(damaged, corrupt(header + 1, -1));
+        assertEquals(damaged, corrupt(-Integer.BYTES, 26));
+        assertEquals(damaged, corrupt(-Integer.BYTES, -5));
+        assertEquals(damaged, corrupt(-4 * Integer.BYTES, 0));
+        assertEquals(damaged, corrupt(-26 * 26 * 4 * Integer.BYTES, 3));
+        assertEquals(damaged, corrupt(Long.BYTES + Integer.BYTES, 1 << 30));
+    }
+}
@@ -0,0 +1,29 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A flight-recorder event for converting one chunk of a message line.
+ *  @author Bon Hee Koo
+ */
+@Name("enigma.Conversion")
+@Label("Conversion")
+@Category("Enigma")
+@Description("Conversion of a chunk of a message line")
+final class ConversionEvent extends Event {
+
+    /** Number of characters read from the line. */
+    @Label("Characters In")
+    int charsIn;
+
+    /** Number of message characters converted. */
+    @Label("Characters Out")
+    int charsOut;
+
+    /** True iff the chunk was converted on more than one core. */
+    @Label("Parallel")
+    boolean parallel;
+}
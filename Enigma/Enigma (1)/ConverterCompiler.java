@@ -0,0 +1,489 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Generates a SpecializedConverter for each arrangement of rotors, as a
+ *  hidden class whose convert method is straight-line code for that
+ *  arrangement: one load of each rotor's setting, the carries of exactly
+ *  the slots whose neighbours can move, and one table lookup per rotor,
+ *  with the rotors' tables held in static final fields.  The code has no
+ *  branches (a rotor advances by a lookup in a table of successors,
+ *  indexed by whether it moves), and so needs no stack map frames.
+ *  Converters are cached by arrangement.  Where hidden classes cannot be
+ *  defined, or the rotors have no conversion tables, compile returns
+ *  null and machines convert with their generic code.
+ *  @author Bon Hee Koo
+ */
+final class ConverterCompiler {
+
+    /** Return a converter for rotors arranged as in SLOTS (the reflector
+     *  first), or null if one cannot be generated. */
+    static SpecializedConverter compile(Rotor[] slots) {
+        List<Object> key = new ArrayList<>();
+        for (Rotor rotor : slots) {
+            key.add(rotor.wiring());
+            key.add(rotor.rotates());
+        }
+        synchronized (CACHE) {
+            if (CACHE.containsKey(key)) {
+                return CACHE.get(key);
+            }
+        }
+        SpecializedConverter result = generate(slots);
+        synchronized (CACHE) {
+            CACHE.put(key, result);
+        }
+        return result;
+    }
+
+    /** Return a new converter for SLOTS, or null if one cannot be
+     *  generated. */
+    private static SpecializedConverter generate(Rotor[] slots) {
+        int n = slots[0].size();
+        if (slots.length < 2 || slots.length > MAX_SLOTS
+            || n > Rotor.TABLE_LIMIT) {
+            return null;
+        }
+        try {
+            ConverterCompiler compiler = new ConverterCompiler(slots);
+            byte[] bytes = compiler.classFile();
+            Class<?> hidden = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(bytes,
+                                                compiler._data.toArray(),
+                                                true)
+                .lookupClass();
+            return (SpecializedConverter)
+                hidden.getDeclaredConstructor().newInstance();
+        } catch (IOException | ReflectiveOperationException
+                 | LinkageError | RuntimeException excp) {
+            return null;
+        }
+    }
+
+    /** A compiler of the converter for SLOTS. */
+    private ConverterCompiler(Rotor[] slots) {
+        _slots = slots;
+        _r = slots.length;
+        _n = slots[0].size();
+        _last = _r - 1;
+        _carries = new boolean[_r];
+        for (int i = 2; i < _r; i += 1) {
+            _carries[i] = slots[i].rotates() && slots[i - 1].rotates();
+        }
+    }
+
+    /** Return the class file of the converter. */
+    private byte[] classFile() throws IOException {
+        int[] step = new int[2 * _n];
+        for (int p = 0; p < _n; p += 1) {
+            step[p] = p;
+            step[_n + p] = p + 1 == _n ? 0 : p + 1;
+        }
+        field("STEP", step);
+        for (int k = 0; k < _r; k += 1) {
+            RotorWiring wiring = _slots[k].wiring();
+            if (wiring.forwardTable() == null) {
+                throw new IllegalArgumentException("no conversion tables");
+            }
+            field("F" + k, wiring.forwardTable());
+            field("B" + k, wiring.backwardTable());
+            if (_carries[k]) {
+                int[] notches = new int[_n];
+                for (int p = 0; p < _n; p += 1) {
+                    notches[p] = wiring.notchAt(p) ? 1 : 0;
+                }
+                field("N" + k, notches);
+            }
+        }
+        byte[] init = initCode();
+        byte[] clinit = clinitCode();
+        byte[] convert = convertCode();
+        int thisClass = classRef(CLASS_NAME);
+        int superClass = classRef("java/lang/Object");
+        int iface = classRef("enigma/SpecializedConverter");
+        int code = utf8("Code");
+        int[] fieldNames = new int[_fields.size()];
+        int fieldDesc = utf8("[I");
+        for (int j = 0; j < fieldNames.length; j += 1) {
+            fieldNames[j] = utf8(_fields.get(j));
+        }
+        int[][] methods = {
+            {ACC_PUBLIC, utf8("<init>"), utf8("()V"), 1, 1},
+            {ACC_STATIC, utf8("<clinit>"), utf8("()V"), 4, 0},
+            {ACC_PUBLIC, utf8("convert"), utf8("([I[II)I"), 6, 4 + 2 * _r},
+        };
+        byte[][] codes = {init, clinit, convert};
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(0);
+        out.writeShort(CLASS_VERSION);
+        out.writeShort(_poolSize);
+        out.write(_pool.toByteArray());
+        out.writeShort(ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(iface);
+        out.writeShort(fieldNames.length);
+        for (int name : fieldNames) {
+            out.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+            out.writeShort(name);
+            out.writeShort(fieldDesc);
+            out.writeShort(0);
+        }
+        out.writeShort(methods.length);
+        for (int m = 0; m < methods.length; m += 1) {
+            out.writeShort(methods[m][0]);
+            out.writeShort(methods[m][1]);
+            out.writeShort(methods[m][2]);
+            out.writeShort(1);
+            out.writeShort(code);
+            out.writeInt(12 + codes[m].length);
+            out.writeShort(methods[m][3]);
+            out.writeShort(methods[m][4]);
+            out.writeInt(codes[m].length);
+            out.write(codes[m]);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    /** Add a static final field NAME to be initialized to VALUE from the
+     *  class data. */
+    private void field(String name, int[] value) {
+        _fields.add(name);
+        _data.add(value);
+    }
+
+    /** Return the code of the constructor. */
+    private byte[] initCode() {
+        Code c = new Code();
+        c.op(ALOAD_0);
+        c.op(INVOKESPECIAL, methodRef("java/lang/Object", "<init>", "()V"));
+        c.op(RETURN);
+        return c.toByteArray();
+    }
+
+    /** Return the code of the static initializer, which copies the class
+     *  data into the static fields. */
+    private byte[] clinitCode() {
+        Code c = new Code();
+        c.op(INVOKESTATIC, methodRef("java/lang/invoke/MethodHandles",
+                                     "lookup", "()" + LOOKUP));
+        c.op(LDC_W, string("_"));
+        c.op(LDC_W, classRef("[Ljava/lang/Object;"));
+        c.op(INVOKESTATIC, methodRef("java/lang/invoke/MethodHandles",
+                                     "classData",
+                                     "(" + LOOKUP + "Ljava/lang/String;"
+                                     + "Ljava/lang/Class;)"
+                                     + "Ljava/lang/Object;"));
+        c.op(CHECKCAST, classRef("[Ljava/lang/Object;"));
+        int arrays = classRef("[I");
+        for (int j = 0; j < _fields.size(); j += 1) {
+            c.op(DUP);
+            c.constant(j);
+            c.op(AALOAD);
+            c.op(CHECKCAST, arrays);
+            c.op(PUTSTATIC, field(_fields.get(j)));
+        }
+        c.op(POP);
+        c.op(RETURN);
+        return c.toByteArray();
+    }
+
+    /** Return the code of convert(SETTINGS, PLUGBOARD, C).  Local 1 is
+     *  SETTINGS, 2 PLUGBOARD and 3 C; the setting of slot k is kept in
+     *  local 4 + k, and whether the rotor in slot k carries its left
+     *  neighbour in local 4 + r + k. */
+    private byte[] convertCode() {
+        Code c = new Code();
+        for (int k = 0; k < _r; k += 1) {
+            c.op(ALOAD_1);
+            c.constant(k);
+            c.op(IALOAD);
+            c.op(ISTORE, setting(k));
+        }
+        for (int i = 2; i < _r; i += 1) {
+            if (_carries[i]) {
+                c.op(GETSTATIC, field("N" + i));
+                c.op(ILOAD, setting(i));
+                c.op(IALOAD);
+                c.op(ISTORE, carry(i));
+            }
+        }
+        int step = field("STEP");
+        boolean[] moved = new boolean[_r];
+        for (int k = 0; k < _r; k += 1) {
+            boolean own = _carries[k];
+            boolean fromRight = k < _last && _carries[k + 1];
+            if (k == _last && _slots[k].rotates()) {
+                c.op(GETSTATIC, step);
+                c.op(ILOAD, setting(k));
+                c.constant(_n);
+                c.op(IADD);
+            } else if (own || fromRight) {
+                c.op(GETSTATIC, step);
+                c.op(ILOAD, carry(own ? k : k + 1));
+                if (own && fromRight) {
+                    c.op(ILOAD, carry(k + 1));
+                    c.op(IOR);
+                }
+                c.constant(_n);
+                c.op(IMUL);
+                c.op(ILOAD, setting(k));
+                c.op(IADD);
+            } else {
+                continue;
+            }
+            c.op(IALOAD);
+            c.op(ISTORE, setting(k));
+            moved[k] = true;
+        }
+        for (int k = 0; k < _r; k += 1) {
+            if (moved[k]) {
+                c.op(ALOAD_1);
+                c.constant(k);
+                c.op(ILOAD, setting(k));
+                c.op(IASTORE);
+            }
+        }
+        c.op(ALOAD_2);
+        c.op(ILOAD, 3);
+        c.op(IALOAD);
+        for (int k = _last; k >= 0; k -= 1) {
+            lookup(c, "F" + k, k);
+        }
+        for (int k = 1; k < _r; k += 1) {
+            lookup(c, "B" + k, k);
+        }
+        c.op(ALOAD_2);
+        c.op(SWAP);
+        c.op(IALOAD);
+        c.op(IRETURN);
+        return c.toByteArray();
+    }
+
+    /** Add to C code replacing the character on top of the stack with
+     *  its conversion by table TABLE at the setting of slot K. */
+    private void lookup(Code c, String table, int k) {
+        c.op(GETSTATIC, field(table));
+        c.op(SWAP);
+        c.op(ILOAD, setting(k));
+        c.constant(_n);
+        c.op(IMUL);
+        c.op(IADD);
+        c.op(IALOAD);
+    }
+
+    /** Return the local variable holding the setting of slot K. */
+    private static int setting(int k) {
+        return 4 + k;
+    }
+
+    /** Return the local variable holding the carry of slot K. */
+    private int carry(int k) {
+        return 4 + _r + k;
+    }
+
+    /** Return the constant pool index of the static field NAME. */
+    private int field(String name) {
+        return member(FIELDREF, CLASS_NAME, name, "[I");
+    }
+
+    /** Return the constant pool index of method NAME of class OWNER,
+     *  with descriptor DESC. */
+    private int methodRef(String owner, String name, String desc) {
+        return member(METHODREF, owner, name, desc);
+    }
+
+    /** Return the constant pool index of a member reference of kind TAG
+     *  to NAME in OWNER, with descriptor DESC. */
+    private int member(int tag, String owner, String name, String desc) {
+        int ownerIndex = classRef(owner);
+        int nameAndType = constant(NAME_AND_TYPE, utf8(name), utf8(desc));
+        return constant(tag, ownerIndex, nameAndType);
+    }
+
+    /** Return the constant pool index of class NAME. */
+    private int classRef(String name) {
+        return constant(CLASS, utf8(name));
+    }
+
+    /** Return the constant pool index of string constant S. */
+    private int string(String s) {
+        return constant(STRING, utf8(s));
+    }
+
+    /** Return the constant pool index of the UTF-8 constant S. */
+    private int utf8(String s) {
+        String key = "U" + s;
+        Integer index = _constants.get(key);
+        if (index == null) {
+            ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            try {
+                DataOutputStream out = new DataOutputStream(entry);
+                out.writeByte(UTF8);
+                out.writeUTF(s);
+            } catch (IOException excp) {
+                throw new IllegalStateException(excp);
+            }
+            index = add(key, entry.toByteArray());
+        }
+        return index;
+    }
+
+    /** Return the constant pool index of the constant of kind TAG whose
+     *  operands are the indices ARGS. */
+    private int constant(int tag, int... args) {
+        StringBuilder key = new StringBuilder().append(tag);
+        byte[] entry = new byte[1 + 2 * args.length];
+        entry[0] = (byte) tag;
+        for (int i = 0; i < args.length; i += 1) {
+            key.append(',').append(args[i]);
+            entry[1 + 2 * i] = (byte) (args[i] >> 8);
+            entry[2 + 2 * i] = (byte) args[i];
+        }
+        Integer index = _constants.get(key.toString());
+        return index != null ? index : add(key.toString(), entry);
+    }
+
+    /** Add ENTRY to the constant pool under KEY, returning its index. */
+    private int add(String key, byte[] entry) {
+        int index = _poolSize;
+        _pool.write(entry, 0, entry.length);
+        _constants.put(key, index);
+        _poolSize += 1;
+        return index;
+    }
+
+    /** The bytecode of one method. */
+    private static final class Code {
+        /** Append OP, followed by the two-byte operand ARG if given. */
+        void op(int op, int... arg) {
+            _bytes.write(op);
+            for (int a : arg) {
+                if (op == ILOAD || op == ISTORE) {
+                    _bytes.write(a);
+                } else {
+                    _bytes.write(a >> 8);
+                    _bytes.write(a);
+                }
+            }
+        }
+
+        /** Append code pushing the int constant V, 0 <= V < 2**15. */
+        void constant(int v) {
+            if (v <= ICONST_MAX) {
+                _bytes.write(ICONST_0 + v);
+            } else if (v <= Byte.MAX_VALUE) {
+                _bytes.write(BIPUSH);
+                _bytes.write(v);
+            } else {
+                op(SIPUSH, v);
+            }
+        }
+
+        /** Return my bytes. */
+        byte[] toByteArray() {
+            return _bytes.toByteArray();
+        }
+
+        /** The bytecode so far. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+    }
+
+    /** Largest number of slots for which converters are generated. */
+    static final int MAX_SLOTS = 64;
+
+    /** Largest number of arrangements whose converters are cached. */
+    static final int CACHE_CAPACITY = 256;
+
+    /** Converters (or null where none could be generated) by
+     *  arrangement, least recently used first. */
+    private static final Map<List<Object>, SpecializedConverter> CACHE =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<List<Object>, SpecializedConverter> eldest) {
+                return size() > CACHE_CAPACITY;
+            }
+        };
+
+    /** Name of generated classes, before the JVM's suffix for hidden
+     *  classes. */
+    private static final String CLASS_NAME = "enigma/SpecializedRotors";
+
+    /** Descriptor of MethodHandles.Lookup. */
+    private static final String LOOKUP =
+        "Ljava/lang/invoke/MethodHandles$Lookup;";
+
+    /** Class file magic number. */
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /** Class file major version (Java 17). */
+    private static final int CLASS_VERSION = 61;
+
+    /** Access flags. */
+    private static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002,
+        ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    /** Constant pool tags. */
+    private static final int UTF8 = 1, CLASS = 7, STRING = 8, FIELDREF = 9,
+        METHODREF = 10, NAME_AND_TYPE = 12;
+
+    /** Opcodes. */
+    private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11,
+        LDC_W = 0x13, ILOAD = 0x15, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b,
+        ALOAD_2 = 0x2c, IALOAD = 0x2e, AALOAD = 0x32, ISTORE = 0x36,
+        IASTORE = 0x4f, POP = 0x57, DUP = 0x59, SWAP = 0x5f, IADD = 0x60,
+        IMUL = 0x68, IOR = 0x80, IRETURN = 0xac, RETURN = 0xb1,
+        GETSTATIC = 0xb2, PUTSTATIC = 0xb3, INVOKESPECIAL = 0xb7,
+        INVOKESTATIC = 0xb8, CHECKCAST = 0xc0;
+
+    /** Largest constant pushed with a one-byte iconst instruction. */
+    private static final int ICONST_MAX = 5;
+
+    /** Rotors of the arrangement. */
+    private final Rotor[] _slots;
+
+    /** Number of slots. */
+    private final int _r;
+
+    /** Index of the rightmost slot. */
+    private final int _last;
+
+    /** Alphabet size. */
+    private final int _n;
+
+    /** _carries[i] iff the rotor in slot i can carry its left
+     *  neighbour. */
+    private final boolean[] _carries;
+
+    /** Names of the static fields, in the order of _data. */
+    private final List<String> _fields = new ArrayList<>();
+
+    /** Initial values of the static fields. */
+    private final List<Object> _data = new ArrayList<>();
+
+    /** Entries of the constant pool. */
+    private final ByteArrayOutputStream _pool = new ByteArrayOutputStream();
+
+    /** Number of constant pool entries plus one. */
+    private int _poolSize = 1;
+
+    /** Constant pool indices by a key describing each entry. */
+    private final Map<String, Integer> _constants = new HashMap<>();
+}
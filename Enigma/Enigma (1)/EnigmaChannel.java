@@ -0,0 +1,130 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A WritableByteChannel that converts the bytes written to it with a
+ *  machine over the byte alphabet, as EnigmaOutputStream does, and
+ *  writes the results to another channel.  Bytes are copied into a
+ *  reusable heap buffer and converted there, a buffer at a time, so
+ *  direct buffers are converted as fast as heap ones.  The machine has
+ *  moved past the bytes once they are converted, so converted bytes the
+ *  other channel does not take at once (when it is non-blocking) are
+ *  kept, and written ahead of anything else on the next write, flush
+ *  or close.  The machine must not be used otherwise while the channel is,
+ *  and a channel is used by one thread at a time.
+ *  @author Bon Hee Koo
+ */
+final class EnigmaChannel implements WritableByteChannel {
+
+    /** A channel converting bytes with M, whose rotors must be set up and
+     *  whose alphabet must be the byte alphabet, and writing them to
+     *  OUT. */
+    EnigmaChannel(WritableByteChannel out, Machine M) {
+        if (!M.alphabet().isBytes()) {
+            throw error("byte channels need a machine over the byte "
+                        + "alphabet");
+        }
+        _out = out;
+        _machine = M;
+        _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        _buffer.flip();
+    }
+
+    /** Convert as much of SRC as can be accepted, and return the number
+     *  of bytes accepted, which is all of them if the other channel is
+     *  blocking. */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!_open) {
+            throw new ClosedChannelException();
+        }
+        int accepted = 0;
+        while (true) {
+            if (_buffer.hasRemaining() && _out.write(_buffer) == 0) {
+                return accepted;
+            }
+            if (_buffer.hasRemaining()) {
+                continue;
+            }
+            if (!src.hasRemaining()) {
+                return accepted;
+            }
+            int n = Math.min(src.remaining(), BUFFER_SIZE);
+            int limit = src.limit();
+            _buffer.clear();
+            src.limit(src.position() + n);
+            _buffer.put(src);
+            src.limit(limit);
+            _machine.convert(_buffer.array(), 0, n, _buffer.array(), 0);
+            accepted += n;
+            _buffer.flip();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return _open;
+    }
+
+    /** Write as many of the converted bytes not yet taken by the other
+     *  channel as it accepts, and return true iff it has taken them
+     *  all, as it always does if it is blocking. */
+    boolean flush() throws IOException {
+        if (!_open) {
+            throw new ClosedChannelException();
+        }
+        while (_buffer.hasRemaining()) {
+            if (_out.write(_buffer) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write any converted bytes not yet taken by the other channel, and
+     *  close it.  If the other channel is non-blocking and does not take
+     *  them all, throws an IOException and leaves both channels open, so
+     *  that the caller can flush() when it is ready and close again. */
+    @Override
+    public void close() throws IOException {
+        if (!_open) {
+            return;
+        }
+        boolean taken;
+        try {
+            taken = flush();
+        } catch (IOException excp) {
+            _open = false;
+            _out.close();
+            throw excp;
+        }
+        if (!taken) {
+            throw new IOException(String.format(
+                "%d converted bytes not yet written; flush and close again",
+                _buffer.remaining()));
+        }
+        _open = false;
+        _out.close();
+    }
+
+    /** Number of bytes converted at a time. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The channel receiving converted bytes. */
+    private final WritableByteChannel _out;
+
+    /** The machine converting my bytes. */
+    private final Machine _machine;
+
+    /** Converted bytes not yet written, between its position and
+     *  limit. */
+    private final ByteBuffer _buffer;
+
+    /** True until I am closed. */
+    private boolean _open = true;
+}
@@ -0,0 +1,76 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A client of an EnigmaServer.  Requests may be pipelined: any number
+ *  may be sent before the replies are received, in the same order.
+ *  @author Bon Hee Koo
+ */
+final class EnigmaClient implements Closeable {
+
+    /** A client connected to the server at ADDRESS. */
+    EnigmaClient(SocketAddress address) throws IOException {
+        _channel = SocketChannel.open(address);
+        _in = new DataInputStream(
+            new BufferedInputStream(Channels.newInputStream(_channel)));
+        _out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(_channel)));
+    }
+
+    /** Queue a request to convert MESSAGE with a machine set up according
+     *  to the settings line SETTINGS.  The request is sent when the
+     *  buffer fills or on flush(). */
+    void send(String settings, String message) throws IOException {
+        EnigmaServer.writeField(_out, settings);
+        EnigmaServer.writeField(_out, message);
+    }
+
+    /** Send all queued requests. */
+    void flush() throws IOException {
+        _out.flush();
+    }
+
+    /** Return the converted message of the oldest unanswered request,
+     *  throwing an EnigmaException carrying the server's error message
+     *  if it failed. */
+    String receive() throws IOException {
+        flush();
+        int status = _in.readUnsignedByte();
+        String text = EnigmaServer.readField(_in, false);
+        if (status != EnigmaServer.OK) {
+            throw error("%s", text);
+        }
+        return text;
+    }
+
+    /** Return the conversion of MESSAGE with settings SETTINGS, as for
+     *  send and receive. */
+    String convert(String settings, String message) throws IOException {
+        send(settings, message);
+        return receive();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Connection to the server. */
+    private final SocketChannel _channel;
+
+    /** Replies from the server. */
+    private final DataInputStream _in;
+
+    /** Requests to the server. */
+    private final DataOutputStream _out;
+}
@@ -0,0 +1,87 @@
+package enigma;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static enigma.EnigmaException.*;
+
+/** An InputStream that converts the bytes it reads from another with a
+ *  machine over the byte alphabet (see Alphabet.isBytes), each byte
+ *  being the index of its character.  Bytes are converted in the
+ *  caller's buffer as they arrive, with a ByteKernel when enough arrive
+ *  at once.  The machine must not be used otherwise while the stream is,
+ *  and a stream is used by one thread at a time.
+ *  @author Bon Hee Koo
+ */
+final class EnigmaInputStream extends FilterInputStream {
+
+    /** A stream converting the bytes of IN with M, whose rotors must be
+     *  set up and whose alphabet must be the byte alphabet. */
+    EnigmaInputStream(InputStream in, Machine M) {
+        super(in);
+        if (!M.alphabet().isBytes()) {
+            throw error("byte streams need a machine over the byte "
+                        + "alphabet");
+        }
+        _machine = M;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        return b < 0 ? b : _machine.convert(b);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            _machine.convert(b, off, n, b, off);
+        }
+        return n;
+    }
+
+    /** Skip up to N bytes, which are still converted, so that the
+     *  machine stays in step with the stream.  Returns the number
+     *  skipped. */
+    @Override
+    public long skip(long n) throws IOException {
+        if (_skipBuffer == null) {
+            _skipBuffer = new byte[SKIP_BUFFER_SIZE];
+        }
+        long skipped = 0;
+        while (skipped < n) {
+            int k = read(_skipBuffer, 0,
+                         (int) Math.min(n - skipped, SKIP_BUFFER_SIZE));
+            if (k < 0) {
+                break;
+            }
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Size of the buffer into which skipped bytes are read. */
+    private static final int SKIP_BUFFER_SIZE = 1 << 16;
+
+    /** The machine converting my bytes. */
+    private final Machine _machine;
+
+    /** Buffer for skip(), or null until it is needed. */
+    private byte[] _skipBuffer;
+}
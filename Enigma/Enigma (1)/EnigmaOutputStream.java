@@ -0,0 +1,58 @@
+package enigma;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static enigma.EnigmaException.*;
+
+/** An OutputStream that converts the bytes written to it with a machine
+ *  over the byte alphabet, as EnigmaInputStream does, and writes the
+ *  results to another.  Bytes are copied into a reusable buffer,
+ *  converted there and passed on a buffer at a time, so the caller's
+ *  arrays are never changed.  The machine must not be used otherwise
+ *  while the stream is, and a stream is used by one thread at a time.
+ *  @author Bon Hee Koo
+ */
+final class EnigmaOutputStream extends FilterOutputStream {
+
+    /** A stream converting bytes with M, whose rotors must be set up and
+     *  whose alphabet must be the byte alphabet, and writing them to
+     *  OUT. */
+    EnigmaOutputStream(OutputStream out, Machine M) {
+        super(out);
+        if (!M.alphabet().isBytes()) {
+            throw error("byte streams need a machine over the byte "
+                        + "alphabet");
+        }
+        _machine = M;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(_machine.convert(b & BYTE_MASK));
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, BUFFER_SIZE);
+            _machine.convert(b, off, n, _buffer, 0);
+            out.write(_buffer, 0, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Number of bytes converted at a time. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The machine converting my bytes. */
+    private final Machine _machine;
+
+    /** Converted bytes. */
+    private final byte[] _buffer = new byte[BUFFER_SIZE];
+}
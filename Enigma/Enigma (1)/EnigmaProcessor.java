@@ -0,0 +1,354 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A reactive stage that converts chunks of message text, published in
+ *  order, into chunks of converted text, as Machine.convert(String) would
+ *  convert their concatenation: blanks are skipped, letters upper-cased,
+ *  and a chunk that converts to nothing is not emitted.  Given a
+ *  MachineCache, a processor also accepts settings markers (see
+ *  settings()), each of which starts a new section with a machine set up
+ *  as a '*' line of an input file sets it up.
+ *
+ *  A processor has one subscriber.  It requests at most CAPACITY chunks
+ *  ahead from its publisher, and requests more only as it converts them,
+ *  and it converts only when its subscriber has demand, so it holds at
+ *  most CAPACITY chunks and one converted batch however slow the
+ *  subscriber.  Consecutive chunks that are waiting when the subscriber
+ *  asks for more are converted together into one emitted chunk of up to
+ *  about BATCH_SIZE characters.  All conversion and all signals to the
+ *  subscriber happen in tasks on an executor, one task at a time, so the
+ *  publisher's thread only queues chunks and is never blocked.
+ *  @author Bon Hee Koo
+ */
+final class EnigmaProcessor
+    implements Flow.Processor<CharSequence, String> {
+
+    /** A settings marker: a settings line, as in an input file. */
+    private static final class Settings implements CharSequence {
+        /** The marker for settings line LINE. */
+        Settings(String line) {
+            _line = line;
+        }
+
+        @Override
+        public int length() {
+            return _line.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return _line.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return _line.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return _line;
+        }
+
+        /** My settings line. */
+        private final String _line;
+    }
+
+    /** A processor converting with M, whose rotors must be set up, that
+     *  runs on EXECUTOR and requests at most CAPACITY > 0 chunks ahead.
+     *  It accepts no settings markers. */
+    EnigmaProcessor(Machine M, Executor executor, int capacity) {
+        this(null, M, executor, capacity);
+    }
+
+    /** A processor taking a machine from MACHINES for each settings
+     *  marker, which must precede all message text, that runs on
+     *  EXECUTOR and requests at most CAPACITY > 0 chunks ahead. */
+    EnigmaProcessor(MachineCache machines, Executor executor,
+                    int capacity) {
+        this(machines, null, executor, capacity);
+    }
+
+    /** A processor converting with M (if MACHINES is null) or with
+     *  machines from MACHINES, on EXECUTOR, requesting at most CAPACITY
+     *  chunks ahead. */
+    private EnigmaProcessor(MachineCache machines, Machine M,
+                            Executor executor, int capacity) {
+        if (capacity <= 0) {
+            throw error("bad processor capacity: %d", capacity);
+        }
+        _machines = machines;
+        _machine = M;
+        _executor = executor;
+        _capacity = capacity;
+    }
+
+    /** Return a settings marker for settings line LINE, which begins with
+     *  '*', to be published to a processor between chunks of text. */
+    static CharSequence settings(String line) {
+        return new Settings(line);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!_subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                "a processor has only one subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    _invalid = new IllegalArgumentException(
+                        "non-positive request: " + n);
+                } else {
+                    _demand.accumulateAndGet(n, (a, b) ->
+                        a + b < 0 ? Long.MAX_VALUE : a + b);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                _cancelled = true;
+                drain();
+            }
+        });
+        _subscriber = subscriber;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null || _cancelled) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        subscription.request(_capacity);
+    }
+
+    @Override
+    public void onNext(CharSequence chunk) {
+        _queue.offer(Objects.requireNonNull(chunk));
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable failure) {
+        _failure = failure;
+        _done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        _done = true;
+        drain();
+    }
+
+    /** Arrange for run() to be called, unless it is already due to be. */
+    private void drain() {
+        if (_pending.getAndIncrement() == 0) {
+            _executor.execute(this::run);
+        }
+    }
+
+    /** Emit as many converted batches as my subscriber has asked for and
+     *  my queue allows, and then its completion or failure if that has
+     *  come, repeating while drain() has been called meanwhile. */
+    private void run() {
+        int missed = 1;
+        do {
+            emit();
+            missed = _pending.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /** Do one round of the work of run(). */
+    private void emit() {
+        Flow.Subscriber<? super String> out = _subscriber;
+        if (_terminated) {
+            _queue.clear();
+            return;
+        }
+        if (_cancelled) {
+            terminate(null, null);
+            return;
+        }
+        if (out == null) {
+            return;
+        }
+        if (_invalid != null) {
+            terminate(out, _invalid);
+            return;
+        }
+        long consumed = 0;
+        try {
+            while (_demand.get() > 0) {
+                if (_done && _failure != null) {
+                    break;
+                }
+                CharSequence chunk = _queue.peek();
+                if (chunk == null) {
+                    break;
+                }
+                if (chunk instanceof Settings) {
+                    _queue.poll();
+                    consumed += 1;
+                    startSection(chunk.toString());
+                    continue;
+                }
+                String batch = convertBatch();
+                consumed += _batched;
+                if (!batch.isEmpty()) {
+                    _demand.decrementAndGet();
+                    out.onNext(batch);
+                }
+            }
+        } catch (EnigmaException excp) {
+            terminate(out, excp);
+            return;
+        }
+        if (consumed > 0 && _upstream != null) {
+            _upstream.request(consumed);
+        }
+        if (_done && (_failure != null || _queue.isEmpty())) {
+            terminate(out, _failure);
+        }
+    }
+
+    /** Take the machine for settings line SETTINGS from my cache. */
+    private void startSection(String settings) {
+        if (_machines == null) {
+            throw error("settings markers need a machine cache");
+        }
+        _machine = _machines.get(settings);
+    }
+
+    /** Remove the chunks at the head of my queue, up to the first
+     *  settings marker and while they total less than BATCH_SIZE
+     *  characters, and return their conversion, setting _batched to
+     *  their number.  There must be at least one. */
+    private String convertBatch() {
+        if (_machine == null) {
+            throw error("message text before the first settings marker");
+        }
+        int n = 0;
+        _batched = 0;
+        for (CharSequence chunk = _queue.peek();
+             chunk != null && !(chunk instanceof Settings)
+                 && (n == 0 || n + chunk.length() <= BATCH_SIZE);
+             chunk = _queue.peek()) {
+            _queue.poll();
+            _batched += 1;
+            if (_out.length < n + chunk.length()) {
+                _out = Arrays.copyOf(
+                    _out, Math.max(2 * _out.length, n + chunk.length()));
+            }
+            n += _machine.convert(chunk, 0, chunk.length(), _out, n);
+        }
+        Metrics.CHARS.add(n);
+        String result = new String(_out, 0, n);
+        if (_out.length > BATCH_SIZE) {
+            _out = new char[BATCH_SIZE];
+        }
+        return result;
+    }
+
+    /** Stop: cancel my publisher, drop my queue and, unless OUT is null,
+     *  send OUT FAILURE, or completion if FAILURE is null. */
+    private void terminate(Flow.Subscriber<? super String> out,
+                           Throwable failure) {
+        _terminated = true;
+        _queue.clear();
+        if (_upstream != null && !_done) {
+            _upstream.cancel();
+        }
+        if (out != null) {
+            if (failure == null) {
+                out.onComplete();
+            } else {
+                out.onError(failure);
+            }
+        }
+    }
+
+    /** Number of characters of text converted into one emitted chunk,
+     *  unless a single chunk is longer. */
+    static final int BATCH_SIZE = 1 << 13;
+
+    /** The cache of machines for settings markers, or null. */
+    private final MachineCache _machines;
+
+    /** The machine converting the current section, or null before the
+     *  first settings marker. */
+    private Machine _machine;
+
+    /** Runs my conversion and signals to my subscriber. */
+    private final Executor _executor;
+
+    /** Most chunks requested from my publisher and not yet converted. */
+    private final int _capacity;
+
+    /** Chunks received and not yet converted. */
+    private final Queue<CharSequence> _queue = new ConcurrentLinkedQueue<>();
+
+    /** Number of calls of drain() not yet answered by run(). */
+    private final AtomicInteger _pending = new AtomicInteger();
+
+    /** Chunks my subscriber has asked for and not yet received. */
+    private final AtomicLong _demand = new AtomicLong();
+
+    /** True once I have a subscriber. */
+    private final AtomicBoolean _subscribed = new AtomicBoolean();
+
+    /** My subscriber, or null. */
+    private volatile Flow.Subscriber<? super String> _subscriber;
+
+    /** The subscription to my publisher, or null. */
+    private volatile Flow.Subscription _upstream;
+
+    /** True once my publisher has completed or failed. */
+    private volatile boolean _done;
+
+    /** Why my publisher failed, or null. */
+    private volatile Throwable _failure;
+
+    /** The error for an invalid request by my subscriber, or null. */
+    private volatile Throwable _invalid;
+
+    /** True once my subscriber has cancelled. */
+    private volatile boolean _cancelled;
+
+    /** True once I have stopped.  Used only by run(). */
+    private boolean _terminated;
+
+    /** Number of chunks in the last batch.  Used only by run(). */
+    private int _batched;
+
+    /** Buffer for converted text.  Used only by run(). */
+    private char[] _out = new char[BATCH_SIZE];
+}
@@ -0,0 +1,296 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the EnigmaProcessor class.
+ *  @author Bon Hee Koo
+ */
+public class EnigmaProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Runs each task at once, on the caller's thread. */
+    private static final Executor DIRECT = Runnable::run;
+
+    /** Rotors of the sample message. */
+    private static final String ROTORS = "B Beta III IV I";
+
+    /** Setting of the sample message. */
+    private static final String SETTING = "AXLE";
+
+    /** Plugboard of the sample message. */
+    private static final String PLUGBOARD = "(HQ) (EX) (IP) (TR) (BY)";
+
+    /** The sample message, in chunks. */
+    private static final String[] CHUNKS = {
+        "FROM his shoul", "der Hiawatha", " ", "Took the camera ",
+        "of rosewood"
+    };
+
+    /** Return a machine set up for the sample message. */
+    private static Machine sample() {
+        return navalMachine(ROTORS, SETTING, PLUGBOARD);
+    }
+
+    /** Return the conversion of all of CHUNKS by a fresh sample
+     *  machine. */
+    private static String expected() {
+        return sample().convert(String.join("", CHUNKS));
+    }
+
+    /** Return a cache whose settings lines are
+     *  "* ROTORS:SETTING:PLUGBOARD". */
+    private static MachineCache cache() {
+        return new MachineCache(4, settings -> {
+            String[] parts = settings.substring(1).trim().split(":", -1);
+            return navalMachine(parts[0], parts[1], parts[2]);
+        });
+    }
+
+    /** A subscriber that records what it receives, and requests only
+     *  when told to. */
+    private static class Recorder implements Flow.Subscriber<String> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String item) {
+            _items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+            _failure = failure;
+            _finished.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            _completed = true;
+            _finished.countDown();
+        }
+
+        /** Request N more items. */
+        void request(long n) {
+            _subscription.request(n);
+        }
+
+        /** Return everything received, joined. */
+        String text() {
+            return String.join("", _items);
+        }
+
+        /** The subscription. */
+        private Flow.Subscription _subscription;
+        /** Items received. */
+        private final List<String> _items = new ArrayList<>();
+        /** Failure received, or null. */
+        private volatile Throwable _failure;
+        /** True once completed. */
+        private volatile boolean _completed;
+        /** Released on completion or failure. */
+        private final CountDownLatch _finished = new CountDownLatch(1);
+    }
+
+    /** A publisher that sends its items only when told to, recording how
+     *  many have been requested. */
+    private static final class Source
+        implements Flow.Publisher<CharSequence>, Flow.Subscription {
+        @Override
+        public void subscribe(Flow.Subscriber<? super CharSequence> s) {
+            _subscriber = s;
+            s.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            _requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            _cancelled = true;
+        }
+
+        /** Send CHUNK, which must have been requested. */
+        void send(CharSequence chunk) {
+            assertTrue("unrequested item", _sent < _requested);
+            _sent += 1;
+            _subscriber.onNext(chunk);
+        }
+
+        /** The subscriber. */
+        private Flow.Subscriber<? super CharSequence> _subscriber;
+        /** Items requested so far. */
+        private long _requested;
+        /** Items sent so far. */
+        private long _sent;
+        /** True once cancelled. */
+        private boolean _cancelled;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertsInOrder() {
+        Source source = new Source();
+        EnigmaProcessor p = new EnigmaProcessor(sample(), DIRECT, 8);
+        Recorder out = new Recorder();
+        source.subscribe(p);
+        p.subscribe(out);
+        for (String chunk : CHUNKS) {
+            source.send(chunk);
+            out.request(1);
+        }
+        source._subscriber.onComplete();
+        assertEquals(expected(), out.text());
+        assertEquals(4, out._items.size());
+        assertTrue(out._completed);
+    }
+
+    @Test
+    public void testBatchesWaitingChunks() {
+        Source source = new Source();
+        EnigmaProcessor p = new EnigmaProcessor(sample(), DIRECT, 8);
+        Recorder out = new Recorder();
+        source.subscribe(p);
+        p.subscribe(out);
+        for (String chunk : CHUNKS) {
+            source.send(chunk);
+        }
+        assertEquals(0, out._items.size());
+        out.request(1);
+        assertEquals(1, out._items.size());
+        assertEquals(expected(), out.text());
+    }
+
+    @Test
+    public void testBoundedBySlowSubscriber() {
+        Source source = new Source();
+        EnigmaProcessor p = new EnigmaProcessor(sample(), DIRECT, 3);
+        Recorder out = new Recorder();
+        source.subscribe(p);
+        p.subscribe(out);
+        assertEquals(3, source._requested);
+        for (int i = 0; i < 3; i += 1) {
+            source.send(CHUNKS[i]);
+        }
+        assertEquals(3, source._requested);
+        out.request(1);
+        assertEquals(6, source._requested);
+    }
+
+    @Test
+    public void testSettingsMarkers() {
+        String settings = "* " + ROTORS + ":" + SETTING + ":" + PLUGBOARD;
+        Source source = new Source();
+        EnigmaProcessor p = new EnigmaProcessor(cache(), DIRECT, 16);
+        Recorder out = new Recorder();
+        source.subscribe(p);
+        p.subscribe(out);
+        out.request(Long.MAX_VALUE);
+        for (int k = 0; k < 2; k += 1) {
+            source.send(EnigmaProcessor.settings(settings));
+            for (String chunk : CHUNKS) {
+                source.send(chunk);
+            }
+        }
+        source._subscriber.onComplete();
+        assertEquals(expected() + expected(), out.text());
+        assertTrue(out._completed);
+    }
+
+    @Test
+    public void testTextBeforeSettings() {
+        Source source = new Source();
+        EnigmaProcessor p = new EnigmaProcessor(cache(), DIRECT, 16);
+        Recorder out = new Recorder();
+        source.subscribe(p);
+        p.subscribe(out);
+        out.request(1);
+        source.send("HELLO");
+        assertTrue(out._failure instanceof EnigmaException);
+        assertTrue(source._cancelled);
+    }
+
+    @Test
+    public void testBadCharacterFails() {
+        Source source = new Source();
+        EnigmaProcessor p = new EnigmaProcessor(sample(), DIRECT, 16);
+        Recorder out = new Recorder();
+        source.subscribe(p);
+        p.subscribe(out);
+        out.request(5);
+        source.send("HELLO");
+        source.send("WORLD?");
+        assertEquals(1, out._items.size());
+        assertTrue(out._failure instanceof EnigmaException);
+        assertTrue(source._cancelled);
+    }
+
+    @Test
+    public void testCancel() {
+        Source source = new Source();
+        EnigmaProcessor p = new EnigmaProcessor(sample(), DIRECT, 16);
+        Recorder out = new Recorder();
+        source.subscribe(p);
+        p.subscribe(out);
+        out._subscription.cancel();
+        assertTrue(source._cancelled);
+        assertFalse(out._completed);
+    }
+
+    @Test
+    public void testOnExecutor() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SubmissionPublisher<CharSequence> source =
+                new SubmissionPublisher<>(executor, 4);
+            EnigmaProcessor p = new EnigmaProcessor(sample(), executor, 4);
+            Recorder out = new Recorder() {
+                @Override
+                public void onNext(String item) {
+                    super.onNext(item);
+                    request(1);
+                }
+            };
+            source.subscribe(p);
+            p.subscribe(out);
+            out.request(1);
+            StringBuilder all = new StringBuilder();
+            for (int i = 0; i < 200; i += 1) {
+                for (String chunk : CHUNKS) {
+                    source.submit(chunk);
+                    all.append(chunk);
+                }
+            }
+            source.close();
+            assertTrue(out._finished.await(4, TimeUnit.SECONDS));
+            assertTrue(out._completed);
+            assertEquals(sample().convert(all.toString()), out.text());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package enigma;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/** A Reader that converts the characters it reads from another with a
+ *  machine, as Machine.convertText does: characters of the machine's
+ *  alphabet (after upper-casing) are converted, and all others, such as
+ *  blanks and line terminators, are passed through unchanged.  Text is
+ *  converted in the reader's own buffer as it arrives, so messages of
+ *  any length are converted without being assembled.  The machine must
+ *  not be used otherwise while the reader is, and a reader is used by
+ *  one thread at a time.
+ *  @author Bon Hee Koo
+ */
+final class EnigmaReader extends FilterReader {
+
+    /** A reader converting the characters of IN with M, whose rotors
+     *  must be set up. */
+    EnigmaReader(Reader in, Machine M) {
+        super(in);
+        _machine = M;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int n = read(_single, 0, 1);
+        return n <= 0 ? -1 : _single[0];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = in.read(cbuf, off, len);
+        if (n > 0) {
+            _machine.convertText(cbuf, off, n);
+        }
+        return n;
+    }
+
+    /** Skip up to N characters, which are still converted, so that the
+     *  machine stays in step with the text.  Returns the number
+     *  skipped. */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("negative skip");
+        }
+        if (_skipBuffer == null) {
+            _skipBuffer = new char[SKIP_BUFFER_SIZE];
+        }
+        long skipped = 0;
+        while (skipped < n) {
+            int k = read(_skipBuffer, 0,
+                         (int) Math.min(n - skipped, SKIP_BUFFER_SIZE));
+            if (k < 0) {
+                break;
+            }
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Size of the buffer into which skipped characters are read. */
+    private static final int SKIP_BUFFER_SIZE = 1 << 13;
+
+    /** The machine converting my characters. */
+    private final Machine _machine;
+
+    /** Buffer for read(). */
+    private final char[] _single = new char[1];
+
+    /** Buffer for skip(), or null until it is needed. */
+    private char[] _skipBuffer;
+}
@@ -0,0 +1,280 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running server that converts messages for clients on a local
+ *  TCP or Unix-domain socket, so that the machine configuration is read
+ *  and compiled once rather than once per process.
+ *
+ *  A request is a settings line (as in an input file, beginning with
+ *  '*') followed by a message; each is sent as a four-byte big-endian
+ *  length followed by that many bytes of UTF-8.  The reply is one status
+ *  byte (OK or FAILED), then, in the same form, the converted message
+ *  (letters only, not grouped) or the error message.  A client may send
+ *  any number of requests without waiting for replies; they are answered
+ *  in order.
+ *
+ *  Each connection is served by its own thread (a virtual thread where
+ *  the Java runtime provides them), with its own MachineCache, so
+ *  connections share nothing but the rotor catalog.  At most a given
+ *  number of connections are served at once; others receive a FAILED
+ *  reply and are closed.
+ *  @author Bon Hee Koo
+ */
+final class EnigmaServer implements Closeable {
+
+    /** A server accepting connections on SERVER, each of which takes
+     *  machines from a cache made by CACHES.  At most MAXCONNECTIONS
+     *  connections are served at once. */
+    EnigmaServer(ServerSocketChannel server, Supplier<MachineCache> caches,
+                 int maxConnections) {
+        _server = server;
+        _caches = caches;
+        _permits = new Semaphore(maxConnections);
+        _workers = newExecutor();
+        _stats = new ServerStats();
+    }
+
+    /** Return a server socket bound to ADDRESS, which is PORT,
+     *  HOST:PORT, or unix:PATH.  A PORT of 0 chooses a free port; HOST
+     *  defaults to the loopback address. */
+    static ServerSocketChannel bind(String address) throws IOException {
+        if (address.startsWith(UNIX_PREFIX)) {
+            Path path = Path.of(address.substring(UNIX_PREFIX.length()));
+            ServerSocketChannel server =
+                ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(path));
+            return server;
+        }
+        int colon = address.lastIndexOf(':');
+        String host = colon < 0 ? "127.0.0.1" : address.substring(0, colon);
+        int port;
+        try {
+            port = Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException excp) {
+            throw error("bad server address: %s", address);
+        }
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(host, port));
+        return server;
+    }
+
+    /** Return the address on which I accept connections. */
+    SocketAddress address() throws IOException {
+        return _server.getLocalAddress();
+    }
+
+    /** Return my statistics. */
+    ServerStats stats() {
+        return _stats;
+    }
+
+    /** Accept and serve connections until I am closed. */
+    void serve() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = _server.accept();
+            } catch (ClosedChannelException excp) {
+                return;
+            } catch (IOException excp) {
+                if (!_server.isOpen()) {
+                    return;
+                }
+                continue;
+            }
+            if (_permits.tryAcquire()) {
+                _stats.connection(false);
+                _workers.execute(() -> serve(channel));
+            } else {
+                _stats.connection(true);
+                _workers.execute(() -> refuse(channel));
+            }
+        }
+    }
+
+    /** Start serving connections on a new thread, returning at once. */
+    void start() {
+        Thread acceptor = new Thread(this::serve, "enigma-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** Stop accepting connections, and remove my socket file, if any.
+     *  Connections in progress are served until their clients close
+     *  them. */
+    @Override
+    public void close() throws IOException {
+        SocketAddress address = _server.getLocalAddress();
+        _server.close();
+        _workers.shutdown();
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address)
+                                 .getPath());
+        }
+    }
+
+    /** Answer the requests arriving on CHANNEL until its client closes
+     *  it or breaks the protocol. */
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            MachineCache machines = _caches.get();
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel),
+                                        BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel),
+                                         BUFFER_SIZE));
+            while (true) {
+                String settings = readField(in, true);
+                if (settings == null) {
+                    break;
+                }
+                String message = readField(in, false);
+                long start = System.nanoTime();
+                String reply;
+                boolean failed = false;
+                try {
+                    reply = machines.get(settings).convert(message);
+                } catch (EnigmaException excp) {
+                    reply = excp.getMessage();
+                    failed = true;
+                } catch (RuntimeException excp) {
+                    reply = "malformed settings: " + settings;
+                    failed = true;
+                }
+                _stats.record(message.length(), System.nanoTime() - start,
+                              failed);
+                writeReply(out, failed, reply);
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            /* The client has gone, or sent something unreadable. */
+        } finally {
+            _permits.release();
+        }
+    }
+
+    /** Tell the client on CHANNEL that there are too many connections,
+     *  and close it. */
+    private void refuse(SocketChannel channel) {
+        try (channel) {
+            DataOutputStream out =
+                new DataOutputStream(Channels.newOutputStream(channel));
+            writeReply(out, true, "too many connections");
+            out.flush();
+        } catch (IOException excp) {
+            /* The client has gone. */
+        }
+    }
+
+    /** Return the next length-prefixed field from IN.  If OPTIONAL, the
+     *  input may end instead, in which case returns null. */
+    static String readField(DataInputStream in, boolean optional)
+        throws IOException {
+        int b = in.read();
+        if (b < 0 && optional) {
+            return null;
+        }
+        int length = (b << 24) | (in.readUnsignedByte() << 16)
+            | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+        if (b < 0 || length < 0 || length > MAX_FIELD) {
+            throw new EOFException("bad field length");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write TEXT to OUT as a length-prefixed field. */
+    static void writeField(DataOutputStream out, String text)
+        throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Write a reply of TEXT, which is an error message iff FAILED, to
+     *  OUT. */
+    private static void writeReply(DataOutputStream out, boolean failed,
+                                   String text) throws IOException {
+        out.writeByte(failed ? FAILED : OK);
+        writeField(out, text);
+    }
+
+    /** Return an executor that runs each task on a new virtual thread,
+     *  if the runtime has them, and otherwise on a pooled thread. */
+    private static ExecutorService newExecutor() {
+        try {
+            Method virtual =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "enigma-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Status byte of a successful reply. */
+    static final int OK = 0;
+
+    /** Status byte of a reply carrying an error message. */
+    static final int FAILED = 1;
+
+    /** Largest field accepted, in bytes. */
+    static final int MAX_FIELD = 1 << 24;
+
+    /** Default largest number of connections served at once. */
+    static final int DEFAULT_MAX_CONNECTIONS = 1024;
+
+    /** Prefix of a Unix-domain socket address. */
+    static final String UNIX_PREFIX = "unix:";
+
+    /** Size of each connection's buffers. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** Socket on which connections arrive. */
+    private final ServerSocketChannel _server;
+
+    /** Source of each connection's machines. */
+    private final Supplier<MachineCache> _caches;
+
+    /** One permit for each connection that may be served. */
+    private final Semaphore _permits;
+
+    /** Runs connections. */
+    private final ExecutorService _workers;
+
+    /** Counts of requests served. */
+    private final ServerStats _stats;
+}
@@ -0,0 +1,192 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the EnigmaServer class.  Servers
+ *  listen on the loopback interface only.
+ *  @author Bon Hee Koo
+ */
+public class EnigmaServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a started server on ADDRESS serving at most MAXCONNECTIONS
+     *  connections, whose settings lines are "ROTORS:SETTING:PLUGBOARD"
+     *  for the naval rotors. */
+    private static EnigmaServer server(String address, int maxConnections)
+        throws IOException {
+        EnigmaServer server = new EnigmaServer(
+            EnigmaServer.bind(address),
+            () -> new MachineCache(4, settings -> {
+                String[] parts = settings.split(":", -1);
+                return navalMachine(parts[0], parts[1], parts[2]);
+            }),
+            maxConnections);
+        server.start();
+        return server;
+    }
+
+    /** A settings line for the sample message. */
+    private static final String SAMPLE =
+        "B Beta III IV I:AXLE:(HQ) (EX) (IP) (TR) (BY)";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRequests() throws IOException {
+        try (EnigmaServer server = server("127.0.0.1:0", 4);
+             EnigmaClient client = new EnigmaClient(server.address())) {
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                         client.convert(SAMPLE,
+                                        "FROM his shoulder Hiawatha"));
+            assertEquals("FROMHISSHOULDERHIAWATHA",
+                         client.convert(SAMPLE, "QVPQS OKOIL PUBKJ ZPISF "
+                                        + "XDW"));
+            assertEquals("", client.convert(SAMPLE, ""));
+            assertEquals(3, server.stats().requests());
+        }
+    }
+
+    @Test
+    public void checkPipelining() throws IOException {
+        int n = 200;
+        try (EnigmaServer server = server("127.0.0.1:0", 4);
+             EnigmaClient client = new EnigmaClient(server.address())) {
+            for (int i = 0; i < n; i += 1) {
+                String settings = i % 2 == 0 ? SAMPLE
+                    : "C Gamma IV V VI:CCCC:(AB)";
+                client.send(settings, i % 2 == 0 ? "FROMHISSHOULDERHIAWATHA"
+                            : "FROM1");
+            }
+            client.flush();
+            for (int i = 0; i < n; i += 1) {
+                if (i % 2 == 0) {
+                    assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                                 client.receive());
+                } else {
+                    try {
+                        client.receive();
+                        fail("expected an error");
+                    } catch (EnigmaException excp) {
+                        /* '1' is not in the alphabet. */
+                    }
+                }
+            }
+            assertEquals(n, server.stats().requests());
+            assertEquals(n / 2, server.stats().errors());
+        }
+    }
+
+    @Test
+    public void checkBadSettings() throws IOException {
+        try (EnigmaServer server = server("127.0.0.1:0", 4);
+             EnigmaClient client = new EnigmaClient(server.address())) {
+            try {
+                client.convert("B Beta I II NONE:AAAA:", "HELLO");
+                fail("expected an error");
+            } catch (EnigmaException excp) {
+                /* expected */
+            }
+            try {
+                client.convert("no colons", "HELLO");
+                fail("expected an error");
+            } catch (EnigmaException excp) {
+                /* expected */
+            }
+            assertEquals("QVPQ", client.convert(SAMPLE, "FROM"));
+        }
+    }
+
+    @Test
+    public void checkConnectionLimit() throws IOException {
+        try (EnigmaServer server = server("127.0.0.1:0", 1);
+             EnigmaClient first = new EnigmaClient(server.address())) {
+            assertEquals("QVPQ", first.convert(SAMPLE, "FROM"));
+            try (EnigmaClient second = new EnigmaClient(server.address())) {
+                second.convert(SAMPLE, "FROM");
+                fail("expected too many connections");
+            } catch (EnigmaException excp) {
+                assertEquals("too many connections", excp.getMessage());
+            }
+            assertEquals("QVPQ", first.convert(SAMPLE, "FROM"));
+            assertEquals(1, server.stats().refused());
+        }
+    }
+
+    @Test
+    public void checkConcurrentClients() throws Exception {
+        try (EnigmaServer server = server("127.0.0.1:0", 8)) {
+            Thread[] clients = new Thread[8];
+            String[] failures = new String[clients.length];
+            for (int t = 0; t < clients.length; t += 1) {
+                int k = t;
+                clients[t] = new Thread(() -> {
+                    try (EnigmaClient client =
+                         new EnigmaClient(server.address())) {
+                        for (int i = 0; i < 50; i += 1) {
+                            String reply = client.convert(SAMPLE, "FROM");
+                            if (!reply.equals("QVPQ")) {
+                                failures[k] = reply;
+                            }
+                        }
+                    } catch (IOException | EnigmaException excp) {
+                        failures[k] = excp.toString();
+                    }
+                });
+                clients[t].start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            for (String failure : failures) {
+                assertNull(failure);
+            }
+            assertEquals(400, server.stats().requests());
+        }
+    }
+
+    @Test
+    public void checkUnixSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("enigma.sock");
+        try (EnigmaServer server = server("unix:" + socket, 2);
+             EnigmaClient client = new EnigmaClient(server.address())) {
+            assertEquals("QVPQ", client.convert(SAMPLE, "FROM"));
+        }
+        assertFalse(Files.exists(socket));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void checkStats() {
+        ServerStats stats = new ServerStats();
+        assertEquals(0, stats.latency(0.5));
+        for (int i = 0; i < 99; i += 1) {
+            stats.record(10, 1000, false);
+        }
+        stats.record(10, 1000000, true);
+        assertEquals(100, stats.requests());
+        assertEquals(1000, stats.chars());
+        assertEquals(1, stats.errors());
+        long slack = Histogram.SUB_BUCKETS;
+        for (double q : new double[] { 0.5, 0.99 }) {
+            assertTrue(stats.latency(q) >= 1000);
+            assertTrue(stats.latency(q) < 1000 + 1000 / slack);
+        }
+        assertTrue(stats.latency(1) >= 1000000);
+        assertTrue(stats.latency(1) < 1000000 + 1000000 / slack);
+    }
+}
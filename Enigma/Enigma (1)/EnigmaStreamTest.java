@@ -0,0 +1,246 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.ByteConverterTest.*;
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the EnigmaReader, EnigmaWriter,
+ *  EnigmaInputStream, EnigmaOutputStream and EnigmaChannel classes.
+ *  @author Bon Hee Koo
+ */
+public class EnigmaStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A text with lower-case letters, blanks, punctuation and line
+     *  terminators. */
+    private static final String TEXT =
+        "From his shoulder Hiawatha\nTook the camera of rosewood,\n"
+        + "Made of sliding, folding rosewood;\r\nNeatly put it all "
+        + "together.\n";
+
+    /** Return a naval machine for the tests. */
+    private static Machine machine() {
+        return navalMachine("B Beta III IV I", "AXLE", "(HQ) (EX) (IP)");
+    }
+
+    /** Return TEXT converted by M one letter at a time, keeping every
+     *  other character. */
+    private static String expected(Machine M, String text) {
+        StringBuilder result = new StringBuilder();
+        for (char ch : text.toCharArray()) {
+            String s = String.valueOf(ch);
+            result.append(Character.isLetter(ch) ? M.convert(s) : s);
+        }
+        return result.toString();
+    }
+
+    /** Return everything read from IN, CHUNK characters at a time. */
+    private static String readAll(EnigmaReader in, int chunk)
+        throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[chunk];
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            result.append(buf, 0, n);
+        }
+        return result.toString();
+    }
+
+    /** A channel that takes at most LIMIT bytes per write, and none on
+     *  every third, as a non-blocking channel might. */
+    private static final class SlowChannel implements WritableByteChannel {
+        /** A channel writing to OUT. */
+        SlowChannel(ByteArrayOutputStream out, int limit) {
+            _out = out;
+            _limit = limit;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            _calls += 1;
+            if (_calls % 3 == 0) {
+                return 0;
+            }
+            int n = Math.min(src.remaining(), _limit);
+            for (int i = 0; i < n; i += 1) {
+                _out.write(src.get());
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Destination of written bytes. */
+        private final ByteArrayOutputStream _out;
+        /** Most bytes taken per write. */
+        private final int _limit;
+        /** Number of writes so far. */
+        private int _calls;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testReaderKeepsLayout() throws IOException {
+        String want = expected(machine(), TEXT);
+        for (int chunk : new int[] { 1, 7, 4096 }) {
+            EnigmaReader in = new EnigmaReader(new StringReader(TEXT),
+                                               machine());
+            assertEquals("chunk " + chunk, want, readAll(in, chunk));
+        }
+        EnigmaReader in = new EnigmaReader(new StringReader(TEXT),
+                                           machine());
+        assertEquals(want.charAt(0), in.read());
+    }
+
+    @Test
+    public void testReaderSkip() throws IOException {
+        String want = expected(machine(), TEXT);
+        EnigmaReader in = new EnigmaReader(new StringReader(TEXT),
+                                           machine());
+        assertEquals(20, in.skip(20));
+        assertEquals(want.substring(20), readAll(in, 16));
+        assertFalse(in.markSupported());
+    }
+
+    @Test
+    public void testWriterMatchesReader() throws IOException {
+        String want = expected(machine(), TEXT);
+        char[] text = TEXT.toCharArray();
+        StringWriter sink = new StringWriter();
+        EnigmaWriter out = new EnigmaWriter(sink, machine());
+        out.write(text[0]);
+        out.write(text, 1, 30);
+        out.write(TEXT, 31, TEXT.length() - 31);
+        out.flush();
+        assertEquals(want, sink.toString());
+        assertEquals(TEXT, new String(text));
+    }
+
+    @Test
+    public void testCharRoundTrip() throws IOException {
+        StringWriter sink = new StringWriter();
+        EnigmaWriter out = new EnigmaWriter(sink, machine());
+        out.write(readAll(new EnigmaReader(new StringReader(TEXT),
+                                           machine()), 64));
+        assertEquals(TEXT.toUpperCase(), sink.toString());
+    }
+
+    @Test
+    public void testByteStreams() throws IOException {
+        Random random = new Random(1);
+        Machine M = byteMachine(random);
+        Machine reference = M.copy();
+        Machine inverse = M.copy();
+        byte[] msg = randomBytes(random, 100000);
+        byte[] want = new byte[msg.length];
+        reference.convert(msg, 0, msg.length, want, 0);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        OutputStream out = new EnigmaOutputStream(sink, M);
+        out.write(msg[0]);
+        for (int i = 1; i < msg.length;) {
+            int n = Math.min(msg.length - i, random.nextInt(40000));
+            out.write(msg, i, n);
+            i += n;
+        }
+        out.close();
+        assertArrayEquals(want, sink.toByteArray());
+        EnigmaInputStream in = new EnigmaInputStream(
+            new ByteArrayInputStream(want), inverse);
+        byte[] result = new byte[msg.length];
+        result[0] = (byte) in.read();
+        assertEquals(999, in.skip(999));
+        in.read(result, 1000, 300);
+        int k = 1300;
+        for (int n = in.read(result, k, msg.length - k); n > 0;
+             n = in.read(result, k, msg.length - k)) {
+            k += n;
+        }
+        assertEquals(msg.length, k);
+        assertEquals(-1, in.read());
+        assertEquals(msg[0], result[0]);
+        for (int i = 1000; i < msg.length; i += 1) {
+            assertEquals(msg[i], result[i]);
+        }
+    }
+
+    @Test
+    public void testChannel() throws IOException {
+        Random random = new Random(2);
+        Machine M = byteMachine(random);
+        Machine reference = M.copy();
+        byte[] msg = randomBytes(random, 200000);
+        byte[] want = new byte[msg.length];
+        reference.convert(msg, 0, msg.length, want, 0);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        EnigmaChannel out = new EnigmaChannel(new SlowChannel(sink, 5000),
+                                              M);
+        ByteBuffer src = ByteBuffer.allocateDirect(msg.length);
+        src.put(msg).flip();
+        while (src.hasRemaining()) {
+            out.write(src);
+        }
+        while (!out.flush()) {
+            continue;
+        }
+        out.close();
+        assertFalse(out.isOpen());
+        assertArrayEquals(want, sink.toByteArray());
+    }
+
+    @Test
+    public void testChannelCloseWithPendingBytes() throws IOException {
+        Random random = new Random(3);
+        Machine M = byteMachine(random);
+        Machine reference = M.copy();
+        byte[] msg = randomBytes(random, 200);
+        byte[] want = new byte[msg.length];
+        reference.convert(msg, 0, msg.length, want, 0);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        EnigmaChannel out = new EnigmaChannel(new SlowChannel(sink, 40), M);
+        assertEquals(msg.length, out.write(ByteBuffer.wrap(msg)));
+        assertEquals(80, sink.size());
+        try {
+            out.close();
+            fail("close with bytes pending should fail");
+        } catch (IOException excp) {
+            assertTrue(out.isOpen());
+            assertEquals(160, sink.size());
+        }
+        assertTrue(out.flush());
+        out.close();
+        assertFalse(out.isOpen());
+        assertArrayEquals(want, sink.toByteArray());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testByteStreamNeedsBytes() {
+        new EnigmaInputStream(new ByteArrayInputStream(new byte[1]),
+                              machine());
+    }
+}
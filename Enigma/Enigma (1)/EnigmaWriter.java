@@ -0,0 +1,63 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that converts the characters written to it with a machine,
+ *  as EnigmaReader does, and writes the results to another.  Characters
+ *  are copied into a reusable buffer, converted there and passed on a
+ *  buffer at a time, so the caller's arrays are never changed and no
+ *  message is assembled whole.  The machine must not be used otherwise
+ *  while the writer is, and a writer is used by one thread at a time.
+ *  @author Bon Hee Koo
+ */
+final class EnigmaWriter extends FilterWriter {
+
+    /** A writer converting characters with M, whose rotors must be set
+     *  up, and writing them to OUT. */
+    EnigmaWriter(Writer out, Machine M) {
+        super(out);
+        _machine = M;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        _buffer[0] = (char) c;
+        _machine.convertText(_buffer, 0, 1);
+        out.write(_buffer[0]);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, BUFFER_SIZE);
+            System.arraycopy(cbuf, off, _buffer, 0, n);
+            _machine.convertText(_buffer, 0, n);
+            out.write(_buffer, 0, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, BUFFER_SIZE);
+            str.getChars(off, off + n, _buffer, 0);
+            _machine.convertText(_buffer, 0, n);
+            out.write(_buffer, 0, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Number of characters converted at a time. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** The machine converting my characters. */
+    private final Machine _machine;
+
+    /** Characters being converted. */
+    private final char[] _buffer = new char[BUFFER_SIZE];
+}
@@ -13,6 +13,17 @@ class FixedRotor extends Rotor {
         super(name, perm);
         set(0);
     }
+
+    /** A non-moving rotor with wiring WIRING, at setting 0. */
+    FixedRotor(RotorWiring wiring) {
+        super(wiring);
+    }
+
+    @Override
+    Rotor copy() {
+        return copyInto(new FixedRotor(wiring()));
+    }
+
     @Override
     void advance() {
         throw new EnigmaException(" Advance is not"
@@ -0,0 +1,168 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** Writes converted message lines in groups of characters separated by
+ *  blanks.  Characters are encoded straight into a reusable byte buffer,
+ *  which is written out only when it fills or on flush(), so a line may
+ *  be written in any number of pieces without being assembled first.
+ *  @author Bon Hee Koo
+ */
+final class GroupWriter implements Closeable, Flushable {
+
+    /** A writer onto OUT in the default character set with groups of
+     *  five. */
+    GroupWriter(WritableByteChannel out) {
+        this(out, Charset.defaultCharset(), 5);
+    }
+
+    /** A writer onto OUT in character set CHARSET with groups of
+     *  GROUPSIZE > 0 characters. */
+    GroupWriter(WritableByteChannel out, Charset charset, int groupSize) {
+        if (groupSize <= 0) {
+            throw error("bad group size: %d", groupSize);
+        }
+        _out = out;
+        _groupSize = groupSize;
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _ascii = charset.equals(StandardCharsets.US_ASCII)
+            || charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.ISO_8859_1);
+        _buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        _separator = encode(System.lineSeparator());
+        _pending = CharBuffer.allocate(1);
+    }
+
+    /** Append the LEN characters of MSG starting at OFF to the current
+     *  line, following every complete group with a blank. */
+    void write(char[] msg, int off, int len) {
+        int col = _column;
+        for (int i = off; i < off + len; i += 1) {
+            put(msg[i]);
+            col += 1;
+            if (col == _groupSize) {
+                put(' ');
+                col = 0;
+            }
+        }
+        _column = col;
+    }
+
+    /** End the current line. */
+    void endLine() {
+        if (_buffer.remaining() < _separator.length) {
+            drain();
+        }
+        _buffer.put(_separator);
+        _column = 0;
+    }
+
+    /** Write out everything buffered so far. */
+    @Override
+    public void flush() {
+        drain();
+    }
+
+    /** Flush, then close the underlying channel. */
+    @Override
+    public void close() {
+        drain();
+        try {
+            _out.close();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Encode C into the buffer. */
+    private void put(char c) {
+        if (_ascii && c < ASCII_LIMIT) {
+            if (!_buffer.hasRemaining()) {
+                drain();
+            }
+            _buffer.put((byte) c);
+            return;
+        }
+        if (_buffer.remaining() < MAX_CHAR_BYTES) {
+            drain();
+        }
+        _pending.clear();
+        _pending.put(c).flip();
+        _encoder.encode(_pending, _buffer, false);
+    }
+
+    /** Write the buffer to the channel and clear it. */
+    private void drain() {
+        _buffer.flip();
+        try {
+            Metrics.BYTES_OUT.add(_buffer.remaining());
+            while (_buffer.hasRemaining()) {
+                _out.write(_buffer);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        } finally {
+            _buffer.clear();
+        }
+    }
+
+    /** Return S encoded in my character set. */
+    private byte[] encode(String s) {
+        try {
+            ByteBuffer bytes = _encoder.encode(CharBuffer.wrap(s));
+            byte[] result = new byte[bytes.remaining()];
+            bytes.get(result);
+            return result;
+        } catch (IOException excp) {
+            throw error("cannot encode line separator");
+        } finally {
+            _encoder.reset();
+        }
+    }
+
+    /** Size of the output buffer in bytes. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Characters below this are encoded as single bytes when _ascii. */
+    private static final int ASCII_LIMIT = 0x80;
+
+    /** Room left in the buffer before encoding a non-ASCII character. */
+    private static final int MAX_CHAR_BYTES = 8;
+
+    /** Destination. */
+    private final WritableByteChannel _out;
+
+    /** Number of characters in a group. */
+    private final int _groupSize;
+
+    /** Encoder for characters outside the ASCII fast path. */
+    private final CharsetEncoder _encoder;
+
+    /** True iff my character set encodes ASCII as single bytes. */
+    private final boolean _ascii;
+
+    /** Bytes not yet written. */
+    private final ByteBuffer _buffer;
+
+    /** Encoded line separator. */
+    private final byte[] _separator;
+
+    /** Holds a character being encoded. */
+    private final CharBuffer _pending;
+
+    /** Number of characters in the current group so far. */
+    private int _column;
+}
@@ -0,0 +1,91 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the GroupWriter class.
+ *  @author Bon Hee Koo
+ */
+public class GroupWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return MSG in groups of five, as Main formatted it originally. */
+    private static String reference(String msg) {
+        String outcome = msg;
+        if (msg.length() >= 5) {
+            outcome = msg.substring(0, 5) + " ";
+            for (int i = 1; i < (msg.length() / 5); i++) {
+                outcome = outcome + msg.substring(i * 5, i * 5 + 5) + " ";
+            }
+            if (msg.length() % 5 != 0 && msg.length() > 5) {
+                outcome += msg.substring(msg.length() - (msg.length() % 5));
+            }
+        }
+        return outcome + System.lineSeparator();
+    }
+
+    /** Return the output of writing MSG as one line, in pieces of at
+     *  most PIECE characters. */
+    private static String grouped(String msg, int piece) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(Channels.newChannel(bytes),
+                                          StandardCharsets.UTF_8, 5);
+        char[] chars = msg.toCharArray();
+        for (int i = 0; i < chars.length; i += piece) {
+            out.write(chars, i, Math.min(piece, chars.length - i));
+        }
+        out.endLine();
+        out.close();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkMatchesReference() {
+        String text = UPPER_STRING + UPPER_STRING;
+        for (int len = 0; len <= text.length(); len += 1) {
+            String msg = text.substring(0, len);
+            for (int piece = 1; piece <= 7; piece += 1) {
+                assertEquals(msg(msg, "piece %d", piece),
+                             reference(msg), grouped(msg, piece));
+            }
+        }
+    }
+
+    @Test
+    public void checkLongLine() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 20000; i += 1) {
+            msg.append(UPPER_STRING.charAt(i % 26));
+        }
+        String text = msg.toString();
+        assertEquals(reference(text), grouped(text, 4099));
+    }
+
+    @Test
+    public void checkGroupSizeAndCharset() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(Channels.newChannel(bytes),
+                                          StandardCharsets.UTF_8, 3);
+        char[] msg = "AB\u00e9\u4e2dEFG".toCharArray();
+        out.write(msg, 0, msg.length);
+        out.endLine();
+        out.flush();
+        assertEquals("AB\u00e9 \u4e2dEF G" + System.lineSeparator(),
+                     new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,85 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A histogram of non-negative values, such as latencies in nanoseconds.
+ *  Values below SUB_BUCKETS are counted exactly; larger ones in buckets
+ *  that split each power of two into SUB_BUCKETS equal parts, so that
+ *  quantiles are reported to within 1/SUB_BUCKETS of their value.  May
+ *  be updated and read by any number of threads at once.
+ *  @author Bon Hee Koo
+ */
+final class Histogram {
+
+    /** Count VALUE, which must be >= 0. */
+    void record(long value) {
+        _counts.incrementAndGet(bucket(Math.max(value, 0)));
+    }
+
+    /** Return the number of values recorded. */
+    long count() {
+        long total = 0;
+        for (int i = 0; i < _counts.length(); i += 1) {
+            total += _counts.get(i);
+        }
+        return total;
+    }
+
+    /** Return an upper bound on the largest of the fraction Q of values
+     *  that are smallest, which exceeds it by less than 1/SUB_BUCKETS of
+     *  its value, or 0 if there are no values. */
+    long quantile(double q) {
+        long rank = (long) Math.ceil(q * count());
+        long seen = 0;
+        for (int i = 0; i < _counts.length(); i += 1) {
+            seen += _counts.get(i);
+            if (seen >= rank && seen > 0) {
+                return limit(i);
+            }
+        }
+        return 0;
+    }
+
+    /** Forget all values recorded. */
+    void reset() {
+        for (int i = 0; i < _counts.length(); i += 1) {
+            _counts.set(i, 0);
+        }
+    }
+
+    /** Return NANOS formatted as microseconds, for reports of
+     *  histograms of latencies. */
+    static String micros(long nanos) {
+        return String.format("%.1fus", nanos / 1e3);
+    }
+
+    /** Return the bucket counting VALUE >= 0. */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int e = 63 - Long.numberOfLeadingZeros(value);
+        int m = (int) (value >>> (e - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (e - SUB_BITS + 1) * SUB_BUCKETS + m;
+    }
+
+    /** Return the largest value counted by bucket I. */
+    private static long limit(int i) {
+        if (i < SUB_BUCKETS) {
+            return i;
+        }
+        int e = i / SUB_BUCKETS + SUB_BITS - 1;
+        long m = i % SUB_BUCKETS;
+        return ((SUB_BUCKETS + m + 1) << (e - SUB_BITS)) - 1;
+    }
+
+    /** Log base 2 of SUB_BUCKETS. */
+    private static final int SUB_BITS = 3;
+
+    /** Number of buckets per power of two. */
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** _counts[bucket(v)] counts the values v recorded. */
+    private final AtomicLongArray _counts =
+        new AtomicLongArray(bucket(Long.MAX_VALUE) + 1);
+}
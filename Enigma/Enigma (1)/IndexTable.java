@@ -0,0 +1,110 @@
+package enigma;
+
+/** A read-only table of indices in the range 0 .. bound - 1, stored in the
+ *  narrowest primitive array (byte, short or int) that can hold them.
+ *  @author Bon Hee Koo
+ */
+abstract class IndexTable {
+
+    /** Return a table holding a copy of VALUES, each of which must lie in
+     *  the range 0 .. BOUND - 1. */
+    static IndexTable of(int[] values, int bound) {
+        if (bound <= BYTE_LIMIT) {
+            return new ByteTable(values);
+        } else if (bound <= SHORT_LIMIT) {
+            return new ShortTable(values);
+        } else {
+            return new IntTable(values);
+        }
+    }
+
+    /** Return entry I of this table, where 0 <= I < size(). */
+    abstract int get(int i);
+
+    /** Return the number of entries in this table. */
+    abstract int size();
+
+    /** Return a copy of my entries as an int array. */
+    int[] toArray() {
+        int[] result = new int[size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = get(i);
+        }
+        return result;
+    }
+
+    /** Largest bound whose values fit in an unsigned byte. */
+    static final int BYTE_LIMIT = 1 << 8;
+
+    /** Largest bound whose values fit in an unsigned short. */
+    static final int SHORT_LIMIT = 1 << 16;
+
+    /** Table of unsigned 8-bit entries. */
+    private static final class ByteTable extends IndexTable {
+        /** A table holding VALUES. */
+        ByteTable(int[] values) {
+            _table = new byte[values.length];
+            for (int i = 0; i < values.length; i += 1) {
+                _table[i] = (byte) values[i];
+            }
+        }
+
+        @Override
+        int get(int i) {
+            return _table[i] & 0xff;
+        }
+
+        @Override
+        int size() {
+            return _table.length;
+        }
+
+        /** Entries. */
+        private final byte[] _table;
+    }
+
+    /** Table of unsigned 16-bit entries. */
+    private static final class ShortTable extends IndexTable {
+        /** A table holding VALUES. */
+        ShortTable(int[] values) {
+            _table = new short[values.length];
+            for (int i = 0; i < values.length; i += 1) {
+                _table[i] = (short) values[i];
+            }
+        }
+
+        @Override
+        int get(int i) {
+            return _table[i] & 0xffff;
+        }
+
+        @Override
+        int size() {
+            return _table.length;
+        }
+
+        /** Entries. */
+        private final short[] _table;
+    }
+
+    /** Table of full-width int entries. */
+    private static final class IntTable extends IndexTable {
+        /** A table holding VALUES. */
+        IntTable(int[] values) {
+            _table = values.clone();
+        }
+
+        @Override
+        int get(int i) {
+            return _table[i];
+        }
+
+        @Override
+        int size() {
+            return _table.length;
+        }
+
+        /** Entries. */
+        private final int[] _table;
+    }
+}
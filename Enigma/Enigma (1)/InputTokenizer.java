@@ -0,0 +1,334 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.*;
+
+/** A streaming reader of configurations and messages.  Reads a channel in
+ *  fixed-size blocks and hands out whitespace-delimited tokens, whole
+ *  lines, or the characters of a line in chunks, so that memory use
+ *  does not depend on the length of a message line.  Looking ahead for a
+ *  token holds the whitespace before it and the token itself in memory,
+ *  so that run is limited to MAX_LOOKAHEAD characters.  Tokens and line
+ *  terminators follow the conventions of java.util.Scanner.  I/O errors
+ *  are reported as EnigmaExceptions.
+ *  @author Bon Hee Koo
+ */
+final class InputTokenizer implements Closeable {
+
+    /** A tokenizer reading SOURCE in the default character set. */
+    InputTokenizer(ReadableByteChannel source) {
+        this(source, Charset.defaultCharset());
+    }
+
+    /** A tokenizer reading SOURCE in character set CHARSET. */
+    InputTokenizer(ReadableByteChannel source, Charset charset) {
+        this(source, null, charset);
+    }
+
+    /** Returns a tokenizer that reads FILE, in the default character set,
+     *  by mapping it into memory a window at a time.  Input is decoded
+     *  directly from the mapped pages, and files of any length may be
+     *  read. */
+    static InputTokenizer mapped(FileChannel file) {
+        return mapped(file, WINDOW_SIZE);
+    }
+
+    /** Returns a tokenizer that reads FILE as for mapped(FILE), through
+     *  windows of WINDOWSIZE bytes. */
+    static InputTokenizer mapped(FileChannel file, long windowSize) {
+        return new InputTokenizer(file, file, windowSize,
+                                  Charset.defaultCharset());
+    }
+
+    /** A tokenizer reading SOURCE in character set CHARSET, by mapping
+     *  FILE if it is not null. */
+    private InputTokenizer(ReadableByteChannel source, FileChannel file,
+                           Charset charset) {
+        this(source, file, WINDOW_SIZE, charset);
+    }
+
+    /** A tokenizer reading SOURCE in character set CHARSET, by mapping
+     *  FILE, if it is not null, in windows of WINDOWSIZE bytes. */
+    private InputTokenizer(ReadableByteChannel source, FileChannel file,
+                           long windowSize, Charset charset) {
+        _source = source;
+        _file = file;
+        _windowSize = windowSize;
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _bytes = ByteBuffer.allocate(file == null ? BUFFER_SIZE : 0);
+        _bytes.flip();
+        _chars = CharBuffer.allocate(BUFFER_SIZE);
+        _chars.flip();
+    }
+
+    /** Returns true iff there is another line of input, possibly
+     *  empty. */
+    boolean hasNextLine() {
+        return available(1);
+    }
+
+    /** Returns true iff there is another token in the input.  Does not
+     *  consume any input. */
+    boolean hasNext() {
+        return tokenStart() >= 0;
+    }
+
+    /** Returns the next token, without consuming it, or null if there is
+     *  none. */
+    String peek() {
+        int start = tokenStart();
+        if (start < 0) {
+            return null;
+        }
+        int end = start;
+        while (available(end + 1)
+               && !Character.isWhitespace(charAt(end))) {
+            end += 1;
+        }
+        char[] token = new char[end - start];
+        for (int i = start; i < end; i += 1) {
+            token[i - start] = charAt(i);
+        }
+        return new String(token);
+    }
+
+    /** Consumes and returns the next token. */
+    String next() {
+        String token = peek();
+        if (token == null) {
+            throw new NoSuchElementException();
+        }
+        int start = tokenStart();
+        _chars.position(_chars.position() + start + token.length());
+        return token;
+    }
+
+    /** Consumes the next token and returns its value as an integer. */
+    int nextInt() {
+        String token = next();
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException excp) {
+            throw new InputMismatchException(token);
+        }
+    }
+
+    /** Returns true iff the next line begins with C.  Does not consume
+     *  any input. */
+    boolean nextLineStartsWith(char c) {
+        return available(1) && charAt(0) == c;
+    }
+
+    /** Returns true iff the next line is empty.  Does not consume any
+     *  input. */
+    boolean nextLineIsEmpty() {
+        return available(1) && isTerminator(charAt(0));
+    }
+
+    /** Consumes and returns the rest of the current line, without its
+     *  terminator. */
+    String nextLine() {
+        if (!available(1)) {
+            throw new NoSuchElementException("No line found");
+        }
+        StringBuilder line = new StringBuilder();
+        char[] chunk = new char[LINE_CHUNK];
+        int n;
+        while ((n = read(chunk, 0, chunk.length)) >= 0) {
+            line.append(chunk, 0, n);
+        }
+        return line.toString();
+    }
+
+    /** Reads up to LEN characters of the current line into BUF starting
+     *  at OFF, never crossing the end of the line.  Returns the number of
+     *  characters read, or -1 if the line has been exhausted, in which
+     *  case its terminator has been consumed. */
+    int read(char[] buf, int off, int len) {
+        if (!available(1)) {
+            return -1;
+        }
+        int n = 0;
+        while (n < len && available(1)) {
+            CharBuffer chars = _chars;
+            int p = chars.position();
+            int end = Math.min(chars.limit(), p + len - n);
+            int k = p;
+            while (k < end && !isTerminator(chars.get(k))) {
+                k += 1;
+            }
+            chars.get(buf, off + n, k - p);
+            n += k - p;
+            if (k < end) {
+                if (n == 0) {
+                    skipTerminator();
+                    return -1;
+                }
+                break;
+            }
+        }
+        return n;
+    }
+
+    /** Consume the line terminator at the current position. */
+    private void skipTerminator() {
+        char c = _chars.get();
+        if (c == '\r' && available(1) && charAt(0) == '\n') {
+            _chars.get();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            _source.close();
+        } catch (IOException excp) {
+            throw error("could not close input: %s", excp.getMessage());
+        }
+    }
+
+    /** Returns the offset from the current position of the first
+     *  character of the next token, or -1 if there is none.  Reads ahead
+     *  as needed. */
+    private int tokenStart() {
+        int k = 0;
+        while (available(k + 1)) {
+            if (!Character.isWhitespace(charAt(k))) {
+                return k;
+            }
+            k += 1;
+        }
+        return -1;
+    }
+
+    /** Returns the buffered character K places past the current
+     *  position. */
+    private char charAt(int k) {
+        return _chars.get(_chars.position() + k);
+    }
+
+    /** Returns true iff C ends a line. */
+    private static boolean isTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+            || c == '\u0085';
+    }
+
+    /** Ensures that at least N unread characters are buffered, reading
+     *  and decoding more input as needed.  Returns false if the input
+     *  ends first.  N may be at most MAX_LOOKAHEAD. */
+    private boolean available(int n) {
+        while (_chars.remaining() < n) {
+            if (_eof) {
+                return false;
+            }
+            if (n > MAX_LOOKAHEAD) {
+                throw error("input has a token or run of blanks longer "
+                            + "than %d characters", MAX_LOOKAHEAD);
+            }
+            _chars.compact();
+            if (!_chars.hasRemaining()) {
+                CharBuffer larger = CharBuffer.allocate(
+                    Math.min(2 * _chars.capacity(), MAX_LOOKAHEAD));
+                _chars.flip();
+                larger.put(_chars);
+                _chars = larger;
+            }
+            decode();
+            _chars.flip();
+        }
+        return true;
+    }
+
+    /** Decodes more input into _chars, which is in fill mode, until at
+     *  least one character is added or the input ends. */
+    private void decode() {
+        int start = _chars.position();
+        try {
+            while (_chars.position() == start && !_eof) {
+                _decoder.decode(_bytes, _chars, false);
+                if (_chars.position() > start) {
+                    break;
+                }
+                if (!refill()) {
+                    _decoder.decode(_bytes, _chars, true);
+                    _decoder.flush(_chars);
+                    _eof = true;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Adds more input to _bytes, keeping any bytes not yet decoded.
+     *  Returns false if the source is exhausted. */
+    private boolean refill() throws IOException {
+        if (_file == null) {
+            _bytes.compact();
+            int n = _source.read(_bytes);
+            _bytes.flip();
+            if (n > 0) {
+                Metrics.BYTES_IN.add(n);
+            }
+            return n >= 0;
+        }
+        long start = _windowStart + _bytes.position();
+        long end = Math.min(start + _windowSize, _file.size());
+        if (end <= _windowStart + _bytes.limit()) {
+            return false;
+        }
+        Metrics.BYTES_IN.add(end - _windowStart - _bytes.limit());
+        _bytes = _file.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        _windowStart = start;
+        return true;
+    }
+
+    /** Size of the byte and character buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Largest number of characters looked ahead for a token. */
+    static final int MAX_LOOKAHEAD = 1 << 22;
+
+    /** Size of the pieces in which nextLine() collects a line. */
+    private static final int LINE_CHUNK = 256;
+
+    /** Size of the windows in which mapped files are read. */
+    static final long WINDOW_SIZE = 1L << 27;
+
+    /** Source of input. */
+    private final ReadableByteChannel _source;
+
+    /** File that is mapped for input, or null. */
+    private final FileChannel _file;
+
+    /** Size of the windows in which _file is mapped. */
+    private final long _windowSize;
+
+    /** Position in _file of the start of _bytes. */
+    private long _windowStart;
+
+    /** Decoder from bytes to characters. */
+    private final CharsetDecoder _decoder;
+
+    /** Bytes read but not yet decoded, in drain mode. */
+    private ByteBuffer _bytes;
+
+    /** Characters decoded but not yet consumed, in drain mode. */
+    private CharBuffer _chars;
+
+    /** True once the source is exhausted. */
+    private boolean _eof;
+}
@@ -0,0 +1,183 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the InputTokenizer class.
+ *  @author Bon Hee Koo
+ */
+public class InputTokenizerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A channel that returns the bytes of a string at most a few at a
+     *  time, and can be made to fail. */
+    private static final class Trickle implements ReadableByteChannel {
+        /** A channel returning the UTF-8 bytes of TEXT, at most STEP at a
+         *  time. */
+        Trickle(String text, int step) {
+            _bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            _step = step;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (_fail) {
+                throw new IOException("device error");
+            }
+            if (!_bytes.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(_step, dst.remaining()),
+                             _bytes.remaining());
+            ByteBuffer piece = _bytes.slice();
+            piece.limit(n);
+            dst.put(piece);
+            _bytes.position(_bytes.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Bytes not yet returned. */
+        private final ByteBuffer _bytes;
+        /** Most bytes returned by one read. */
+        private final int _step;
+        /** True if reads are to fail. */
+        private boolean _fail;
+    }
+
+    /** Return a tokenizer reading TEXT in UTF-8, STEP bytes at a time. */
+    private static InputTokenizer tokenizer(String text, int step) {
+        return new InputTokenizer(new Trickle(text, step),
+                                  StandardCharsets.UTF_8);
+    }
+
+    /** Return a tokenizer reading TEXT in UTF-8. */
+    private static InputTokenizer tokenizer(String text) {
+        return tokenizer(text, Integer.MAX_VALUE);
+    }
+
+    /** Return a string of N copies of C. */
+    private static String repeat(char c, int n) {
+        char[] result = new char[n];
+        Arrays.fill(result, c);
+        return new String(result);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testTokensAndLines() {
+        InputTokenizer in = tokenizer("ABC 5 3\n  I MQ (AE) \n\n* B\n");
+        assertEquals("ABC", in.next());
+        assertEquals(5, in.nextInt());
+        assertEquals("3", in.peek());
+        assertEquals(3, in.nextInt());
+        assertEquals("", in.nextLine());
+        assertEquals("I", in.next());
+        assertEquals(" MQ (AE) ", in.nextLine());
+        assertTrue(in.nextLineIsEmpty());
+        assertEquals("", in.nextLine());
+        assertTrue(in.nextLineStartsWith('*'));
+        assertEquals("* B", in.nextLine());
+        assertFalse(in.hasNextLine());
+        assertFalse(in.hasNext());
+        assertNull(in.peek());
+    }
+
+    @Test
+    public void testTerminators() {
+        InputTokenizer in =
+            tokenizer("ONE\r\nTWO\rTHREE\u2028FOUR\u2029FIVE\u0085\r\n");
+        String[] lines = { "ONE", "TWO", "THREE", "FOUR", "FIVE", "" };
+        for (String line : lines) {
+            assertTrue(in.hasNextLine());
+            assertEquals(line, in.nextLine());
+        }
+        assertFalse(in.hasNextLine());
+    }
+
+    @Test
+    public void testNoFinalNewline() {
+        InputTokenizer in = tokenizer("* B\nHELLO WORLD");
+        assertEquals("* B", in.nextLine());
+        assertTrue(in.hasNext());
+        assertEquals("HELLO WORLD", in.nextLine());
+        assertFalse(in.hasNextLine());
+        assertFalse(in.hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testNextAtEnd() {
+        InputTokenizer in = tokenizer("A \n ");
+        in.next();
+        in.next();
+    }
+
+    @Test
+    public void testAcrossBufferBoundary() {
+        int pad = InputTokenizer.BUFFER_SIZE - 3;
+        String token = "\u00e9" + repeat('X', 10) + "\u4e2d";
+        String line = repeat('Y', 3 * InputTokenizer.BUFFER_SIZE);
+        InputTokenizer in =
+            tokenizer(repeat(' ', pad) + token + "\n" + line + "\nEND", 7);
+        assertEquals(token, in.peek());
+        assertEquals(token, in.next());
+        assertEquals("", in.nextLine());
+        char[] chunk = new char[1000];
+        StringBuilder read = new StringBuilder();
+        int n;
+        while ((n = in.read(chunk, 0, chunk.length)) >= 0) {
+            assertTrue(n > 0);
+            read.append(chunk, 0, n);
+        }
+        assertEquals(line, read.toString());
+        assertEquals("END", in.next());
+    }
+
+    @Test
+    public void testDecoderRefill() {
+        String text = "\u00e9\u4e2d\ud83d\ude00 \u00e9\u00e9\n\u4e2d";
+        for (int step = 1; step <= 4; step += 1) {
+            InputTokenizer in = tokenizer(text, step);
+            assertEquals("\u00e9\u4e2d\ud83d\ude00", in.next());
+            assertEquals(" \u00e9\u00e9", in.nextLine());
+            assertEquals("\u4e2d", in.nextLine());
+            assertFalse(in.hasNextLine());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testLookaheadLimit() {
+        tokenizer(repeat('\n', InputTokenizer.MAX_LOOKAHEAD + 1) + "A")
+            .hasNext();
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testReadFailure() {
+        Trickle source = new Trickle("ABC", 1);
+        source._fail = true;
+        new InputTokenizer(source, StandardCharsets.UTF_8).hasNext();
+    }
+}
@@ -1,11 +1,18 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import static enigma.EnigmaException.*;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  A machine's rotors
+ *  are its own copies of the rotors in its catalog of available rotors,
+ *  so any number of machines, in any number of threads, may be built
+ *  from one catalog.  The catalog itself is never changed.
  *  @author Bon Hee Koo
  */
 class Machine {
@@ -19,8 +26,47 @@ class Machine {
     private int _numRotors;
     /** Rotor slots. */
     private Rotor[] _slots;
-    /** array list of rotors. */
-    private ArrayList<Rotor> _rotorArray;
+    /** array list of rotors, shared with my copies. */
+    private final List<Rotor> _rotorArray;
+    /** Scratch flags marking the rotors that advance on a keypress. */
+    private boolean[] _doesrotate;
+    /** Composition of the rotors left of the rightmost one, or null if
+     *  that engine is not in use. */
+    private int[] _innerCache;
+    /** True iff _innerCache matches the current rotor settings. */
+    private boolean _innerValid;
+    /** Rotor settings when the rotors were last inserted or set. */
+    private int[] _origin;
+    /** Number of characters converted since the rotors were last
+     *  inserted or set. */
+    private long _position;
+    /** Settings reached from _origin, or null if not yet computed. */
+    private SteppingSchedule _schedule;
+    /** Substitutions at every setting reached from _origin, or null if
+     *  that engine is not in use. */
+    private StateTable _stateTable;
+    /** Number in _stateTable of the current settings, when it is in use.
+     *  The settings of the rotors themselves are then out of date. */
+    private int _state;
+    /** Largest state table I may use, in bytes. */
+    private long _stateBudget = StateTable.DEFAULT_BUDGET;
+    /** Number of characters converted without a state table since the
+     *  rotors were last inserted or set. */
+    private long _untabled;
+    /** Value of _untabled at which to consider using a state table. */
+    private long _tableCheck;
+    /** True iff I am to use a generated converter where one exists. */
+    private boolean _specialize;
+    /** Converter generated for my rotors, or null if that engine is not
+     *  in use. */
+    private SpecializedConverter _special;
+    /** Settings of my rotors used by _special. */
+    private int[] _specialSettings;
+    /** True iff _specialSettings, rather than my rotors, hold the
+     *  current settings. */
+    private boolean _specialAhead;
+    /** The image of each index under my plugboard. */
+    private int[] _plugArray;
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
@@ -30,116 +76,584 @@ class Machine {
         _alphabet = alpha;
         _allrotors = allRotors;
         _plugboard = new Permutation("", _alphabet);
+        _plugArray = _plugboard.toArray();
         _pawls = pawls;
-        _rotorArray = (ArrayList<Rotor>) allRotors;
+        _rotorArray =
+            Collections.unmodifiableList(new ArrayList<>(allRotors));
         _numRotors = numRotors;
     }
 
+    /** A new machine with the same alphabet, slots, pawls, catalog and
+     *  plugboard as ORIGINAL, and no rotors inserted. */
+    private Machine(Machine original) {
+        _alphabet = original._alphabet;
+        _allrotors = original._allrotors;
+        _plugboard = original._plugboard;
+        _plugArray = original._plugArray;
+        _pawls = original._pawls;
+        _rotorArray = original._rotorArray;
+        _numRotors = original._numRotors;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
     }
-    /** Set my rotor slots to the rotors named ROTORS from my set of
-     *  available rotors (ROTORS[0] names the reflector).
+    /** Return the number of pawls I have. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the rotors available to insertRotors, which must not be
+     *  changed. */
+    List<Rotor> catalog() {
+        return _rotorArray;
+    }
+
+    /** Set my rotor slots to copies of the rotors named ROTORS from my
+     *  set of available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        dropStateTable();
+        _specialAhead = false;
         _slots = new Rotor[_numRotors];
+        _doesrotate = new boolean[_numRotors];
+        _innerValid = false;
         int i = 0;
         while (i < _slots.length) {
+            Rotor found = null;
             int j = 0;
-            if (j >= 0) {
-                while (j < _rotorArray.size()) {
-                    if (_rotorArray.get(j).name().equals(rotors[i])) {
-                        _slots[i] = _rotorArray.get(j);
-                    }
-                    j++;
+            while (j < _rotorArray.size()) {
+                if (_rotorArray.get(j).name().equals(rotors[i])) {
+                    found = _rotorArray.get(j);
                 }
+                j++;
             }
+            if (found == null) {
+                throw error("no rotor named %s", rotors[i]);
+            }
+            _slots[i] = found.copy();
+            _slots[i].precompute();
             i++;
         }
+        _special = _specialize ? ConverterCompiler.compile(_slots) : null;
+        _specialSettings = new int[_numRotors];
+        markOrigin();
     }
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        dropStateTable();
+        syncRotors();
+        _innerValid = false;
         int i = 0;
         while (i < setting.length()) {
             _slots[i + 1].set(setting.charAt(i));
             i++;
         }
+        markOrigin();
+    }
+
+    /** Record the current rotor settings as position 0. */
+    private void markOrigin() {
+        _origin = new int[_numRotors];
+        for (int i = 0; i < _numRotors; i += 1) {
+            _origin[i] = _slots[i].setting();
+        }
+        _position = 0;
+        _schedule = null;
+        _stateTable = null;
+        restartTableCount();
+    }
+
+    /** Start counting the characters converted without a state table
+     *  afresh. */
+    private void restartTableCount() {
+        long n = _alphabet.size();
+        _untabled = 0;
+        _tableCheck = n <= StateTable.MAX_ALPHABET ? n * n * n
+            : Long.MAX_VALUE;
+    }
+
+    /** Return the rotor in slot K (slot 0 holds the reflector).  Its
+     *  setting is out of date while I use a state table; see
+     *  settings(). */
+    Rotor rotor(int k) {
+        syncRotors();
+        return _slots[k];
+    }
+
+    /** Return the current settings of my rotors, slot 0 first. */
+    int[] settings() {
+        int[] result = new int[_numRotors];
+        if (_stateTable != null) {
+            return _schedule.settingsAtIndex(_state, result);
+        }
+        syncRotors();
+        for (int i = 0; i < _numRotors; i += 1) {
+            result[i] = _slots[i].setting();
+        }
+        return result;
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return the number of characters converted since my rotors were
+     *  last inserted or set. */
+    long position() {
+        return _position;
+    }
+
+    /** Set my rotors to the settings they would have after converting K
+     *  characters from the settings they were last inserted or set to,
+     *  so that position() == K.  Takes constant time for the usual
+     *  rotor counts; see SteppingSchedule. */
+    void seek(long k) {
+        if (k < 0) {
+            throw error("cannot seek to position %d", k);
+        }
+        int[] settings = schedule().settingsAt(k, new int[_numRotors]);
+        for (int i = 0; i < _numRotors; i += 1) {
+            _slots[i].set(settings[i]);
+        }
+        _specialAhead = false;
+        _position = k;
+        _innerValid = false;
+        if (_stateTable != null) {
+            _state = _schedule.indexAt(k);
+        }
+    }
+
+    /** Advance my rotors as for converting K >= 0 more characters,
+     *  without converting any, so that position() increases by K.  The
+     *  same as seek(position() + K), except that when my schedule is not
+     *  recorded (see SteppingSchedule), it steps from my current settings
+     *  rather than from those I was last set to. */
+    void skip(long k) {
+        SteppingSchedule schedule = schedule();
+        if (k < 0 || schedule.length() >= 0) {
+            seek(_position + k);
+            return;
+        }
+        int[] settings = settings();
+        schedule.advance(settings, k, new boolean[_numRotors]);
+        advanced(settings, k);
+    }
+
+    /** Set my rotors to SETTINGS, slot 0 first, which must be the
+     *  settings they reach after converting K more characters from
+     *  their current ones, so that position() increases by K.  For
+     *  converters, such as ByteKernel, that step the rotors themselves.
+     *  I must not be using a state table. */
+    void advanced(int[] settings, long k) {
+        for (int i = 0; i < _numRotors; i += 1) {
+            _slots[i].set(settings[i]);
+        }
+        _specialAhead = false;
+        _position += k;
+        _innerValid = false;
+    }
+
+    /** Set my rotors to SETTINGS, slot 0 first, as saved from
+     *  settings() by a machine of the same rotors, to resume converting
+     *  where it stopped.  The settings I was last set to are unchanged,
+     *  so position() is no longer meaningful.  I must not be using a
+     *  state table. */
+    void resume(int[] settings) {
+        advanced(settings, 0);
+    }
+
+    /** Return my rotors to the settings they were last inserted or set
+     *  to, so that position() == 0.  The plugboard is unchanged. */
+    void reset() {
+        for (int i = 0; i < _numRotors; i += 1) {
+            _slots[i].set(_origin[i]);
+        }
+        _specialAhead = false;
+        _position = 0;
+        _innerValid = false;
+        _state = 0;
+    }
+
+    /** Return the settings my rotors pass through from their origin,
+     *  computing them if needed. */
+    SteppingSchedule schedule() {
+        if (_schedule == null) {
+            syncRotors();
+            int[] current = new int[_numRotors];
+            for (int i = 0; i < _numRotors; i += 1) {
+                current[i] = _slots[i].setting();
+                _slots[i].set(_origin[i]);
+            }
+            _schedule = new SteppingSchedule(_slots);
+            for (int i = 0; i < _numRotors; i += 1) {
+                _slots[i].set(current[i]);
+            }
+        }
+        return _schedule;
+    }
+
+    /** Return a new machine in my current state, whose rotors move
+     *  independently of mine.  My catalog, the rotors' wirings and my
+     *  stepping schedule are shared, so only the rotor settings and a
+     *  few small arrays are copied.  Reads but does not change my state,
+     *  so several threads may copy a machine that is not in use. */
+    Machine copy() {
+        Machine result = new Machine(this);
+        if (_slots != null) {
+            result._slots = new Rotor[_numRotors];
+            for (int i = 0; i < _numRotors; i += 1) {
+                result._slots[i] = _slots[i].copy();
+            }
+            result._doesrotate = new boolean[_numRotors];
+            result._specialSettings = _specialSettings.clone();
+        }
+        result._specialize = _specialize;
+        result._special = _special;
+        result._specialAhead = _specialAhead;
+        result._origin = _origin;
+        result._position = _position;
+        result._schedule = _schedule;
+        result._stateTable = _stateTable;
+        result._state = _state;
+        result._stateBudget = _stateBudget;
+        result._untabled = _untabled;
+        result._tableCheck = _tableCheck;
+        if (_innerCache != null) {
+            result.setInnerCache(true);
+        }
+        return result;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        dropStateTable();
         _plugboard = plugboard;
+        _plugArray = plugboard.toArray();
+    }
+
+    /** Allow me to use a state table of at most BUDGET bytes (none if
+     *  BUDGET is 0).  The default is StateTable.DEFAULT_BUDGET. */
+    void setStateBudget(long budget) {
+        if (_stateTable != null && _stateTable.bytes() > budget) {
+            dropStateTable();
+        }
+        _stateBudget = budget;
+    }
+
+    /** Returns true iff I am converting with a state table. */
+    boolean usingStateTable() {
+        return _stateTable != null;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        boolean[] doesrotate = new boolean[_slots.length];
-        doesrotate[_slots.length - 1] = true;
-        int i = doesrotate.length - 1;
-        int in = _plugboard.permute(c);
-        while (i > 1) {
-            if (_slots[i].atNotch() && _slots[i - 1].rotates()) {
-                doesrotate[i] = true;
-                doesrotate[i - 1] = true;
-            }
-            i--;
+        if (_stateTable == null && ++_untabled >= _tableCheck) {
+            considerStateTable();
         }
-        int j = 0;
-        int a = 0;
-        while (j < _slots.length) {
-            if (j >= 0) {
-                a++;
-                if (doesrotate[j]) {
-                    _slots[j].advance();
-                }
-                if (!doesrotate[j]) {
-                    j = (a + 1) * j - (a * j);
+        _position += 1;
+        if (_stateTable != null) {
+            _state = _stateTable.successor(_state);
+            return _stateTable.convert(_state, c);
+        }
+        if (_special != null) {
+            if (!_specialAhead) {
+                for (int i = 0; i < _numRotors; i += 1) {
+                    _specialSettings[i] = _slots[i].setting();
                 }
-                j++;
+                _specialAhead = true;
             }
+            return _special.convert(_specialSettings, _plugArray, c);
+        }
+        if (_innerCache != null) {
+            return convertCached(c);
         }
+        advanceRotors();
+        int in = _plugboard.permute(c);
         int k = _numRotors - 1;
         while (k > 0) {
-            if (k < _numRotors) {
-                in = _slots[k].convertForward(in);
-                k--;
-            }
+            in = _slots[k].convertForward(in);
+            k--;
         }
         int out = _slots[0].convertForward(in);
         int l = 1;
         while (l < _numRotors) {
-            if (k <= l) {
-                out = _slots[l].convertBackward(out);
-                l++;
-            }
+            out = _slots[l].convertBackward(out);
+            l++;
         }
         return _plugboard.permute(out);
     }
 
+    /** Start using a state table if it fits within my budget and I have
+     *  converted as many characters without one as it has entries, which
+     *  bounds the cost of building it by the work done so far.  Otherwise
+     *  set _tableCheck to when to consider it again, if ever. */
+    private void considerStateTable() {
+        SteppingSchedule schedule = schedule();
+        long size = (long) schedule.length() * _alphabet.size();
+        if (schedule.length() < 0 || size > _stateBudget) {
+            _tableCheck = Long.MAX_VALUE;
+        } else if (_untabled < size) {
+            _tableCheck = size;
+        } else {
+            _stateTable = StateTable.build(_slots, _plugboard, schedule,
+                                           _stateBudget);
+            _tableCheck = Long.MAX_VALUE;
+            if (_stateTable != null) {
+                _state = schedule.indexAt(_position);
+            }
+        }
+    }
+
+    /** Stop using a state table, if I was, bringing my rotors' settings
+     *  up to date. */
+    private void dropStateTable() {
+        if (_stateTable != null) {
+            int[] settings =
+                _schedule.settingsAtIndex(_state, new int[_numRotors]);
+            for (int i = 0; i < _numRotors; i += 1) {
+                _slots[i].set(settings[i]);
+            }
+            _specialAhead = false;
+            _stateTable = null;
+            _innerValid = false;
+            restartTableCount();
+        }
+    }
+
+    /** Convert C as for convert(int), using _innerCache in place of all
+     *  but the rightmost rotor.  The cache is rebuilt only when one of
+     *  those rotors moves. */
+    private int convertCached(int c) {
+        if (advanceRotors() || !_innerValid) {
+            rebuildInnerCache();
+        }
+        Rotor fast = _slots[_numRotors - 1];
+        int in = fast.convertForward(_plugboard.permute(c));
+        return _plugboard.permute(fast.convertBackward(_innerCache[in]));
+    }
+
+    /** Recompute _innerCache as the composition, at the current settings,
+     *  of the signal path from the left side of the rightmost rotor
+     *  through the other rotors and reflector and back. */
+    private void rebuildInnerCache() {
+        int inner = _numRotors - 1;
+        for (int x = 0; x < _innerCache.length; x += 1) {
+            int y = x;
+            for (int k = inner - 1; k > 0; k -= 1) {
+                y = _slots[k].convertForward(y);
+            }
+            y = _slots[0].convertForward(y);
+            for (int l = 1; l < inner; l += 1) {
+                y = _slots[l].convertBackward(y);
+            }
+            _innerCache[x] = y;
+        }
+        _innerValid = true;
+    }
+
+    /** Use a converter generated for my arrangement of rotors, where one
+     *  can be generated, iff ON.  The output is the same either way; see
+     *  ConverterCompiler. */
+    void setSpecialized(boolean on) {
+        syncRotors();
+        _specialize = on;
+        _special = on && _slots != null ? ConverterCompiler.compile(_slots)
+            : null;
+    }
+
+    /** Returns true iff I am converting with a generated converter, when
+     *  not using a state table. */
+    boolean usingSpecialized() {
+        return _special != null;
+    }
+
+    /** Bring the settings of my rotors up to date, if the generated
+     *  converter has moved them. */
+    private void syncRotors() {
+        if (_specialAhead) {
+            for (int i = 0; i < _numRotors; i += 1) {
+                _slots[i].set(_specialSettings[i]);
+            }
+            _specialAhead = false;
+        }
+    }
+
+    /** Use a cached composition of all rotors but the rightmost one iff
+     *  ON.  The output is the same either way; the cached engine pays
+     *  for a rebuild each time an inner rotor moves, and saves work on
+     *  every other keypress. */
+    void setInnerCache(boolean on) {
+        _innerCache = on ? new int[_alphabet.size()] : null;
+        _innerValid = false;
+    }
+
+    /** Advance the rightmost rotor, together with every rotor that is
+     *  carried along by a neighbour at its notch.  All notches are
+     *  examined before any rotor moves.  Returns true iff any rotor
+     *  other than the rightmost one moved. */
+    private boolean advanceRotors() {
+        boolean[] doesrotate = _doesrotate;
+        int last = doesrotate.length - 1;
+        int i = last;
+        while (i > 1) {
+            if (_slots[i].atNotch() && _slots[i - 1].rotates()) {
+                doesrotate[i] = true;
+                doesrotate[i - 1] = true;
+            }
+            i--;
+        }
+        boolean inner = false;
+        int j = 0;
+        while (j < last) {
+            if (doesrotate[j]) {
+                doesrotate[j] = false;
+                _slots[j].advance();
+                inner = true;
+            }
+            j++;
+        }
+        doesrotate[last] = false;
+        _slots[last].advance();
+        return inner;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        msg = msg.replaceAll(" ", "");
-        msg = msg.toUpperCase();
-        int[] string2 = new int[msg.length()];
-        int[] int2 = new int[string2.length];
-        char[] outputinarray = new char[msg.length()];
-        String result = "";
-        int x = 0;
-        while (x < string2.length) {
-            string2[x] = _alphabet.toInt(msg.charAt(x));
-            int2[x] = convert(string2[x]);
-            outputinarray[x] = _alphabet.toChar(int2[x]);
-            result += outputinarray[x];
-            x++;
+        char[] result = new char[msg.length()];
+        int n = convert(msg, 0, msg.length(), result, 0);
+        return new String(result, 0, n);
+    }
+
+    /** Convert the characters MSG[START .. END-1] as for convert(String),
+     *  writing the result into OUT starting at OUTOFF.  Blanks are
+     *  skipped and letters are upper-cased, so the result is never
+     *  longer than the input.  Returns the number of characters
+     *  written. */
+    int convert(CharSequence msg, int start, int end, char[] out,
+                int outOff) {
+        int o = outOff;
+        for (int i = start; i < end; i += 1) {
+            char ch = msg.charAt(i);
+            if (ch != ' ') {
+                out[o] = convertChar(ch);
+                o += 1;
+            }
+        }
+        return o - outOff;
+    }
+
+    /** Convert the LEN characters of MSG starting at OFF as for
+     *  convert(String), writing the result into OUT starting at OUTOFF.
+     *  MSG and OUT may be the same array, provided OUTOFF <= OFF.
+     *  Returns the number of characters written. */
+    int convert(char[] msg, int off, int len, char[] out, int outOff) {
+        int o = outOff;
+        for (int i = off; i < off + len; i += 1) {
+            char ch = msg[i];
+            if (ch != ' ') {
+                out[o] = convertChar(ch);
+                o += 1;
+            }
+        }
+        return o - outOff;
+    }
+
+    /** Convert in place, as for convert(String), each of the LEN
+     *  characters of BUF starting at OFF that is in my alphabet once
+     *  upper-cased, leaving every other character (such as a blank or a
+     *  line terminator) as it is.  Unlike convert(String), this keeps the
+     *  layout of a text, and never changes its length. */
+    void convertText(char[] buf, int off, int len) {
+        for (int i = off; i < off + len; i += 1) {
+            int c = _alphabet.indexOf(Character.toUpperCase(buf[i]));
+            if (c >= 0) {
+                buf[i] = _alphabet.toChar(convert(c));
+            }
+        }
+    }
+
+    /** Convert the LEN indices of MSG starting at OFF, writing the
+     *  results into OUT starting at OUTOFF.  MSG and OUT may be the same
+     *  array. */
+    void convert(int[] msg, int off, int len, int[] out, int outOff) {
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] = convert(msg[off + i]);
         }
-        return result;
     }
+
+    /** Convert the LEN bytes of MSG starting at OFF, each taken as the
+     *  index of a character of my alphabet, which must be the byte
+     *  alphabet (see Alphabet.isBytes), and write the results into OUT
+     *  starting at OUTOFF.  Every byte is converted: nothing is skipped
+     *  or upper-cased.  MSG and OUT may be the same array.  Long runs
+     *  go through a ByteKernel. */
+    void convert(byte[] msg, int off, int len, byte[] out, int outOff) {
+        if (len >= KERNEL_MIN && ByteKernel.applies(this)) {
+            ByteKernel.convert(this, msg, off, len, out, outOff);
+            return;
+        }
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] = (byte) convert(msg[off + i] & BYTE_MASK);
+        }
+    }
+
+    /** Convert the remaining bytes of SRC as for convert(byte[], int,
+     *  int, byte[], int), appending the results to DST.  Stops early,
+     *  leaving SRC positioned at the first unconverted byte, if DST fills
+     *  up. */
+    void convert(ByteBuffer src, ByteBuffer dst) {
+        int n = Math.min(src.remaining(), dst.remaining());
+        if (src.hasArray() && dst.hasArray()) {
+            convert(src.array(), src.arrayOffset() + src.position(), n,
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.position() + n);
+            dst.position(dst.position() + n);
+        } else {
+            for (int i = 0; i < n; i += 1) {
+                dst.put((byte) convert(src.get() & BYTE_MASK));
+            }
+        }
+    }
+
+    /** Convert the remaining characters of SRC as for convert(String),
+     *  appending the results to DST.  Stops early, leaving SRC positioned
+     *  at the first unconverted character, if DST fills up. */
+    void convert(CharBuffer src, CharBuffer dst) {
+        while (src.hasRemaining() && dst.hasRemaining()) {
+            char ch = src.get();
+            if (ch != ' ') {
+                dst.put(convertChar(ch));
+            }
+        }
+    }
+
+    /** Return the conversion of message character CH, which is upper-cased
+     *  before conversion. */
+    private char convertChar(char ch) {
+        int c = _alphabet.toInt(Character.toUpperCase(ch));
+        return _alphabet.toChar(convert(c));
+    }
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Fewest bytes converted by convert(byte[], int, int, byte[], int)
+     *  that are worth setting up a ByteKernel for. */
+    private static final int KERNEL_MIN = 1 << 14;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 }
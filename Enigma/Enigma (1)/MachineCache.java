@@ -0,0 +1,149 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/** A bounded cache of configured machines, keyed by settings line.  A
+ *  settings line that has been seen before costs one lookup and a reset
+ *  of the rotors to their starting settings, instead of parsing the line,
+ *  finding the rotors and compiling a plugboard.  The least recently used
+ *  machine is evicted when the cache is full.  A cache, and the machines
+ *  it returns, are used by one thread at a time.
+ *  @author Bon Hee Koo
+ */
+final class MachineCache {
+
+    /** A cache holding at most CAPACITY > 0 machines, which builds the
+     *  machine for a settings line that is not cached with FACTORY. */
+    MachineCache(int capacity, Function<String, Machine> factory) {
+        if (capacity <= 0) {
+            throw EnigmaException.error("bad cache capacity: %d", capacity);
+        }
+        _capacity = capacity;
+        _factory = factory;
+        _machines = new LinkedHashMap<String, Machine>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Machine> e) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Return a machine set up according to SETTINGS, with its rotors at
+     *  their starting settings.  The machine previously returned for the
+     *  same settings is reused, and is then no longer valid in its
+     *  earlier use.  Errors in SETTINGS are thrown by the factory, and
+     *  nothing is cached for them. */
+    Machine get(String settings) {
+        SectionSetupEvent event = new SectionSetupEvent();
+        event.begin();
+        Metrics.SECTIONS.increment();
+        String key = normalize(settings);
+        Machine result = _machines.get(key);
+        boolean cached = result != null;
+        if (cached) {
+            _hits += 1;
+            Metrics.CACHE_HITS.increment();
+            result.reset();
+        } else {
+            _misses += 1;
+            Metrics.CACHE_MISSES.increment();
+            result = _factory.apply(settings);
+            _machines.put(key, result);
+        }
+        if (event.shouldCommit()) {
+            event.settings = key;
+            event.cached = cached;
+            event.commit();
+        }
+        return result;
+    }
+
+    /** Return the number of calls to get() answered from the cache. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to get() that built a machine. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of machines cached. */
+    int size() {
+        return _machines.size();
+    }
+
+    /** Return the largest number of machines cached. */
+    int capacity() {
+        return _capacity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses, %d/%d cached", _hits,
+                             _misses, size(), _capacity);
+    }
+
+    /** Return SETTINGS in a standard form, so that lines describing the
+     *  same machine share an entry: without trailing blanks, which
+     *  Main.setUp ignores, and with the plugboard cycles sorted if they
+     *  are disjoint, so that "* B Beta III IV I AXLE (HQ) (EX)" and
+     *  "* B Beta III IV I AXLE (EX) (HQ)" both become the latter.  The
+     *  order of cycles that share a symbol matters to Permutation, and
+     *  is kept, as is the rest of the line, blanks included. */
+    static String normalize(String settings) {
+        int end = settings.length();
+        while (end > 0 && settings.charAt(end - 1) == ' ') {
+            end -= 1;
+        }
+        String line = settings.substring(0, end);
+        String[] all = line.split(" ");
+        int plugs;
+        for (plugs = 0; plugs < all.length; plugs += 1) {
+            if (all[plugs].startsWith("(")) {
+                break;
+            }
+        }
+        Set<Character> used = new HashSet<>();
+        for (int i = plugs; i < all.length; i += 1) {
+            if (!CYCLE.matcher(all[i]).matches()) {
+                return line;
+            }
+            for (int k = 1; k < all[i].length() - 1; k += 1) {
+                if (!used.add(all[i].charAt(k))) {
+                    return line;
+                }
+            }
+        }
+        Arrays.sort(all, plugs, all.length);
+        return String.join(" ", all);
+    }
+
+    /** One plugboard cycle, written without blanks. */
+    private static final Pattern CYCLE = Pattern.compile("\\([^()]*\\)");
+
+    /** Default capacity. */
+    static final int DEFAULT_CAPACITY = 64;
+
+    /** Largest number of machines cached. */
+    private final int _capacity;
+
+    /** Builds machines for settings lines. */
+    private final Function<String, Machine> _factory;
+
+    /** Cached machines by normalized settings line, least recently used
+     *  first. */
+    private final LinkedHashMap<String, Machine> _machines;
+
+    /** Number of lookups answered from the cache. */
+    private long _hits;
+
+    /** Number of lookups that built a machine. */
+    private long _misses;
+}
@@ -0,0 +1,164 @@
+package enigma;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the MachineCache class.
+ *  @author Bon Hee Koo
+ */
+public class MachineCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Number of machines built by the factory of cache(). */
+    private int built;
+
+    /** Return a cache of CAPACITY machines whose settings lines are
+     *  "ROTORS:SETTING:PLUGBOARD". */
+    private MachineCache cache(int capacity) {
+        return new MachineCache(capacity, settings -> {
+            built += 1;
+            String[] parts = settings.trim().split(":", -1);
+            return navalMachine(parts[0], parts[1], parts[2]);
+        });
+    }
+
+    /** Return a cache of CAPACITY machines whose settings lines are
+     *  "* ROTORS... SETTING PLUGBOARD...", as in the input files. */
+    private MachineCache settingsCache(int capacity) {
+        return new MachineCache(capacity, settings -> {
+            built += 1;
+            String[] all = settings.split(" ");
+            return navalMachine(
+                String.join(" ", Arrays.copyOfRange(all, 1, 6)), all[6],
+                String.join(" ", Arrays.copyOfRange(all, 7, all.length)));
+        });
+    }
+
+    /** A settings line for the sample message. */
+    private static final String SAMPLE =
+        "B Beta III IV I:AXLE:(HQ) (EX) (IP) (TR) (BY)";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkHitResetsMachine() {
+        MachineCache c = cache(4);
+        Machine m = c.get(SAMPLE);
+        assertEquals("QVPQ", m.convert("FROM"));
+        Machine again = c.get(SAMPLE + "  ");
+        assertSame(m, again);
+        assertEquals(0, again.position());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     again.convert("FROM his shoulder Hiawatha"));
+        assertEquals(1, c.hits());
+        assertEquals(1, c.misses());
+        assertEquals(1, built);
+    }
+
+    @Test
+    public void checkEviction() {
+        MachineCache c = cache(2);
+        String a = "B Beta I II III:AAAA:";
+        String b = "B Beta I II III:BBBB:";
+        String d = "C Gamma IV V VI:CCCC:(AB)";
+        c.get(a);
+        c.get(b);
+        c.get(a);
+        c.get(d);
+        assertEquals(2, c.size());
+        c.get(a);
+        assertEquals(3, built);
+        c.get(b);
+        assertEquals(4, built);
+        assertEquals(2, c.hits());
+        assertEquals(4, c.misses());
+    }
+
+    @Test
+    public void checkErrorsNotCached() {
+        MachineCache c = cache(2);
+        for (int i = 0; i < 2; i += 1) {
+            try {
+                c.get("B Beta I II NONE:AAAA:");
+                fail("expected an error");
+            } catch (EnigmaException excp) {
+                /* expected */
+            }
+        }
+        assertEquals(0, c.size());
+        assertEquals(2, c.misses());
+    }
+
+    @Test
+    public void checkNormalize() {
+        String key = "* B Beta III IV I AXLE (EX) (HQ)";
+        assertEquals(key, MachineCache.normalize(key));
+        assertEquals(key, MachineCache.normalize(
+                         "* B Beta III IV I AXLE (HQ) (EX)  "));
+        assertEquals("* B Beta III IV I AXLE",
+                     MachineCache.normalize("* B Beta III IV I AXLE "));
+        assertEquals("*  B Beta III IV I AXLE (EX) (HQ)",
+                     MachineCache.normalize(
+                         "*  B Beta III IV I AXLE (HQ) (EX)"));
+        String[] unsorted = {
+            "* B Beta III IV I AXLE (HQ) (AH)",
+            "* B Beta III IV I AXLE (HQ)  (EX)",
+            "* B Beta III IV I AXLE (HQ)(EX)",
+            "* B Beta III IV I AXLE (HQ EX)",
+        };
+        for (String line : unsorted) {
+            assertEquals(line, MachineCache.normalize(line));
+        }
+    }
+
+    @Test
+    public void checkEquivalentLinesHit() {
+        MachineCache c = settingsCache(4);
+        String[] lines = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* B Beta III IV I AXLE (EX) (HQ) (BY) (TR) (IP)",
+            "* B Beta III IV I AXLE (TR) (IP) (BY) (EX) (HQ) ",
+        };
+        Machine m = c.get(lines[0]);
+        for (String line : lines) {
+            Machine again = c.get(line);
+            assertSame(m, again);
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                         again.convert("FROM his shoulder Hiawatha"));
+        }
+        assertEquals(1, built);
+        assertEquals(lines.length, c.hits());
+        assertNotSame(m, c.get("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR)"));
+        assertNotSame(m, c.get("* B Beta III IV I AXLF (HQ) (EX) (IP) (TR)"));
+        assertEquals(3, built);
+    }
+
+    @Test
+    public void checkRepeatedPlugboardLetter() {
+        MachineCache c = settingsCache(4);
+        String[] plugboards = { "(HQ) (AH)", "(AH) (HQ)" };
+        Machine[] machines = new Machine[plugboards.length];
+        for (int i = 0; i < plugboards.length; i += 1) {
+            machines[i] =
+                c.get("* B Beta III IV I AXLE " + plugboards[i]);
+            assertEquals(navalMachine("B Beta III IV I", "AXLE",
+                                      plugboards[i])
+                         .convert("HELLOWORLDHQA"),
+                         machines[i].convert("HELLOWORLDHQA"));
+        }
+        assertNotSame(machines[0], machines[1]);
+        assertEquals(2, built);
+        assertEquals(0, c.hits());
+    }
+}
@@ -0,0 +1,336 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Bon Hee Koo
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a list of the naval rotors, with their usual notches. */
+    static ArrayList<Rotor> navalRotors() {
+        ArrayList<Rotor> result = new ArrayList<>();
+        String[][] moving = {
+            {"I", "Q"}, {"II", "E"}, {"III", "V"}, {"IV", "J"}, {"V", "Z"},
+            {"VI", "ZM"}, {"VII", "ZM"}, {"VIII", "ZM"}
+        };
+        for (String[] r : moving) {
+            result.add(new MovingRotor(r[0],
+                    new Permutation(NAVALA.get(r[0]), UPPER), r[1]));
+        }
+        for (String name : new String[] {"Beta", "Gamma"}) {
+            result.add(new FixedRotor(name,
+                    new Permutation(NAVALA.get(name), UPPER)));
+        }
+        for (String name : new String[] {"B", "C"}) {
+            result.add(new Reflector(name,
+                    new Permutation(NAVALA.get(name), UPPER)));
+        }
+        return result;
+    }
+
+    /** Return a naval machine with rotors ROTORS set to SETTING and
+     *  plugboard PLUGBOARD. */
+    static Machine navalMachine(String rotors, String setting,
+                                String plugboard) {
+        Machine m = new Machine(UPPER, 5, 3, navalRotors());
+        m.insertRotors(rotors.split(" "));
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation(plugboard, UPPER));
+        return m;
+    }
+
+    /** Return the machine used in the assignment's sample message. */
+    private Machine sample() {
+        return navalMachine("B Beta III IV I", "AXLE",
+                            "(HQ) (EX) (IP) (TR) (BY)");
+    }
+
+    /** Plaintext of the sample message. */
+    private static final String PLAIN = "FROM his shoulder Hiawatha";
+    /** Ciphertext of the sample message. */
+    private static final String CIPHER = "QVPQSOKOILPUBKJZPISFXDW";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkConvertString() {
+        assertEquals(CIPHER, sample().convert(PLAIN));
+        assertEquals(PLAIN.replace(" ", "").toUpperCase(),
+                     sample().convert(CIPHER));
+    }
+
+    @Test
+    public void checkConvertArrays() {
+        char[] in = ("xx" + PLAIN + "yy").toCharArray();
+        char[] out = new char[in.length + 3];
+        int n = sample().convert(in, 2, PLAIN.length(), out, 3);
+        assertEquals(CIPHER, new String(out, 3, n));
+
+        n = sample().convert("xx" + PLAIN, 2, PLAIN.length() + 2, out, 0);
+        assertEquals(CIPHER, new String(out, 0, n));
+
+        Machine m = sample();
+        n = m.convert(in, 2, 4, in, 0);
+        n += m.convert(in, 6, PLAIN.length() - 4, in, n);
+        assertEquals(CIPHER, new String(in, 0, n));
+    }
+
+    @Test
+    public void checkConvertIndices() {
+        String plain = PLAIN.replace(" ", "").toUpperCase();
+        int[] msg = new int[plain.length()];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = UPPER.toInt(plain.charAt(i));
+        }
+        sample().convert(msg, 0, msg.length, msg, 0);
+        for (int i = 0; i < msg.length; i += 1) {
+            assertEquals(CIPHER.charAt(i), UPPER.toChar(msg[i]));
+        }
+    }
+
+    @Test
+    public void checkConvertBuffers() {
+        Machine m = sample();
+        CharBuffer src = CharBuffer.wrap(PLAIN);
+        CharBuffer dst = CharBuffer.allocate(10);
+        StringBuilder result = new StringBuilder();
+        while (src.hasRemaining()) {
+            m.convert(src, dst);
+            dst.flip();
+            result.append(dst);
+            dst.clear();
+        }
+        assertEquals(CIPHER, result.toString());
+    }
+
+    /** Return a random string of LEN upper-case letters from RANDOM. */
+    static String randomText(Random random, int len) {
+        char[] text = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            text[i] = UPPER_STRING.charAt(random.nextInt(26));
+        }
+        return new String(text);
+    }
+
+    @Test
+    public void checkInnerCache() {
+        Random random = new Random(61);
+        String[] orders = {
+            "B Beta III IV I", "C Gamma VI VII VIII", "B Gamma V I VI"
+        };
+        for (int trial = 0; trial < 30; trial += 1) {
+            String order = orders[trial % orders.length];
+            String setting = randomText(random, 4);
+            String msg = randomText(random, 2000);
+            Machine plain = navalMachine(order, setting, "(AQ) (WE)");
+            Machine cached = navalMachine(order, setting, "(AQ) (WE)");
+            cached.setInnerCache(true);
+            assertEquals(order + " " + setting,
+                         plain.convert(msg), cached.convert(msg));
+        }
+    }
+
+    @Test
+    public void checkDoubleStep() {
+        String[] expected = { "AADV", "AAEW", "ABFX", "ABFY", "ABFZ" };
+        for (boolean inner : new boolean[] { false, true }) {
+            Machine M = navalMachine("B Beta I II III", "AADU", "");
+            M.setInnerCache(inner);
+            for (String setting : expected) {
+                M.convert("A");
+                StringBuilder actual = new StringBuilder();
+                for (int k = 1; k < M.numRotors(); k += 1) {
+                    actual.append(UPPER_STRING.charAt(M.settings()[k]));
+                }
+                assertEquals(setting, actual.toString());
+            }
+        }
+    }
+
+    @Test
+    public void checkKnownCiphertext() {
+        for (boolean inner : new boolean[] { false, true }) {
+            Machine M = navalMachine("B Beta I II III", "AAAA", "");
+            M.setInnerCache(inner);
+            assertEquals("BDZGO", M.convert("AAAAA"));
+        }
+    }
+
+    @Test
+    public void checkSeek() {
+        String[] orders = {"B Beta III IV I", "C Gamma VI VII VIII"};
+        Random random = new Random(9);
+        for (String order : orders) {
+            String setting = randomText(random, 4);
+            Machine serial = navalMachine(order, setting, "(AB)");
+            Machine sought = navalMachine(order, setting, "(AB)");
+            long done = 0;
+            for (long k : new long[] {1, 31, 700, 17000, 40000}) {
+                for (; done < k; done += 1) {
+                    serial.convert(0);
+                }
+                sought.seek(k);
+                assertEquals(k, sought.position());
+                String msg = randomText(random, 30);
+                assertEquals(order + " at " + k, serial.convert(msg),
+                             sought.convert(msg));
+                done += 30;
+            }
+            sought.seek(3);
+            serial.seek(3);
+            assertEquals(serial.convert("HELLO"), sought.convert("HELLO"));
+        }
+    }
+
+    @Test
+    public void checkCopy() {
+        Machine m = sample();
+        m.convert("FROM");
+        Machine c = m.copy();
+        assertEquals(CIPHER.substring(4), c.convert(PLAIN.substring(4)));
+        assertEquals(CIPHER.substring(4), m.convert(PLAIN.substring(4)));
+    }
+
+    @Test
+    public void checkParallel() {
+        String msg = randomText(new Random(5), 50000);
+        String spaced = msg.substring(0, 1000) + " a b  "
+            + msg.substring(1000);
+        Machine serial = navalMachine("B Beta I II III", "AADU", "(QZ)");
+        String expected = serial.convert(spaced);
+        Machine M = navalMachine("B Beta I II III", "AADU", "(QZ)");
+        ParallelConverter converter =
+            new ParallelConverter(new ForkJoinPool(3), 997);
+        char[] buf = spaced.toCharArray();
+        int n = converter.convert(M, buf, 0, buf.length, buf, 0);
+        assertEquals(expected, new String(buf, 0, n));
+        assertEquals(serial.position(), M.position());
+        assertEquals(serial.convert(msg), M.convert(msg));
+    }
+
+    @Test
+    public void checkSharedCatalog() {
+        ArrayList<Rotor> catalog = navalRotors();
+        Machine a = new Machine(UPPER, 5, 3, catalog);
+        Machine b = new Machine(UPPER, 5, 3, catalog);
+        for (Machine m : new Machine[] {a, b}) {
+            m.insertRotors("B Beta III IV I".split(" "));
+            m.setRotors("AXLE");
+            m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                           UPPER));
+        }
+        assertEquals(CIPHER.substring(0, 4),
+                     a.convert(PLAIN.substring(0, 4)));
+        assertEquals(CIPHER, b.convert(PLAIN));
+        assertEquals(CIPHER.substring(4), a.convert(PLAIN.substring(4)));
+        for (Rotor r : catalog) {
+            assertEquals(0, r.setting());
+        }
+    }
+
+    @Test
+    public void checkConcurrentCopies() throws InterruptedException {
+        String msg = randomText(new Random(11), 20000);
+        Machine template = navalMachine("B Beta III IV I", "AXLE", "(HQ)");
+        String expected = template.copy().convert(msg);
+        String[] results = new String[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i += 1) {
+            int k = i;
+            threads[i] = new Thread(() -> {
+                results[k] = template.copy().convert(msg);
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i += 1) {
+            threads[i].join();
+            assertEquals(expected, results[i]);
+        }
+    }
+
+    @Test
+    public void checkStateTable() {
+        String msg = randomText(new Random(13), 120000);
+        Machine plain = navalMachine("B Beta VI VII VIII", "AZDM", "(QZ)");
+        plain.setStateBudget(0);
+        Machine tabled = navalMachine("B Beta VI VII VIII", "AZDM", "(QZ)");
+        assertEquals(plain.convert(msg), tabled.convert(msg));
+        assertFalse(plain.usingStateTable());
+        assertTrue(tabled.usingStateTable());
+        Machine plainCopy = plain.copy();
+        Machine tabledCopy = tabled.copy();
+        assertEquals(plainCopy.convert(msg), tabledCopy.convert(msg));
+        plain.seek(5);
+        tabled.seek(5);
+        assertEquals(plain.convert(msg), tabled.convert(msg));
+        plain.setPlugboard(new Permutation("(AB) (CD)", UPPER));
+        tabled.setPlugboard(new Permutation("(AB) (CD)", UPPER));
+        assertFalse(tabled.usingStateTable());
+        assertEquals(plain.convert(msg), tabled.convert(msg));
+        plain.reset();
+        tabled.reset();
+        assertEquals(plain.convert(msg), tabled.convert(msg));
+    }
+
+    @Test
+    public void checkSpecialized() {
+        String msg = randomText(new Random(17), 20000);
+        String[][] configs = {
+            {"B Beta VI VII VIII", "AZDM", "(QZ)"},
+            {"C Gamma I II III", "AADU", "(AB) (CD) (EF)"},
+            {"B Beta III IV I", "AXLE", "(HQ) (EX) (IP) (TR) (BY)"},
+        };
+        for (String[] config : configs) {
+            Machine plain = navalMachine(config[0], config[1], config[2]);
+            plain.setStateBudget(0);
+            Machine special = navalMachine(config[0], config[1], config[2]);
+            special.setStateBudget(0);
+            special.setSpecialized(true);
+            assertTrue(special.usingSpecialized());
+            assertEquals(plain.convert(msg), special.convert(msg));
+            assertArrayEquals(plain.settings(), special.settings());
+            assertEquals(plain.copy().convert(msg),
+                         special.copy().convert(msg));
+            plain.seek(777);
+            special.seek(777);
+            assertEquals(plain.convert(msg), special.convert(msg));
+            plain.setRotors("ABCD");
+            special.setRotors("ABCD");
+            assertEquals(plain.convert(msg), special.convert(msg));
+            plain.reset();
+            special.reset();
+            assertEquals(plain.convert(msg), special.convert(msg));
+        }
+    }
+
+    @Test
+    public void checkSpecializedWithStateTable() {
+        String msg = randomText(new Random(19), 120000);
+        Machine plain = navalMachine("B Beta VI VII VIII", "AZDM", "(QZ)");
+        plain.setStateBudget(0);
+        Machine special = navalMachine("B Beta VI VII VIII", "AZDM", "(QZ)");
+        special.setSpecialized(true);
+        assertEquals(plain.convert(msg), special.convert(msg));
+        assertTrue(special.usingStateTable());
+        special.setPlugboard(new Permutation("(AB)", UPPER));
+        plain.setPlugboard(new Permutation("(AB)", UPPER));
+        assertEquals(plain.convert(msg), special.convert(msg));
+    }
+}
@@ -1,14 +1,25 @@
 package enigma;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.UncheckedIOException;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static enigma.EnigmaException.*;
+import static java.nio.file.StandardOpenOption.*;
 
 /** Enigma simulator.
  *  @author Bon Hee Koo
@@ -16,14 +27,60 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
+     *  specified by ARGS, where 1 <= ARGS.length <= 3, not counting
+     *  leading options.
      *  ARGS[0] is the name of a configuration file.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *  ARGS[0] may also name a configuration snapshot, which is
+     *  loaded in place of the text format.
+     *  Options:
+     *    --compile   With ARGS = CONFIG SNAPSHOT, compile the text
+     *                configuration CONFIG into the snapshot SNAPSHOT
+     *                and exit.
+     *    --mmap      Read the input file and write the output file
+     *                through memory-mapped windows.
+     *    --parallel  Convert independent sections of the input, and long
+     *                message lines, on all available cores.
+     *    --specialize
+     *                Convert with code generated for each arrangement of
+     *                rotors, where possible.
+     *    --serve=ADDRESS
+     *                With ARGS = CONFIG, load CONFIG once and convert
+     *                messages for clients of an EnigmaServer listening on
+     *                ADDRESS (PORT, HOST:PORT or unix:PATH) until
+     *                killed, reporting its statistics on the standard
+     *                error.
+     *    --connections=N
+     *                Serve at most N connections at once.
+     *    --generate-bytes
+     *                With ARGS = SNAPSHOT, write a configuration over the
+     *                byte alphabet with randomly generated rotor wirings
+     *                (see WiringGenerator) to the snapshot SNAPSHOT, print
+     *                a random key for it and exit.
+     *    --bytes=KEY With ARGS = CONFIG [INPUT [OUTPUT]], where CONFIG has
+     *                the byte alphabet, convert INPUT byte for byte with
+     *                the machine set up by KEY, as if each byte were a
+     *                character of one long message, and write the result
+     *                to OUTPUT, unformatted.  See setUpBytes for the
+     *                notation of KEY.
+     *    --bombe=CRIB[@OFFSET]
+     *                With ARGS = CONFIG [INPUT [OUTPUT]], search every
+     *                rotor order and setting of CONFIG's rotors for
+     *                stops at which CRIB could encipher to the letters of
+     *                INPUT starting at OFFSET (default 0), on all
+     *                available cores (see Bombe).  Each stop is written
+     *                to OUTPUT as a settings line as soon as it is found,
+     *                and the search rate is reported on the standard
+     *                error.
+     *    --metrics[=SECONDS]
+     *                Report the counters of Metrics.GLOBAL on the
+     *                standard error on exit, and also every SECONDS
+     *                seconds if given. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,90 +93,577 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            setOption(args[first]);
+            first += 1;
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+        if (_metricsInterval >= 0) {
+            reportMetrics();
+        }
+        if (_compile) {
+            if (args.length != 2) {
+                throw error("--compile needs a configuration and a "
+                            + "snapshot file");
+            }
+            openConfig(args[0]);
+            _snapshotName = args[1];
+            return;
+        }
+        if (_generateBytes) {
+            if (args.length != 1) {
+                throw error("--generate-bytes needs just a snapshot file");
+            }
+            _snapshotName = args[0];
+            return;
+        }
+        if (_serveAddress != null) {
+            if (args.length != 1) {
+                throw error("--serve needs just a configuration file");
+            }
+            openConfig(args[0]);
+            return;
+        }
         if (args.length != 1
                 &&  args.length != 2
                     && args.length != 3) {
             throw error("1, 2, 3 is valid only!");
         }
-        _config = getInput(args[0]);
+        openConfig(args[0]);
+        if (_byteKey != null || _crib != null) {
+            openByteStreams(args);
+            return;
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getInput(args[1], _mapped);
         }
         if (args.length <= 1) {
-            _input = new Scanner(System.in);
+            _input = new InputTokenizer(Channels.newChannel(System.in));
         }
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _output = getOutput(args[2], _mapped);
+            _outputIsFile = true;
+        } else {
+            _output = new GroupWriter(Channels.newChannel(System.out));
+        }
+    }
+
+    /** Record the command-line option OPTION. */
+    private void setOption(String option) {
+        if (option.equals("--compile")) {
+            _compile = true;
+        } else if (option.equals("--mmap")) {
+            _mapped = true;
+        } else if (option.equals("--parallel")) {
+            _parallel = new ParallelConverter();
+            _chunk = new char[PARALLEL_CHUNK_SIZE];
+        } else if (option.equals("--specialize")) {
+            _specialize = true;
+        } else if (option.startsWith("--serve=")) {
+            _serveAddress = option.substring("--serve=".length());
+        } else if (option.startsWith("--connections=")) {
+            try {
+                _maxConnections = Integer.parseInt(
+                    option.substring("--connections=".length()));
+            } catch (NumberFormatException excp) {
+                throw error("bad option %s", option);
+            }
+            if (_maxConnections <= 0) {
+                throw error("bad option %s", option);
+            }
+        } else if (option.equals("--generate-bytes")) {
+            _generateBytes = true;
+        } else if (option.startsWith("--bytes=")) {
+            _byteKey = option.substring("--bytes=".length());
+        } else if (option.startsWith("--bombe=")) {
+            String crib = option.substring("--bombe=".length());
+            int at = crib.lastIndexOf('@');
+            if (at >= 0) {
+                try {
+                    _cribOffset = Integer.parseInt(crib.substring(at + 1));
+                } catch (NumberFormatException excp) {
+                    throw error("bad option %s", option);
+                }
+                crib = crib.substring(0, at);
+            }
+            _crib = crib;
+        } else if (option.equals("--metrics")) {
+            _metricsInterval = 0;
+        } else if (option.startsWith("--metrics=")) {
+            try {
+                _metricsInterval = Integer.parseInt(
+                    option.substring("--metrics=".length()));
+            } catch (NumberFormatException excp) {
+                throw error("bad option %s", option);
+            }
+            if (_metricsInterval <= 0) {
+                throw error("bad option %s", option);
+            }
         } else {
-            _output = System.out;
+            throw error("unknown option %s", option);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Report the counters of Metrics.GLOBAL on the standard error when
+     *  the process exits, and every _metricsInterval seconds until then
+     *  if that is positive. */
+    private void reportMetrics() {
+        Metrics metrics = Metrics.GLOBAL;
+        if (_metricsInterval > 0) {
+            Thread reporter = new Thread(() -> {
+                while (true) {
+                    try {
+                        Thread.sleep(_metricsInterval * 1000L);
+                    } catch (InterruptedException excp) {
+                        return;
+                    }
+                    System.err.println(metrics.report());
+                }
+            }, "enigma-metrics");
+            reporter.setDaemon(true);
+            reporter.start();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+            System.err.println(metrics.report())));
+    }
+
+    /** Open the configuration file named NAME, loading it into _snapshot
+     *  if it is a snapshot, and otherwise preparing _config to read
+     *  it. */
+    private void openConfig(String name) {
         try {
-            return new Scanner(new File(name));
-        } catch (IOException excp) {
+            FileChannel file = FileChannel.open(Paths.get(name));
+            if (ConfigSnapshot.isSnapshot(file)) {
+                try {
+                    _snapshot = ConfigSnapshot.read(file);
+                } finally {
+                    file.close();
+                }
+            } else {
+                _config = new InputTokenizer(file);
+            }
+        } catch (IOException | InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Open _byteInput and _byteOutput on the files named by ARGS[1] and
+     *  ARGS[2], or on the standard input and output where those are
+     *  absent (see main). */
+    private void openByteStreams(String[] args) {
+        String name = null;
         try {
-            return new PrintStream(new File(name));
-        } catch (IOException excp) {
+            if (args.length > 1) {
+                name = args[1];
+                _byteInput = FileChannel.open(Paths.get(name));
+            } else {
+                _byteInput = Channels.newChannel(System.in);
+            }
+            if (args.length > 2) {
+                name = args[2];
+                if (_mapped) {
+                    _byteOutput = new MappedOutputChannel(FileChannel.open(
+                        Paths.get(name), READ, WRITE, CREATE,
+                        TRUNCATE_EXISTING));
+                } else {
+                    _byteOutput = FileChannel.open(Paths.get(name), WRITE,
+                                                   CREATE,
+                                                   TRUNCATE_EXISTING);
+                }
+                _outputIsFile = true;
+            } else {
+                _byteOutput = Channels.newChannel(System.out);
+            }
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a tokenizer reading from the file named NAME, by mapping it
+     *  into memory iff MAPPED. */
+    private InputTokenizer getInput(String name, boolean mapped) {
+        try {
+            FileChannel file = FileChannel.open(Paths.get(name));
+            if (mapped) {
+                return InputTokenizer.mapped(file);
+            }
+            return new InputTokenizer(file);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a GroupWriter writing to the file named NAME, through
+     *  memory-mapped windows iff MAPPED. */
+    private GroupWriter getOutput(String name, boolean mapped) {
+        try {
+            if (mapped) {
+                FileChannel file = FileChannel.open(Paths.get(name), READ,
+                        WRITE, CREATE, TRUNCATE_EXISTING);
+                return new GroupWriter(new MappedOutputChannel(file));
+            }
+            return new GroupWriter(FileChannel.open(Paths.get(name), WRITE,
+                                                    CREATE,
+                                                    TRUNCATE_EXISTING));
+        } catch (IOException | InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output.  Message lines are converted and written in
+     *  chunks as they are read, so they may be arbitrarily long. */
     private void process() {
+        if (_compile) {
+            compileConfig();
+            return;
+        }
+        if (_generateBytes) {
+            generateBytes();
+            return;
+        }
+        if (_serveAddress != null) {
+            serve();
+            return;
+        }
+        if (_byteKey != null) {
+            processBytes();
+            return;
+        }
+        if (_crib != null) {
+            processBombe();
+            return;
+        }
+        RuntimeException failure = null;
+        try {
+            processMessages();
+        } catch (RuntimeException excp) {
+            failure = excp;
+        }
+        try {
+            if (_sections != null) {
+                _sections.finish();
+            }
+        } catch (RuntimeException excp) {
+            failure = suppress(failure, excp);
+        }
+        try {
+            closeOutput();
+        } catch (RuntimeException excp) {
+            failure = suppress(failure, excp);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Return FAILURE with LATER attached to it as a suppressed
+     *  exception, or LATER if FAILURE is null. */
+    private static RuntimeException suppress(RuntimeException failure,
+                                             RuntimeException later) {
+        if (failure == null) {
+            return later;
+        }
+        failure.addSuppressed(later);
+        return failure;
+    }
+
+    /** Read the text configuration in _config and write it as a snapshot
+     *  to the file named _snapshotName. */
+    private void compileConfig() {
         Machine figure = readConfig();
-        String change = _input.nextLine();
-        if (!change.startsWith("*")) {
-            throw new EnigmaException("Invalid input setting!");
+        ConfigSnapshot snapshot =
+            new ConfigSnapshot(_alphabet, figure.numRotors(),
+                               figure.numPawls(), _allRotors);
+        try (FileChannel out = FileChannel.open(Paths.get(_snapshotName),
+                                                WRITE, CREATE,
+                                                TRUNCATE_EXISTING)) {
+            snapshot.write(out);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not write %s", _snapshotName);
         }
-        if (change.startsWith("*")) {
-            while (_input.hasNext()) {
-                setUp(figure, change);
-                change = (_input.nextLine());
-                if (change.isEmpty()) {
-                    System.out.print("");
-                    String out = figure.convert(change);
-                    printMessageLine(out);
-                    if (_input.hasNextLine()) {
-                        change = _input.nextLine();
-                    }
+    }
+
+    /** Write a configuration over the byte alphabet with random wirings
+     *  to the snapshot file named _snapshotName, and print a random key
+     *  for it on the standard output. */
+    private void generateBytes() {
+        WiringGenerator generator = new WiringGenerator(new SecureRandom());
+        ConfigSnapshot snapshot = generator.generate(Alphabet.bytes());
+        try (FileChannel out = FileChannel.open(Paths.get(_snapshotName),
+                                                WRITE, CREATE,
+                                                TRUNCATE_EXISTING)) {
+            snapshot.write(out);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not write %s", _snapshotName);
+        }
+        System.out.println(generator.byteKey());
+    }
+
+    /** Convert _byteInput to _byteOutput with the machine read from
+     *  _config and set up by _byteKey, then close them (except for the
+     *  standard output). */
+    private void processBytes() {
+        Machine M = readConfig();
+        setUpBytes(M, _byteKey);
+        try {
+            try {
+                new ByteConverter(M, _parallel).convert(_byteInput,
+                                                        _byteOutput);
+            } finally {
+                _byteInput.close();
+                if (_outputIsFile) {
+                    _byteOutput.close();
+                } else {
+                    System.out.flush();
                 }
-                if (!change.isEmpty()) {
-                    while (!change.contains("*") && _input.hasNextLine()) {
-                        String out = figure.convert(change);
-                        printMessageLine(out);
-                        if (_input.hasNextLine()) {
-                            change = _input.nextLine();
+            }
+        } catch (IOException excp) {
+            throw error("could not convert bytes: %s", excp.getMessage());
+        }
+    }
+
+    /** Search the ciphertext from _byteInput for stops of a bombe for
+     *  _crib at _cribOffset on machines read from _config, writing each
+     *  to _byteOutput as a settings line as it is found, and reporting
+     *  the number of positions searched and their rate on the standard
+     *  error. */
+    private void processBombe() {
+        Machine template = readConfig();
+        try {
+            try {
+                String ciphertext = new String(
+                    Channels.newInputStream(_byteInput).readAllBytes());
+                Bombe bombe =
+                    new Bombe(template, ciphertext, _crib, _cribOffset);
+                List<String[]> orders = bombe.orders();
+                AtomicLong stops = new AtomicLong();
+                long start = System.nanoTime();
+                long positions =
+                    bombe.search(orders, ForkJoinPool.commonPool(), stop -> {
+                        ByteBuffer line = ByteBuffer.wrap(
+                            (stop + System.lineSeparator()).getBytes());
+                        synchronized (_byteOutput) {
+                            try {
+                                while (line.hasRemaining()) {
+                                    _byteOutput.write(line);
+                                }
+                            } catch (IOException excp) {
+                                throw new UncheckedIOException(excp);
+                            }
+                            if (!_outputIsFile) {
+                                System.out.flush();
+                            }
                         }
-                    }
+                        stops.incrementAndGet();
+                    });
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.err.printf("%d positions of %d rotor orders in %.2f s "
+                                  + "(%.0f positions/s), %d stops%n",
+                                  positions, orders.size(), seconds,
+                                  positions / Math.max(seconds, 1e-9),
+                                  stops.get());
+            } finally {
+                _byteInput.close();
+                if (_outputIsFile) {
+                    _byteOutput.close();
+                } else {
+                    System.out.flush();
+                }
+            }
+        } catch (IOException | UncheckedIOException excp) {
+            throw error("could not run the bombe: %s", excp.getMessage());
+        }
+    }
+
+    /** Serve clients on _serveAddress with machines read from _config,
+     *  reporting the server's statistics on the standard error every
+     *  REPORT_INTERVAL seconds while it is busy, and once more when the
+     *  process is stopped. */
+    private void serve() {
+        Machine template = readConfig();
+        EnigmaServer server;
+        try {
+            server = new EnigmaServer(EnigmaServer.bind(_serveAddress),
+                                      () -> newCache(template),
+                                      _maxConnections);
+            System.err.printf("Serving on %s%n", server.address());
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not listen on %s", _serveAddress);
+        }
+        ServerStats stats = server.stats();
+        Thread reporter = new Thread(() -> {
+            long reported = 0;
+            while (true) {
+                try {
+                    Thread.sleep(REPORT_INTERVAL * 1000L);
+                } catch (InterruptedException excp) {
+                    return;
+                }
+                if (stats.requests() != reported) {
+                    reported = stats.requests();
+                    System.err.println(stats.report());
                 }
+            }
+        }, "enigma-report");
+        reporter.setDaemon(true);
+        reporter.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException excp) {
+                /* Exiting anyway. */
+            }
+            System.err.println(stats.report());
+        }));
+        server.serve();
+    }
+
+    /** Flush _output, and close it unless it is the standard output. */
+    private void closeOutput() {
+        if (_outputIsFile) {
+            _output.close();
+        } else {
+            _output.flush();
+        }
+    }
+
+    /** Apply the machine read from _config to the messages in _input (see
+     *  process). */
+    private void processMessages() {
+        Machine template = readConfig();
+        if (_parallel != null) {
+            _sections = new SectionScheduler(ForkJoinPool.commonPool(),
+                                             () -> newCache(template),
+                                             _output);
+        } else {
+            _machines = newCache(template);
+        }
+        if (!_input.nextLineStartsWith('*')) {
+            throw new EnigmaException("Invalid input setting!");
+        }
+        String settings = _input.nextLine();
+        while (_input.hasNext()) {
+            startSection(settings);
+            int kind = nextLineKind();
+            if (kind == EMPTY_LINE) {
+                messageLine();
                 if (!_input.hasNextLine()) {
-                    if (change.contains("*")) {
+                    blankLine();
+                    break;
+                }
+                kind = nextLineKind();
+                if (kind == EMPTY_LINE) {
+                    _input.nextLine();
+                    if (!_input.hasNextLine()) {
+                        blankLine();
                         break;
                     }
-                    if (!change.contains("*")) {
-                        String out = figure.convert(change);
-                        printMessageLine(out);
-                    }
+                    settings = "";
+                    continue;
+                }
+            }
+            while (kind != SETTINGS_LINE) {
+                messageLine();
+                if (!_input.hasNextLine()) {
+                    break;
                 }
+                kind = nextLineKind();
+            }
+            if (kind != SETTINGS_LINE) {
+                break;
+            }
+            if (_sections == null) {
+                _output.flush();
             }
+            settings = _input.nextLine();
+        }
+        if (_sections == null) {
+            endSection();
+        }
+    }
+
+    /** Return a new cache of machines like TEMPLATE, set up according
+     *  to their settings lines. */
+    private MachineCache newCache(Machine template) {
+        return new MachineCache(MachineCache.DEFAULT_CAPACITY, settings -> {
+            Machine M = template.copy();
+            setUp(M, settings);
+            return M;
+        });
+    }
+
+    /** Begin a section of input with settings line SETTINGS, taking
+     *  _machine from _machines, or handing the section to _sections if it
+     *  is in use. */
+    private void startSection(String settings) {
+        if (_sections == null) {
+            endSection();
+            _sectionBegan = System.nanoTime();
+            _machine = _machines.get(settings);
+        } else {
+            _sections.begin(settings);
+        }
+    }
+
+    /** Record the latency of the section that _machine was converting, if
+     *  any, which has now been written. */
+    private void endSection() {
+        if (_machine != null) {
+            Metrics.SECTION_NANOS.record(System.nanoTime() - _sectionBegan);
+        }
+    }
+
+    /** Convert the next line of _input with the current section's machine
+     *  and print it, or hand it to _sections if it is in use and accepts
+     *  it. */
+    private void messageLine() {
+        if (_sections == null) {
+            printMessageLine(_machine);
+        } else if (!_sections.buffer(_input)) {
+            printMessageLine(_sections.machine());
+        }
+    }
+
+    /** Print an empty line at the end of the current section. */
+    private void blankLine() {
+        if (_sections == null) {
+            _output.endLine();
+        } else {
+            _sections.blankLine();
+        }
+    }
+
+    /** Return the kind of the next line of _input, which must exist:
+     *  SETTINGS_LINE, EMPTY_LINE, or MESSAGE_LINE.  Does not consume the
+     *  line. */
+    private int nextLineKind() {
+        if (_input.nextLineStartsWith('*')) {
+            return SETTINGS_LINE;
+        } else if (_input.nextLineIsEmpty()) {
+            return EMPTY_LINE;
+        } else {
+            return MESSAGE_LINE;
         }
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+     *  file _config, or from _snapshot if the file was a snapshot. */
     private Machine readConfig() {
+        ConfigLoadEvent event = new ConfigLoadEvent();
+        event.begin();
+        if (_snapshot != null) {
+            _alphabet = _snapshot.alphabet();
+            _allRotors.addAll(_snapshot.rotors());
+            Machine machine = _snapshot.machine();
+            machine.setInnerCache(true);
+            machine.setSpecialized(_specialize);
+            endConfigLoad(event, true);
+            return machine;
+        }
         try {
             int numRotor;
             int pawls;
@@ -138,12 +682,28 @@ public final class Main {
                 }
 
             }
-            return new Machine(_alphabet, numRotor, pawls, _allRotors);
+            Machine machine =
+                new Machine(_alphabet, numRotor, pawls, _allRotors);
+            machine.setInnerCache(true);
+            machine.setSpecialized(_specialize);
+            endConfigLoad(event, false);
+            return machine;
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
     }
 
+    /** Commit EVENT, begun by readConfig, for a configuration that was a
+     *  snapshot iff SNAPSHOT. */
+    private void endConfigLoad(ConfigLoadEvent event, boolean snapshot) {
+        if (event.shouldCommit()) {
+            event.snapshot = snapshot;
+            event.alphabetSize = _alphabet.size();
+            event.rotors = _allRotors.size();
+            event.commit();
+        }
+    }
+
     /** Return a rotor, reading its description from _config. */
     private Rotor readRotor() {
         try {
@@ -151,7 +711,7 @@ public final class Main {
             String notches = _config.next();
             String rotorP = "";
             String current = _config.next();
-            while (_config.hasNext("\\(.+\\)\\s*")) {
+            while (isCycle(_config.peek())) {
                 rotorP += current + "";
                 current = _config.next();
             }
@@ -204,43 +764,208 @@ public final class Main {
         }
         M.setPlugboard(new Permutation(base, _alphabet));
     }
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String outcome;
-        if (msg.length() != 0) {
-            if (msg.length() >= 5) {
-                outcome = msg.substring(0, 5) + " ";
-                for (int i = 1; i < (msg.length() / 5); i++) {
-                    outcome = outcome + msg.substring(i * 5, i * 5 + 5) + " ";
-                }
-            } else {
-                outcome = msg;
+    /** Set M, whose alphabet must be the byte alphabet, according to KEY.
+     *  KEY names M's rotors, as in a settings line, then gives the
+     *  settings of all but the first as one string of hexadecimal digits
+     *  (two per rotor), then the plugboard in cycle notation, each byte
+     *  written as two hexadecimal digits; e.g.,
+     *  "R0 F1 M3 M0 M6 00A1FF3C (0A41) (FF00)".  A leading "*" is
+     *  allowed. */
+    private void setUpBytes(Machine M, String key) {
+        String[] all = key.trim().split("\\s+");
+        int first = all[0].equals("*") ? 1 : 0;
+        int r = M.numRotors();
+        if (all.length < first + r + 1) {
+            throw error("bad byte key: %s", key);
+        }
+        M.insertRotors(Arrays.copyOfRange(all, first, first + r));
+        int[] setting = hexBytes(all[first + r]);
+        if (setting.length != r - 1) {
+            throw error("wrong number of rotor settings: %s", all[first + r]);
+        }
+        StringBuilder chars = new StringBuilder();
+        for (int b : setting) {
+            chars.append((char) b);
+        }
+        M.setRotors(chars.toString());
+        int[] forward = new int[Alphabet.BYTES];
+        boolean[] used = new boolean[Alphabet.BYTES];
+        for (int b = 0; b < forward.length; b += 1) {
+            forward[b] = b;
+        }
+        StringBuilder cycles = new StringBuilder();
+        for (int i = first + r + 1; i < all.length; i += 1) {
+            if (!isCycle(all[i])) {
+                throw error("bad plugboard cycle: %s", all[i]);
             }
-            if (msg.length() % 5 != 0) {
-                if (msg.length() > 5) {
-                    outcome += msg.substring(msg.length() - (msg.length() % 5));
+            int[] cycle = hexBytes(all[i].substring(1, all[i].length() - 1));
+            for (int k = 0; k < cycle.length; k += 1) {
+                if (used[cycle[k]]) {
+                    throw error("repeated byte in plugboard: %02X",
+                                cycle[k]);
                 }
+                used[cycle[k]] = true;
+                forward[cycle[k]] = cycle[(k + 1) % cycle.length];
             }
-            _output.println(outcome);
-        } else {
-            _output.println("");
+            cycles.append(all[i]);
+        }
+        M.setPlugboard(new Permutation(cycles.toString(), M.alphabet(),
+                                       forward));
+    }
+
+    /** Return the bytes written in hexadecimal, two digits each, in
+     *  HEX. */
+    private static int[] hexBytes(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw error("bad hexadecimal bytes: %s", hex);
+        }
+        int[] result = new int[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw error("bad hexadecimal bytes: %s", hex);
+            }
+            result[i] = 16 * hi + lo;
+        }
+        return result;
+    }
+
+    /** Return true iff TOKEN is a parenthesized cycle. */
+    private static boolean isCycle(String token) {
+        return token != null && token.length() > 2
+            && token.startsWith("(") && token.endsWith(")");
+    }
+
+    /** Convert the next line of _input with M and print it in groups of
+     *  five (except that the last group may have fewer letters).  The
+     *  line is read, converted and printed in chunks. */
+    private void printMessageLine(Machine M) {
+        int n;
+        while ((n = _input.read(_chunk, 0, _chunk.length)) >= 0) {
+            n = convertChunk(M, n);
+            _output.write(_chunk, 0, n);
         }
+        _output.endLine();
     }
 
+    /** Convert the first LEN characters of _chunk with M, in place, and
+     *  return the number of message characters they held. */
+    private int convertChunk(Machine M, int len) {
+        ConversionEvent event = new ConversionEvent();
+        event.begin();
+        int n;
+        if (_parallel == null) {
+            n = M.convert(_chunk, 0, len, _chunk, 0);
+        } else {
+            n = _parallel.convert(M, _chunk, 0, len, _chunk, 0);
+        }
+        Metrics.CHARS.add(n);
+        if (event.shouldCommit()) {
+            event.charsIn = len;
+            event.charsOut = n;
+            event.parallel = _parallel != null;
+            event.commit();
+        }
+        return n;
+    }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private InputTokenizer _input;
+
+    /** Source of machine configuration, or null if it is _snapshot. */
+    private InputTokenizer _config;
+
+    /** Compiled machine configuration, or null if it is read from
+     *  _config. */
+    private ConfigSnapshot _snapshot;
+
+    /** True iff the configuration is to be compiled into a snapshot. */
+    private boolean _compile;
+
+    /** Name of the snapshot file to write when _compile. */
+    private String _snapshotName;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Address on which to serve clients, or null to process an input
+     *  file. */
+    private String _serveAddress;
+
+    /** Largest number of clients served at once. */
+    private int _maxConnections = EnigmaServer.DEFAULT_MAX_CONNECTIONS;
+
+    /** True iff a byte configuration is to be generated. */
+    private boolean _generateBytes;
+
+    /** Key for converting a byte stream, or null to convert messages. */
+    private String _byteKey;
+
+    /** Crib to search for with a bombe, or null. */
+    private String _crib;
+
+    /** Position in the ciphertext of the start of _crib. */
+    private int _cribOffset;
+
+    /** Source of the byte stream, when _byteKey or _crib is set. */
+    private ReadableByteChannel _byteInput;
+
+    /** Destination of the converted byte stream or of the bombe's stops,
+     *  when _byteKey or _crib is set. */
+    private WritableByteChannel _byteOutput;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private GroupWriter _output;
+
+    /** True iff _output writes to a named file. */
+    private boolean _outputIsFile;
+
+    /** True iff files are to be accessed through memory mapping. */
+    private boolean _mapped;
+
+    /** True iff machines are to convert with generated code. */
+    private boolean _specialize;
+
+    /** Interval in seconds between reports of Metrics.GLOBAL, 0 to
+     *  report only on exit, or -1 not to report. */
+    private int _metricsInterval = -1;
+
 
     /** an array list of all rotors. */
     private  ArrayList<Rotor> _allRotors = new ArrayList<>();
+
+    /** Number of message characters read and converted at a time. */
+    static final int CHUNK_SIZE = 1 << 13;
+
+    /** Number of message characters read and converted at a time by
+     *  the parallel converter. */
+    static final int PARALLEL_CHUNK_SIZE = 1 << 22;
+
+    /** Seconds between reports of a server's statistics. */
+    static final int REPORT_INTERVAL = 10;
+
+    /** Buffer for message characters. */
+    private char[] _chunk = new char[CHUNK_SIZE];
+
+    /** Converter for long message lines, or null to convert serially. */
+    private ParallelConverter _parallel;
+
+    /** Converter for sections of input, or null to convert serially. */
+    private SectionScheduler _sections;
+
+    /** Machines for settings lines, when converting serially. */
+    private MachineCache _machines;
+
+    /** Machine for the current section, when converting serially. */
+    private Machine _machine;
+
+    /** Value of System.nanoTime() when the current section's settings
+     *  line was read, when converting serially. */
+    private long _sectionBegan;
+
+
+    /** Kinds of input line. */
+    private static final int SETTINGS_LINE = 0, EMPTY_LINE = 1,
+        MESSAGE_LINE = 2;
 }
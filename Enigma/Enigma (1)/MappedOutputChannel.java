@@ -0,0 +1,152 @@
+package enigma;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/** A channel that writes a file through memory-mapped windows rather than
+ *  write system calls.  The file grows a window at a time and is cut
+ *  back to the number of bytes actually written when the channel is
+ *  closed, so files larger than 2 GB may be written.  Each window is
+ *  forced to the file and unmapped when it is finished with, so that
+ *  the file can be truncated (which some systems refuse while it is
+ *  mapped).  If the process dies before close(), the file is left
+ *  padded with zeros to the end of its last window.
+ *  @author Bon Hee Koo
+ */
+final class MappedOutputChannel implements WritableByteChannel {
+
+    /** A channel that writes FILE, which must be open for reading and
+     *  writing, from its beginning. */
+    MappedOutputChannel(FileChannel file) {
+        this(file, WINDOW_SIZE);
+    }
+
+    /** A channel that writes FILE, which must be open for reading and
+     *  writing, from its beginning, through windows of WINDOWSIZE
+     *  bytes. */
+    MappedOutputChannel(FileChannel file, long windowSize) {
+        _file = file;
+        _windowSize = windowSize;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        int written = 0;
+        while (src.hasRemaining()) {
+            if (_window == null || !_window.hasRemaining()) {
+                if (_window != null) {
+                    _windowStart += _window.capacity();
+                    release();
+                }
+                _window = _file.map(FileChannel.MapMode.READ_WRITE,
+                                    _windowStart, _windowSize);
+            }
+            int n = Math.min(src.remaining(), _window.remaining());
+            ByteBuffer piece = src.duplicate();
+            piece.limit(piece.position() + n);
+            _window.put(piece);
+            src.position(src.position() + n);
+            written += n;
+        }
+        return written;
+    }
+
+    /** Return the number of bytes written so far. */
+    long size() {
+        return _window == null ? 0 : _windowStart + _window.position();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return _file.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!isOpen()) {
+            return;
+        }
+        long size = size();
+        try {
+            release();
+        } finally {
+            try {
+                _file.truncate(size);
+            } finally {
+                _file.close();
+            }
+        }
+    }
+
+    /** Force the current window, if any, to the file and unmap it. */
+    private void release() {
+        MappedByteBuffer window = _window;
+        if (window == null) {
+            return;
+        }
+        _window = null;
+        window.force();
+        unmap(window);
+    }
+
+    /** Unmap WINDOW at once, which must not be used again, if the
+     *  platform allows; otherwise it is unmapped when it is collected. */
+    private static void unmap(MappedByteBuffer window) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, window);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            /* Left to the garbage collector. */
+        }
+    }
+
+    /** Size of the windows in which the file is mapped. */
+    static final long WINDOW_SIZE = 1L << 27;
+
+    /** The sun.misc.Unsafe instance, or null if it is unavailable. */
+    private static final Object UNSAFE;
+
+    /** Unsafe.invokeCleaner, which unmaps a mapped buffer, or null. */
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner",
+                                           ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /** Size of my windows. */
+    private final long _windowSize;
+
+    /** The file being written. */
+    private final FileChannel _file;
+
+    /** The currently mapped window, or null before the first write. */
+    private MappedByteBuffer _window;
+
+    /** Position in _file of the start of _window. */
+    private long _windowStart;
+}
@@ -0,0 +1,106 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/** The suite of all JUnit tests for the MappedOutputChannel class, and for
+ *  reading mapped files with InputTokenizer.
+ *  @author Bon Hee Koo
+ */
+public class MappedOutputChannelTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Size of the windows used in these tests. */
+    private static final long WINDOW = 4096;
+
+    /** Return a new temporary file, to be deleted on exit. */
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("enigma-mapped", ".txt");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /** Write TEXT to FILE through a MappedOutputChannel with windows of
+     *  WINDOW bytes, in pieces of random lengths chosen by RANDOM. */
+    private static void writeMapped(Path file, byte[] text, Random random)
+        throws IOException {
+        MappedOutputChannel out = new MappedOutputChannel(
+            FileChannel.open(file, READ, WRITE, CREATE, TRUNCATE_EXISTING),
+            WINDOW);
+        try {
+            int p = 0;
+            while (p < text.length) {
+                int n = Math.min(text.length - p,
+                                 1 + random.nextInt((int) WINDOW * 2));
+                assertEquals(n, out.write(ByteBuffer.wrap(text, p, n)));
+                p += n;
+                assertEquals(p, out.size());
+            }
+        } finally {
+            out.close();
+        }
+        assertFalse(out.isOpen());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTripAcrossWindows() throws IOException {
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        String[] lines = new String[200];
+        for (int i = 0; i < lines.length; i += 1) {
+            lines[i] = randomText(random, random.nextInt(200));
+            text.append(lines[i]).append('\n');
+        }
+        byte[] bytes = text.toString().getBytes(Charset.defaultCharset());
+        assertTrue(bytes.length > 5 * WINDOW);
+        Path file = tempFile();
+        writeMapped(file, bytes, random);
+        assertEquals(bytes.length, Files.size(file));
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+        try (FileChannel in = FileChannel.open(file)) {
+            InputTokenizer tokens = InputTokenizer.mapped(in, WINDOW);
+            for (String line : lines) {
+                assertTrue(tokens.hasNextLine());
+                assertEquals(line, tokens.nextLine());
+            }
+            assertFalse(tokens.hasNextLine());
+        }
+    }
+
+    @Test
+    public void testExactWindows() throws IOException {
+        byte[] bytes = new byte[(int) (2 * WINDOW)];
+        new Random(8).nextBytes(bytes);
+        Path file = tempFile();
+        writeMapped(file, bytes, new Random(9));
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        Path file = tempFile();
+        Files.write(file, new byte[] { 1, 2, 3 });
+        writeMapped(file, new byte[0], new Random(10));
+        assertEquals(0, Files.size(file));
+    }
+}
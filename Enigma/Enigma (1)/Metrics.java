@@ -0,0 +1,102 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.Histogram.micros;
+
+/** A registry of named counters and histograms of the work done by this
+ *  process, which may be polled while it runs and reported when it ends.
+ *  They are updated once per chunk, section or buffer of input and
+ *  output, never per character, so they cost nothing measurable and are
+ *  always kept; only reporting them is optional (see Main's --metrics
+ *  option).  May be updated and read by any number of threads at once.
+ *  @author Bon Hee Koo
+ */
+final class Metrics {
+
+    /** Return the counter named NAME, registering it if it is new. */
+    synchronized LongAdder counter(String name) {
+        return _counters.computeIfAbsent(name, x -> new LongAdder());
+    }
+
+    /** Return the histogram named NAME, registering it if it is new. */
+    synchronized Histogram histogram(String name) {
+        return _histograms.computeIfAbsent(name, x -> new Histogram());
+    }
+
+    /** Return the current value of each counter, in the order they were
+     *  registered. */
+    synchronized Map<String, Long> snapshot() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> e : _counters.entrySet()) {
+            result.put(e.getKey(), e.getValue().sum());
+        }
+        return result;
+    }
+
+    /** Return a one-line report of each counter, with its rate over the
+     *  time since the previous report, and of the median and 99th
+     *  percentile of each histogram. */
+    synchronized String report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - _lastTime, 1) / 1e9;
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Long> e : snapshot().entrySet()) {
+            long last = _last.getOrDefault(e.getKey(), 0L);
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(String.format("%s %d (%.0f/s)", e.getKey(),
+                                        e.getValue(),
+                                        (e.getValue() - last) / seconds));
+            _last.put(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, Histogram> e : _histograms.entrySet()) {
+            Histogram h = e.getValue();
+            result.append(String.format(", %s p50 %s, p99 %s",
+                                        e.getKey(), micros(h.quantile(0.5)),
+                                        micros(h.quantile(0.99))));
+        }
+        _lastTime = now;
+        return result.toString();
+    }
+
+    /** The registry of this process. */
+    static final Metrics GLOBAL = new Metrics();
+
+    /** Message characters converted. */
+    static final LongAdder CHARS = GLOBAL.counter("chars");
+
+    /** Sections (settings lines) set up. */
+    static final LongAdder SECTIONS = GLOBAL.counter("sections");
+
+    /** Bytes read by InputTokenizers. */
+    static final LongAdder BYTES_IN = GLOBAL.counter("bytes.in");
+
+    /** Bytes written by GroupWriters. */
+    static final LongAdder BYTES_OUT = GLOBAL.counter("bytes.out");
+
+    /** Sections whose machine was found in a MachineCache. */
+    static final LongAdder CACHE_HITS = GLOBAL.counter("cache.hits");
+
+    /** Sections whose machine a MachineCache had to build. */
+    static final LongAdder CACHE_MISSES = GLOBAL.counter("cache.misses");
+
+    /** Time from reading each section's settings line to finishing its
+     *  output, in nanoseconds. */
+    static final Histogram SECTION_NANOS = GLOBAL.histogram("section");
+
+    /** Counters by name, in the order they were registered. */
+    private final Map<String, LongAdder> _counters = new LinkedHashMap<>();
+
+    /** Histograms by name, in the order they were registered. */
+    private final Map<String, Histogram> _histograms = new LinkedHashMap<>();
+
+    /** Value of each counter at the previous report. */
+    private final Map<String, Long> _last = new LinkedHashMap<>();
+
+    /** Time of the previous report. */
+    private long _lastTime = System.nanoTime();
+}
@@ -0,0 +1,106 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Bon Hee Koo
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the current value of the counter NAME of
+     *  Metrics.GLOBAL. */
+    private static long global(String name) {
+        return Metrics.GLOBAL.snapshot().get(name);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRegistry() {
+        Metrics metrics = new Metrics();
+        metrics.counter("b").add(3);
+        metrics.counter("a").increment();
+        metrics.counter("b").add(4);
+        Map<String, Long> snapshot = metrics.snapshot();
+        assertEquals(Arrays.asList("b", "a"),
+                     Arrays.asList(snapshot.keySet().toArray()));
+        assertEquals(7L, (long) snapshot.get("b"));
+        assertEquals(1L, (long) snapshot.get("a"));
+    }
+
+    @Test
+    public void checkReport() {
+        Metrics metrics = new Metrics();
+        metrics.counter("chars").add(10);
+        metrics.counter("sections");
+        String report = metrics.report();
+        assertTrue(report, report.startsWith("chars 10 ("));
+        assertTrue(report, report.contains(", sections 0 (0/s)"));
+        assertTrue(metrics.report().startsWith("chars 10 (0/s)"));
+        metrics.histogram("latency").record(2000);
+        assertTrue(metrics.report().endsWith(
+            ", latency p50 2.0us, p99 2.0us"));
+    }
+
+    @Test
+    public void checkHistogram() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.quantile(0.5));
+        for (long v = 1; v <= 1000; v += 1) {
+            h.record(v);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(1, h.quantile(0.0001));
+        long p50 = h.quantile(0.5);
+        assertTrue(Long.toString(p50), p50 >= 500 && p50 <= 500 * 9 / 8);
+        long p99 = h.quantile(0.99);
+        assertTrue(Long.toString(p99), p99 >= 990 && p99 <= 990 * 9 / 8);
+        assertTrue(h.quantile(1) >= 1000);
+        h.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, h.quantile(1));
+        h.reset();
+        assertEquals(0, h.count());
+    }
+
+    @Test
+    public void checkMachineCacheCounts() {
+        long sections = global("sections");
+        long hits = global("cache.hits");
+        long misses = global("cache.misses");
+        MachineCache cache = new MachineCache(2, settings ->
+            navalMachine("B Beta I II III", "AAAA", ""));
+        cache.get("* B Beta I II III AAAA");
+        cache.get("* B Beta I II III AAAA");
+        cache.get("* B Beta I II IV AAAA");
+        assertTrue(global("sections") >= sections + 3);
+        assertTrue(global("cache.hits") >= hits + 1);
+        assertTrue(global("cache.misses") >= misses + 2);
+    }
+
+    @Test
+    public void checkBytesOut() {
+        long bytes = global("bytes.out");
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        GroupWriter out = new GroupWriter(Channels.newChannel(sink));
+        out.write("HELLOWORLD".toCharArray(), 0, 10);
+        out.endLine();
+        out.flush();
+        assertTrue(global("bytes.out") >= bytes + sink.size());
+    }
+}
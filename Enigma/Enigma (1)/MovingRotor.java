@@ -13,8 +13,12 @@ class MovingRotor extends Rotor {
      *  alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
-        super(name, perm);
-        _notches = notches;
+        this(new RotorWiring(name, perm, notches));
+    }
+
+    /** A moving rotor with wiring WIRING, at setting 0. */
+    MovingRotor(RotorWiring wiring) {
+        super(wiring);
     }
 
     @Override
@@ -24,20 +28,22 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        if (_notches != null) {
-            return _notches.indexOf(alphabet().toChar(setting())) != -1;
-        } else {
-            return false;
-        }
+        return wiring().notchAt(setting());
     }
 
     @Override
-    void advance() {
-        set(permutation().wrap(setting() + 1));
+    boolean notchAt(int posn) {
+        return wiring().notchAt(posn);
     }
 
+    @Override
+    Rotor copy() {
+        return copyInto(new MovingRotor(wiring()));
+    }
 
-    /** Notches of the rotator.*/
-    private String _notches;
+    @Override
+    void advance() {
+        set(permutation().wrap(setting() + 1));
+    }
 
 }
@@ -98,4 +98,25 @@ public class MovingRotorTest {
         p2.advance();
         assertEquals(1, p2.setting());
     }
+
+    @Test
+    public void checkPrecomputedTables() {
+        setRotor("VI", NAVALA, "ZM");
+        Rotor plain = new MovingRotor("VI",
+                new Permutation(NAVALA.get("VI"), UPPER), "ZM");
+        rotor.precompute();
+        for (int s = 0; s < 26; s += 1) {
+            rotor.set(s);
+            plain.set(s);
+            for (int p = 0; p < 26; p += 1) {
+                assertEquals(plain.convertForward(p),
+                             rotor.convertForward(p));
+                assertEquals(plain.convertBackward(p),
+                             rotor.convertBackward(p));
+            }
+        }
+        rotor.set(25);
+        checkRotor("Rotor VI precomputed", UPPER_STRING,
+                   NAVALZ_MAP.get("VI"));
+    }
 }
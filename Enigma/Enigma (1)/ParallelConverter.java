@@ -0,0 +1,159 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Converts one long message on several cores.  The message is cut into
+ *  blocks.  A first parallel pass translates each block to alphabet
+ *  indices and counts its letters; a second gives each block its own
+ *  copy of the machine, sought to the position of the block's first
+ *  letter, and converts it.  The result is identical to converting the
+ *  message serially, and the original machine is left in the same
+ *  state.  A converter may be used by one thread at a time.
+ *  @author Bon Hee Koo
+ */
+final class ParallelConverter {
+
+    /** A converter that runs on POOL with blocks of BLOCKSIZE
+     *  characters. */
+    ParallelConverter(ForkJoinPool pool, int blockSize) {
+        _pool = pool;
+        _blockSize = blockSize;
+        _indices = new int[0];
+        _counts = new int[0];
+    }
+
+    /** A converter that runs on the common pool. */
+    ParallelConverter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE);
+    }
+
+    /** Convert the LEN characters of MSG starting at OFF with M, as for
+     *  Machine.convert(char[], int, int, char[], int), writing the result
+     *  into OUT starting at OUTOFF.  MSG and OUT may be the same array,
+     *  provided OUTOFF <= OFF.  Returns the number of characters
+     *  written. */
+    int convert(Machine M, char[] msg, int off, int len, char[] out,
+                int outOff) {
+        int blocks = (len + _blockSize - 1) / _blockSize;
+        if (blocks <= 1) {
+            return M.convert(msg, off, len, out, outOff);
+        }
+        if (_indices.length < len) {
+            _indices = new int[len];
+        }
+        if (_counts.length < blocks + 1) {
+            _counts = new int[blocks + 1];
+        }
+        Alphabet alpha = M.alphabet();
+        _pool.invoke(new Blocks(0, blocks, b -> {
+            int start = off + b * _blockSize;
+            int end = Math.min(off + len, start + _blockSize);
+            int k = start - off;
+            for (int i = start; i < end; i += 1) {
+                if (msg[i] != ' ') {
+                    _indices[k] = alpha.toInt(Character.toUpperCase(msg[i]));
+                    k += 1;
+                }
+            }
+            _counts[b + 1] = k - (start - off);
+        }));
+        for (int b = 0; b < blocks; b += 1) {
+            _counts[b + 1] += _counts[b];
+        }
+        long origin = M.position();
+        M.schedule();
+        _pool.invoke(new Blocks(0, blocks, b -> {
+            Machine worker = M.copy();
+            worker.seek(origin + _counts[b]);
+            int from = b * _blockSize;
+            int n = _counts[b + 1] - _counts[b];
+            int o = outOff + _counts[b];
+            for (int i = 0; i < n; i += 1) {
+                out[o + i] = alpha.toChar(worker.convert(_indices[from + i]));
+            }
+        }));
+        M.seek(origin + _counts[blocks]);
+        return _counts[blocks];
+    }
+
+    /** Convert the LEN bytes of MSG starting at OFF with M, as for
+     *  Machine.convert(byte[], int, int, byte[], int), writing the result
+     *  into OUT starting at OUTOFF.  MSG and OUT may be the same array,
+     *  provided the two ranges are the same or do not overlap.  Every
+     *  byte is converted, so block b begins b blocks into the message
+     *  and needs no first pass: each block's starting settings are found
+     *  by skipping from those of the block before it, which takes time
+     *  proportional to the block's length even when M's schedule is not
+     *  recorded, as for the byte alphabet. */
+    void convert(Machine M, byte[] msg, int off, int len, byte[] out,
+                 int outOff) {
+        int blocks = (len + _blockSize - 1) / _blockSize;
+        if (blocks <= 1) {
+            M.convert(msg, off, len, out, outOff);
+            return;
+        }
+        Machine[] workers = new Machine[blocks];
+        for (int b = 0; b < blocks; b += 1) {
+            workers[b] = M.copy();
+            M.skip(Math.min(_blockSize, len - b * _blockSize));
+        }
+        _pool.invoke(new Blocks(0, blocks, b -> {
+            int from = b * _blockSize;
+            workers[b].convert(msg, off + from,
+                               Math.min(_blockSize, len - from), out,
+                               outOff + from);
+        }));
+    }
+
+    /** Work on one block. */
+    private interface BlockAction {
+        /** Process block B. */
+        void run(int b);
+    }
+
+    /** Applies a BlockAction to a range of blocks, splitting the range
+     *  among workers. */
+    private static final class Blocks extends RecursiveAction {
+        /** Apply ACTION to blocks FROM .. TO-1. */
+        Blocks(int from, int to, BlockAction action) {
+            _from = from;
+            _to = to;
+            _action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from == 1) {
+                _action.run(_from);
+            } else {
+                int mid = (_from + _to) >>> 1;
+                invokeAll(new Blocks(_from, mid, _action),
+                          new Blocks(mid, _to, _action));
+            }
+        }
+
+        /** First block. */
+        private final int _from;
+        /** Limit of blocks. */
+        private final int _to;
+        /** Work per block. */
+        private final BlockAction _action;
+    }
+
+    /** Default number of characters per block. */
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    /** Pool that runs the blocks. */
+    private final ForkJoinPool _pool;
+
+    /** Characters per block. */
+    private final int _blockSize;
+
+    /** Alphabet indices of the letters of each block, stored from the
+     *  block's offset in the message. */
+    private int[] _indices;
+
+    /** _counts[b] is the number of letters before block b. */
+    private int[] _counts;
+}
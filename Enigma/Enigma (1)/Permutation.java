@@ -16,30 +16,100 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _rotation = cycles;
-        int i = 0;
-        while (i < _rotation.length() - 1) {
-            if (_rotation.charAt(i) == _rotation.charAt(i + 1)) {
-                throw new EnigmaException("repeated");
+        compile();
+    }
+
+    /** A permutation of ALPHABET, written CYCLES in cycle notation, that
+     *  maps each index i to FORWARD[i].  FORWARD is taken to be the
+     *  compiled form of CYCLES, as saved in a ConfigSnapshot, so CYCLES
+     *  is not parsed; FORWARD is only checked to be a permutation. */
+    Permutation(String cycles, Alphabet alphabet, int[] forward) {
+        _alphabet = alphabet;
+        _rotation = cycles;
+        int n = size();
+        if (forward.length != n) {
+            throw error("permutation of wrong size");
+        }
+        int[] inverse = new int[n];
+        boolean[] seen = new boolean[n];
+        for (int i = 0; i < n; i += 1) {
+            int c = forward[i];
+            if (c < 0 || c >= n || seen[c]) {
+                throw error("not a permutation");
             }
-            i++;
+            seen[c] = true;
+            inverse[c] = i;
         }
-        char[] testing = _rotation.replaceAll("(\\s)", "").toCharArray();
-        int j = 0;
-        while (j < testing.length) {
-            if (!_alphabet.contains(testing[j])) {
-                throw new EnigmaException("Non existing alphabet");
+        _forward = IndexTable.of(forward, n);
+        _inverse = IndexTable.of(inverse, n);
+    }
+
+    /** Validate _rotation and parse it, in a single pass, into the forward
+     *  and inverse tables used by permute and invert.  As in the
+     *  reference implementation, the first occurrence of a character
+     *  determines its images. */
+    private void compile() {
+        int n = size();
+        int[] forward = new int[n];
+        int[] inverse = new int[n];
+        boolean[] seen = new boolean[n];
+        for (int i = 0; i < n; i += 1) {
+            forward[i] = inverse[i] = i;
+        }
+        int[] cycle = new int[_rotation.length()];
+        int m = -1;
+        int prev = -1;
+        for (int k = 0; k < _rotation.length(); ) {
+            int c = _rotation.codePointAt(k);
+            k += Character.charCount(c);
+            if (c == prev) {
+                throw new EnigmaException("repeated");
+            }
+            prev = c;
+            if (Character.isWhitespace(c)) {
+                continue;
+            } else if (c == '(' && m < 0) {
+                m = 0;
+            } else if (c == ')' && m >= 0) {
+                addCycle(cycle, m, forward, inverse, seen);
+                m = -1;
+            } else if (m < 0) {
+                throw error("bad cycle notation: %s", _rotation);
+            } else {
+                cycle[m] = _alphabet.indexOf(c);
+                if (cycle[m] < 0) {
+                    throw new EnigmaException("Non existing alphabet");
+                }
+                m += 1;
             }
-            j++;
         }
+        if (m >= 0) {
+            throw error("unterminated cycle: %s", _rotation);
+        }
+        _forward = IndexTable.of(forward, n);
+        _inverse = IndexTable.of(inverse, n);
     }
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        _rotation += cycle;
+
+    /** Add the cycle c0->c1->...->cm->c0, where c0c1...cm are the first M
+     *  indices in CYCLE, to the tables FORWARD and INVERSE, skipping
+     *  indices already SEEN. */
+    private void addCycle(int[] cycle, int m, int[] forward, int[] inverse,
+                          boolean[] seen) {
+        for (int k = 0; k < m; k += 1) {
+            int c = cycle[k];
+            if (!seen[c]) {
+                seen[c] = true;
+                forward[c] = cycle[(k + 1) % m];
+                inverse[c] = cycle[(k + m - 1) % m];
+            }
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
+        if (p >= 0 && p < size()) {
+            return p;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -55,20 +125,35 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int outInt = _alphabet.toInt(permute(_alphabet.toChar(wrap(p))));
-        return outInt;
+        return _forward.get(wrap(p));
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int outInt = _alphabet.toInt(invert(_alphabet.toChar(wrap(c))));
-        return outInt;
+        return _inverse.get(wrap(c));
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
+        if (!_alphabet.contains(p)) {
+            return p;
+        }
+        return _alphabet.toChar(_forward.get(_alphabet.toInt(p)));
+    }
+
+    /** Return the result of applying the inverse of this permutation to C. */
+    char invert(char c) {
+        if (!_alphabet.contains(c)) {
+            return c;
+        }
+        return _alphabet.toChar(_inverse.get(_alphabet.toInt(c)));
+    }
+
+    /** Reference implementation of permute(P) that searches the cycle
+     *  string directly.  Kept for cross-checking the compiled tables. */
+    char referencePermute(char p) {
         char val = p;
         if (_rotation.equals("")) {
             return val;
@@ -92,8 +177,9 @@ class Permutation {
         return val;
     }
 
-    /** Return the result of applying the inverse of this permutation to C. */
-    char invert(char c) {
+    /** Reference implementation of invert(C) that searches the cycle
+     *  string directly.  Kept for cross-checking the compiled tables. */
+    char referenceInvert(char c) {
         char val = c;
         if (_rotation.equals("")) {
             return val;
@@ -118,6 +204,17 @@ class Permutation {
         return val;
     }
 
+    /** Return the cycles used to initialize this Permutation. */
+    String cycles() {
+        return _rotation;
+    }
+
+    /** Return the image under this permutation of each index, in
+     *  order. */
+    int[] toArray() {
+        return _forward.toArray();
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
@@ -128,7 +225,7 @@ class Permutation {
     boolean derangement() {
         int i = 0;
         while (i < _alphabet.size()) {
-            if (_alphabet.toChar(i) == permute(_alphabet.toChar(i))) {
+            if (_forward.get(i) == i) {
                 return false;
             }
             i++;
@@ -136,8 +233,14 @@ class Permutation {
         return true;
     }
     /** string of cycles. */
-    private String _rotation;
+    private final String _rotation;
+
+    /** Image of each index under this permutation. */
+    private IndexTable _forward;
+
+    /** Image of each index under the inverse of this permutation. */
+    private IndexTable _inverse;
 
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
+    private final Alphabet _alphabet;
 }
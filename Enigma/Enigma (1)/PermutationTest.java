@@ -87,5 +87,29 @@ public class PermutationTest {
         assertEquals('R', perm.invert('Q'));
     }
 
+    @Test
+    public void checkTablesMatchReference() {
+        for (String name : NAVALA.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            for (int i = 0; i < UPPER_STRING.length(); i += 1) {
+                char c = UPPER_STRING.charAt(i);
+                assertEquals(msg(name, "permute '%c'", c),
+                             perm.referencePermute(c), perm.permute(c));
+                assertEquals(msg(name, "invert '%c'", c),
+                             perm.referenceInvert(c), perm.invert(c));
+                assertEquals(msg(name, "round trip %d", i),
+                             i, perm.invert(perm.permute(i)));
+            }
+        }
+    }
+
+    @Test
+    public void checkWrapIndices() {
+        perm = new Permutation("(ABC)", UPPER);
+        assertEquals(1, perm.permute(26));
+        assertEquals(0, perm.permute(-24));
+        assertEquals(25, perm.invert(-1));
+    }
+
 
 }
@@ -14,6 +14,16 @@ class Reflector extends FixedRotor {
         set(0);
     }
 
+    /** A reflector with wiring WIRING, at setting 0. */
+    Reflector(RotorWiring wiring) {
+        super(wiring);
+    }
+
+    @Override
+    Rotor copy() {
+        return copyInto(new Reflector(wiring()));
+    }
+
     /** Returns true only when the rotor is a reflector. */
     boolean reflecting() {
         return true;
@@ -2,36 +2,46 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor
+ *  is a setting on top of a RotorWiring, which holds everything else and
+ *  may be shared, so rotors are cheap to copy.
  *  @author Bon Hee Koo
  */
 class Rotor {
 
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
-        _name = name;
-        _permutation = perm;
+        this(new RotorWiring(name, perm, ""));
+    }
 
+    /** A rotor with wiring WIRING, at setting 0. */
+    Rotor(RotorWiring wiring) {
+        _wiring = wiring;
     }
 
     /** Return my name. */
     String name() {
-        return _name;
+        return _wiring.name();
     }
 
     /** Return my alphabet. */
     Alphabet alphabet() {
-        return _permutation.alphabet();
+        return _wiring.permutation().alphabet();
     }
 
     /** Return my permutation. */
     Permutation permutation() {
-        return _permutation;
+        return _wiring.permutation();
+    }
+
+    /** Return my wiring. */
+    RotorWiring wiring() {
+        return _wiring;
     }
 
     /** Return the size of my alphabet. */
     int size() {
-        return _permutation.size();
+        return _wiring.size();
     }
 
     /** Return true iff I have a ratchet and can move. */
@@ -56,60 +66,111 @@ class Rotor {
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _set = _permutation.alphabet().toInt(cposn);
+        _set = alphabet().toInt(cposn);
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int val = 0;
-        if (p >= 0) {
-            return _permutation.wrap(
-                    _permutation.permute(
-                            _permutation.wrap(p + _set)) - _set);
-        }
-        if (p < 0) {
-            return 0;
-        }
-        return 0;
+        return convertForward(p, _set);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int val = 0;
-        if (e >= 0) {
-            return _permutation.wrap(
-                    _permutation.invert(
-                            _permutation.wrap(e + _set)) - _set);
+        return convertBackward(e, _set);
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation when I am at setting POSN. */
+    int convertForward(int p, int posn) {
+        if (p < 0) {
+            return 0;
         }
+        if (_forwardTable != null) {
+            return _forwardTable[posn * _tableStride + p];
+        }
+        return _wiring.convertForward(p, posn);
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation when I am at setting
+     *  POSN. */
+    int convertBackward(int e, int posn) {
         if (e < 0) {
             return 0;
         }
-        return 0;
+        if (_backwardTable != null) {
+            return _backwardTable[posn * _tableStride + e];
+        }
+        return _wiring.convertBackward(e, posn);
+    }
+
+    /** Use my wiring's conversion tables, compiling them if need be, so
+     *  that each conversion becomes a single array access.  The tables
+     *  hold size() squared entries in each direction, so there are none
+     *  when size() exceeds TABLE_LIMIT; conversions then fall back to
+     *  modular arithmetic. */
+    void precompute() {
+        if (_forwardTable == null) {
+            _tableStride = size();
+            _backwardTable = _wiring.backwardTable();
+            _forwardTable = _wiring.forwardTable();
+        }
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return notchAt(_set);
+    }
+
+    /** Returns true iff setting POSN is one of my notches. */
+    boolean notchAt(int posn) {
         return false;
     }
 
+    /** Return a new rotor like me, at my current setting, that shares my
+     *  wiring but moves independently. */
+    Rotor copy() {
+        return copyInto(new Rotor(_wiring));
+    }
+
+    /** Give ROTOR, a fresh rotor with my wiring, my setting and tables,
+     *  and return it. */
+    Rotor copyInto(Rotor rotor) {
+        rotor._set = _set;
+        rotor._tableStride = _tableStride;
+        rotor._backwardTable = _backwardTable;
+        rotor._forwardTable = _forwardTable;
+        return rotor;
+    }
+
     /** Advance one position, if possible. */
     void advance() {
     }
 
     @Override
     public String toString() {
-        return "Rotor " + _name;
+        return "Rotor " + name();
     }
 
-    /** Name. */
-    private final String _name;
-
-    /** Permutation implemented by the rotor. */
-    private Permutation _permutation;
+    /** Name, permutation and notches, shared with my copies. */
+    private final RotorWiring _wiring;
 
     /** Current setting. */
     private int _set;
+
+    /** Largest alphabet for which precompute() finds tables. */
+    static final int TABLE_LIMIT = RotorWiring.TABLE_LIMIT;
+
+    /** Forward conversion of p at setting s, stored at s * size() + p,
+     *  or null if not precomputed.  Taken from _wiring. */
+    private int[] _forwardTable;
+
+    /** Backward conversions, laid out as for _forwardTable. */
+    private int[] _backwardTable;
+
+    /** Row length of the precomputed tables. */
+    private int _tableStride;
 }
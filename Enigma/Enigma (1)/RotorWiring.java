@@ -0,0 +1,151 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The fixed part of a rotor: its name, its permutation and its notches,
+ *  together with conversion tables compiled from them.  Wirings are
+ *  immutable (the tables are compiled once, on first request), so one may
+ *  be shared by the rotors of any number of machines in any number of
+ *  threads.  The setting of a rotor is kept in the Rotor itself.
+ *  @author Bon Hee Koo
+ */
+final class RotorWiring {
+
+    /** The wiring of a rotor named NAME whose permutation at setting 0 is
+     *  PERM and whose notches are at the characters in NOTCHES.
+     *  Characters of NOTCHES that are not in the alphabet of PERM are
+     *  ignored. */
+    RotorWiring(String name, Permutation perm, String notches) {
+        _name = name;
+        _permutation = perm;
+        _notches = notches == null ? "" : notches;
+        _notchAt = new boolean[perm.size()];
+        for (int i = 0; i < _notches.length(); i += 1) {
+            int k = perm.alphabet().indexOf(_notches.charAt(i));
+            if (k >= 0) {
+                _notchAt[k] = true;
+            }
+        }
+    }
+
+    /** The wiring of a rotor named NAME with permutation PERM and notches
+     *  NOTCHES, as for RotorWiring(NAME, PERM, NOTCHES), whose conversion
+     *  tables have already been compiled into FORWARD and BACKWARD (laid
+     *  out as for forwardTable()). */
+    RotorWiring(String name, Permutation perm, String notches,
+                int[] forward, int[] backward) {
+        this(name, perm, notches);
+        int n = size();
+        if (forward.length != n * n || backward.length != n * n) {
+            throw error("conversion tables of wrong size");
+        }
+        _forwardTable = forward;
+        _backwardTable = backward;
+        _compiled = true;
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return my permutation. */
+    Permutation permutation() {
+        return _permutation;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _permutation.size();
+    }
+
+    /** Return the characters at which I have notches. */
+    String notches() {
+        return _notches;
+    }
+
+    /** Returns true iff setting POSN is one of my notches. */
+    boolean notchAt(int posn) {
+        return _notchAt[posn];
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  at setting POSN, computed from my permutation. */
+    int convertForward(int p, int posn) {
+        return _permutation.wrap(
+                _permutation.permute(_permutation.wrap(p + posn)) - posn);
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  by the inverse of my permutation at setting POSN, computed from
+     *  my permutation. */
+    int convertBackward(int e, int posn) {
+        return _permutation.wrap(
+                _permutation.invert(_permutation.wrap(e + posn)) - posn);
+    }
+
+    /** Return my forward conversions at every setting, the conversion of
+     *  p at setting s being at s * size() + p, or null if size() exceeds
+     *  TABLE_LIMIT.  The tables are compiled on the first call. */
+    int[] forwardTable() {
+        compileTables();
+        return _forwardTable;
+    }
+
+    /** Return my backward conversions, laid out as for forwardTable(),
+     *  or null if size() exceeds TABLE_LIMIT. */
+    int[] backwardTable() {
+        compileTables();
+        return _backwardTable;
+    }
+
+    /** Compile _forwardTable and _backwardTable, if that has not been
+     *  done and they are small enough. */
+    private synchronized void compileTables() {
+        int n = size();
+        if (_compiled || n > TABLE_LIMIT) {
+            return;
+        }
+        int[] forward = new int[n * n];
+        int[] backward = new int[n * n];
+        for (int posn = 0; posn < n; posn += 1) {
+            for (int p = 0; p < n; p += 1) {
+                forward[posn * n + p] = convertForward(p, posn);
+                backward[posn * n + p] = convertBackward(p, posn);
+            }
+        }
+        _forwardTable = forward;
+        _backwardTable = backward;
+        _compiled = true;
+    }
+
+    @Override
+    public String toString() {
+        return "Wiring " + _name;
+    }
+
+    /** Largest alphabet for which conversion tables are compiled.  The
+     *  tables hold size() squared entries in each direction. */
+    static final int TABLE_LIMIT = 256;
+
+    /** Name. */
+    private final String _name;
+
+    /** Permutation at setting 0. */
+    private final Permutation _permutation;
+
+    /** Characters at which I have notches. */
+    private final String _notches;
+
+    /** True at each setting that is one of my notches. */
+    private final boolean[] _notchAt;
+
+    /** Forward conversion tables, or null. */
+    private int[] _forwardTable;
+
+    /** Backward conversion tables, or null. */
+    private int[] _backwardTable;
+
+    /** True once the tables have been compiled. */
+    private boolean _compiled;
+}
@@ -0,0 +1,305 @@
+package enigma;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/** Converts the sections of an input (a settings line and the message
+ *  lines that follow it) on several cores.  Each settings line resets the
+ *  machine, so sections are independent: each is read into memory and
+ *  handed to a pool worker, which converts it with a machine of its own
+ *  from a MachineCache of its own.
+ *  Results are written in input order, and only a bounded number of
+ *  characters are held in memory at once.  A section too long to buffer
+ *  is instead finished on the calling thread, after everything before it
+ *  has been written, so that it may be streamed.  A scheduler is used by
+ *  one thread at a time.
+ *  @author Bon Hee Koo
+ */
+final class SectionScheduler {
+
+    /** A scheduler that converts sections on POOL, writing them to OUT.
+     *  Each thread that converts sections, including the calling thread
+     *  for sections that outgrow SECTION_LIMIT, gets a cache of its own
+     *  from CACHES, from which it takes the machine for each section. */
+    SectionScheduler(ForkJoinPool pool, Supplier<MachineCache> caches,
+                     GroupWriter out) {
+        _pool = pool;
+        _caches = ThreadLocal.withInitial(caches);
+        _out = out;
+        _pending = new ArrayDeque<>();
+        _pendingLimit = PENDING_PER_WORKER * pool.getParallelism();
+    }
+
+    /** Start a new section whose settings line is SETTINGS, ending the
+     *  current one. */
+    void begin(String settings) {
+        end();
+        _current = new Section(settings);
+    }
+
+    /** Read the next line of INPUT into the current section.  Returns
+     *  true iff the line was consumed.  If the section has grown too long
+     *  to buffer, instead writes everything before it, sets up a machine
+     *  for it on the calling thread and converts what was buffered,
+     *  leaving the rest of the line (and of the section) to be converted
+     *  by the caller with machine(); from then on returns false until the
+     *  next begin(). */
+    boolean buffer(InputTokenizer input) {
+        if (_current == null) {
+            return false;
+        }
+        Section s = _current;
+        while (true) {
+            if (s._length == s._text.length) {
+                if (s._length >= SECTION_LIMIT) {
+                    spill();
+                    return false;
+                }
+                s._text = Arrays.copyOf(s._text, 2 * s._length);
+            }
+            int n = input.read(s._text, s._length,
+                               s._text.length - s._length);
+            if (n < 0) {
+                break;
+            }
+            s._length += n;
+        }
+        s.endLine();
+        return true;
+    }
+
+    /** Return the machine for the current section, if it is being
+     *  streamed by the caller. */
+    Machine machine() {
+        return _streamed;
+    }
+
+    /** Add an empty line to the current section. */
+    void blankLine() {
+        if (_current == null) {
+            _out.endLine();
+        } else {
+            _current.endLine();
+        }
+    }
+
+    /** End the current section, then wait for every section and write
+     *  it.  Throws the first error encountered in any section. */
+    void finish() {
+        end();
+        while (!_pending.isEmpty()) {
+            writeFirst();
+        }
+    }
+
+    /** Hand the current section, if any, to the pool and write whatever
+     *  is finished, waiting if too much is outstanding. */
+    private void end() {
+        endStreamed();
+        if (_current == null) {
+            return;
+        }
+        Section s = _current;
+        _current = null;
+        _pending.add(s);
+        _buffered += s._length;
+        _pool.execute(s);
+        while (!_pending.isEmpty()
+               && (_pending.peek().isDone()
+                   || _pending.size() > _pendingLimit
+                   || _buffered > BUFFER_LIMIT)) {
+            writeFirst();
+        }
+    }
+
+    /** Record the latency of the section being streamed, if any, which
+     *  has now been written. */
+    private void endStreamed() {
+        if (_streamed != null) {
+            Metrics.SECTION_NANOS.record(System.nanoTime() - _streamedBegan);
+            _streamed = null;
+        }
+    }
+
+    /** Write every pending section, then convert the current one on the
+     *  calling thread as far as it has been read. */
+    private void spill() {
+        Section s = _current;
+        _current = null;
+        while (!_pending.isEmpty()) {
+            writeFirst();
+        }
+        _streamed = s.run();
+        _streamedBegan = s._began;
+        write(s);
+        int start = s.start(s._lines);
+        int n = _streamed.convert(s._text, start, s._length - start,
+                                  s._text, start);
+        _out.write(s._text, start, n);
+    }
+
+    /** Wait for the first pending section and write it. */
+    private void writeFirst() {
+        Section s = _pending.peek();
+        if (!s.isDone()) {
+            _out.flush();
+            s.join();
+        }
+        _pending.remove();
+        _buffered -= s._length;
+        write(s);
+        Metrics.SECTION_NANOS.record(System.nanoTime() - s._began);
+    }
+
+    /** Write the converted lines of S.  If S had an error, writes the
+     *  part of its output that preceded the error, abandons all later
+     *  sections and throws it. */
+    private void write(Section s) {
+        for (int i = 0; i < s._done; i += 1) {
+            _out.write(s._text, s.start(i), s._converted[i]);
+            _out.endLine();
+        }
+        if (s._error != null) {
+            _out.write(s._text, s.start(s._done), s._partial);
+            _pending.clear();
+            _current = null;
+            throw s._error;
+        }
+    }
+
+    /** A settings line and the lines that follow it.  Lines are stored
+     *  one after another in a single array, and converted in place. */
+    private final class Section extends RecursiveAction {
+
+        /** A section with no lines, whose settings line is SETTINGS. */
+        Section(String settings) {
+            _settings = settings;
+            _began = System.nanoTime();
+            _text = new char[INITIAL_TEXT];
+            _ends = new int[INITIAL_LINES];
+            _converted = new int[INITIAL_LINES];
+        }
+
+        @Override
+        protected void compute() {
+            run();
+        }
+
+        /** Convert my complete lines with a machine from the current
+         *  thread's cache, recording any error rather than throwing it.
+         *  Returns the machine, or null if there was an error. */
+        Machine run() {
+            try {
+                Machine M = _caches.get().get(_settings);
+                for (; _done < _lines; _done += 1) {
+                    int start = start(_done);
+                    for (int p = start; p < _ends[_done];
+                         p += Main.CHUNK_SIZE) {
+                        int len = Math.min(Main.CHUNK_SIZE, _ends[_done] - p);
+                        ConversionEvent event = new ConversionEvent();
+                        event.begin();
+                        int n = M.convert(_text, p, len, _text,
+                                          start + _partial);
+                        _partial += n;
+                        Metrics.CHARS.add(n);
+                        if (event.shouldCommit()) {
+                            event.charsIn = len;
+                            event.charsOut = n;
+                            event.commit();
+                        }
+                    }
+                    _converted[_done] = _partial;
+                    _partial = 0;
+                }
+                return M;
+            } catch (EnigmaException excp) {
+                _error = excp;
+                return null;
+            }
+        }
+
+        /** End the line being read. */
+        void endLine() {
+            if (_lines == _ends.length) {
+                _ends = Arrays.copyOf(_ends, 2 * _lines);
+                _converted = Arrays.copyOf(_converted, 2 * _lines);
+            }
+            _ends[_lines] = _length;
+            _lines += 1;
+        }
+
+        /** Return the offset in _text of line K. */
+        int start(int k) {
+            return k == 0 ? 0 : _ends[k - 1];
+        }
+
+        /** My settings line. */
+        private final String _settings;
+        /** Value of System.nanoTime() when my settings line was read. */
+        private final long _began;
+        /** My lines, one after another. */
+        private char[] _text;
+        /** Number of characters in _text. */
+        private int _length;
+        /** _ends[k] is the offset in _text just past line k. */
+        private int[] _ends;
+        /** Number of complete lines. */
+        private int _lines;
+        /** _converted[k] is the length of the conversion of line k, which
+         *  is stored from the start of the line. */
+        private int[] _converted;
+        /** Number of lines converted. */
+        private int _done;
+        /** Number of characters of line _done converted before _error. */
+        private int _partial;
+        /** Error that stopped conversion, or null. */
+        private EnigmaException _error;
+    }
+
+    /** Number of characters of a section beyond which it is streamed
+     *  rather than buffered. */
+    static final int SECTION_LIMIT = 1 << 20;
+
+    /** Largest number of characters held in pending sections. */
+    static final long BUFFER_LIMIT = 1 << 24;
+
+    /** Largest number of pending sections per pool worker. */
+    static final int PENDING_PER_WORKER = 4;
+
+    /** Initial capacity of a section, in characters. */
+    private static final int INITIAL_TEXT = 1 << 8;
+
+    /** Initial capacity of a section, in lines. */
+    private static final int INITIAL_LINES = 4;
+
+    /** Pool that converts sections. */
+    private final ForkJoinPool _pool;
+
+    /** Each thread's machines. */
+    private final ThreadLocal<MachineCache> _caches;
+
+    /** Destination of converted sections. */
+    private final GroupWriter _out;
+
+    /** Sections handed to the pool and not yet written, in input order. */
+    private final ArrayDeque<Section> _pending;
+
+    /** Largest number of pending sections. */
+    private final int _pendingLimit;
+
+    /** Number of characters in pending sections. */
+    private long _buffered;
+
+    /** Section being read, or null if it is being streamed. */
+    private Section _current;
+
+    /** Machine for the section being streamed, if any. */
+    private Machine _streamed;
+
+    /** Value of System.nanoTime() when the settings line of the section
+     *  being streamed was read. */
+    private long _streamedBegan;
+}
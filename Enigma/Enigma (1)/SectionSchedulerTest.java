@@ -0,0 +1,188 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.*;
+
+/** The suite of all JUnit tests for the SectionScheduler class.
+ *  @author Bon Hee Koo
+ */
+public class SectionSchedulerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a cache of naval machines set up by settings lines of the
+     *  form "* ROTORS... SETTING PLUGBOARD...". */
+    private static MachineCache cache() {
+        return new MachineCache(4, settings -> {
+            String[] parts = settings.split(" ");
+            return navalMachine(String.join(" ",
+                                            Arrays.copyOfRange(parts, 1, 6)),
+                                parts[6],
+                                String.join(" ", Arrays.copyOfRange(
+                                    parts, 7, parts.length)));
+        });
+    }
+
+    /** Return a writer to BYTES, in groups of five. */
+    private static GroupWriter writer(ByteArrayOutputStream bytes) {
+        return new GroupWriter(Channels.newChannel(bytes),
+                               StandardCharsets.UTF_8, 5);
+    }
+
+    /** Return a tokenizer reading INPUT. */
+    private static InputTokenizer tokenizer(String input) {
+        return new InputTokenizer(
+            Channels.newChannel(new ByteArrayInputStream(
+                input.getBytes(StandardCharsets.UTF_8))),
+            StandardCharsets.UTF_8);
+    }
+
+    /** Convert INPUT, in which each line starting with '*' begins a
+     *  section, with a scheduler on POOL, as Main does, and return the
+     *  output, or the output so far followed by "!" and the message if
+     *  there was an error. */
+    private static String scheduled(String input, ForkJoinPool pool) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = writer(bytes);
+        SectionScheduler sections =
+            new SectionScheduler(pool, SectionSchedulerTest::cache, out);
+        InputTokenizer in = tokenizer(input);
+        String error = "";
+        try {
+            char[] chunk = new char[1000];
+            while (in.hasNextLine()) {
+                if (in.nextLineStartsWith('*')) {
+                    sections.begin(in.nextLine());
+                } else if (!sections.buffer(in)) {
+                    Machine M = sections.machine();
+                    int n;
+                    while ((n = in.read(chunk, 0, chunk.length)) >= 0) {
+                        n = M.convert(chunk, 0, n, chunk, 0);
+                        out.write(chunk, 0, n);
+                    }
+                    out.endLine();
+                }
+            }
+            sections.finish();
+        } catch (EnigmaException excp) {
+            error = "!" + excp.getMessage();
+        }
+        out.close();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8)
+            + error;
+    }
+
+    /** Return the conversion of INPUT, as for scheduled(), on the calling
+     *  thread alone. */
+    private static String serial(String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter out = writer(bytes);
+        MachineCache machines = cache();
+        Machine M = null;
+        InputTokenizer in = tokenizer(input);
+        while (in.hasNextLine()) {
+            String line = in.nextLine();
+            if (line.startsWith("*")) {
+                M = machines.get(line);
+            } else {
+                char[] chars = line.toCharArray();
+                int n = M.convert(chars, 0, chars.length, chars, 0);
+                out.write(chars, 0, n);
+                out.endLine();
+            }
+        }
+        out.close();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Return a settings line for a random naval setting from RANDOM. */
+    private static String settings(Random random) {
+        return "* B Beta III IV I " + randomText(random, 4) + " (AQ) (EX)";
+    }
+
+    /** Return SECTIONS random sections from RANDOM, of up to LINES lines
+     *  of up to LENGTH characters each. */
+    private static String sections(Random random, int sections, int lines,
+                                   int length) {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < sections; i += 1) {
+            input.append(settings(random)).append('\n');
+            int k = random.nextInt(lines + 1);
+            for (int j = 0; j < k; j += 1) {
+                input.append(randomText(random, random.nextInt(length)))
+                    .append('\n');
+            }
+        }
+        return input.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testOutputInInputOrder() {
+        String input = sections(new Random(1), 300, 6, 120);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(serial(input), scheduled(input, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testWorkerErrorPropagates() {
+        Random random = new Random(2);
+        String before = sections(random, 40, 4, 60);
+        String header = settings(random) + "\nHELLO\n";
+        String bad = header + "WORLD?\n";
+        String after = sections(random, 40, 4, 60);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            String output = scheduled(before + bad + after, pool);
+            int mark = output.lastIndexOf('!');
+            assertTrue("no error reported", mark >= 0);
+            String written = output.substring(0, mark);
+            assertTrue(written.startsWith(serial(before + header)));
+            assertTrue(written.length()
+                       < serial(before + bad.replace("?", "")).length());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSpillsLongSection() {
+        Random random = new Random(4);
+        StringBuilder input = new StringBuilder();
+        input.append(sections(random, 20, 3, 50));
+        input.append(settings(random)).append('\n');
+        input.append(randomText(random, 100)).append('\n');
+        input.append(randomText(random, SectionScheduler.SECTION_LIMIT + 7))
+            .append('\n');
+        input.append(randomText(random, 1000)).append('\n');
+        input.append(sections(random, 20, 3, 50));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertEquals(serial(input.toString()),
+                         scheduled(input.toString(), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
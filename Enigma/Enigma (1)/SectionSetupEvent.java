@@ -0,0 +1,26 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A flight-recorder event for setting up the machine for one section of
+ *  input (or one server request) from its settings line.
+ *  @author Bon Hee Koo
+ */
+@Name("enigma.SectionSetup")
+@Label("Section Setup")
+@Category("Enigma")
+@Description("Setting up a machine from a settings line")
+final class SectionSetupEvent extends Event {
+
+    /** The settings line. */
+    @Label("Settings")
+    String settings;
+
+    /** True iff the machine was found in a MachineCache. */
+    @Label("Cached")
+    boolean cached;
+}
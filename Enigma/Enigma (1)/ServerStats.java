@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.Histogram.micros;
+
+/** Counts of the requests served by an EnigmaServer, with a Histogram of
+ *  their latencies in nanoseconds.  May be updated by any number of
+ *  threads at once.
+ *  @author Bon Hee Koo
+ */
+final class ServerStats {
+
+    /** Record a request of CHARS message characters, served in NANOS
+     *  nanoseconds, which failed iff FAILED. */
+    void record(long chars, long nanos, boolean failed) {
+        _requests.increment();
+        _chars.add(chars);
+        if (failed) {
+            _errors.increment();
+        }
+        _latencies.record(nanos);
+    }
+
+    /** Record a connection that was accepted, or refused iff REFUSED. */
+    void connection(boolean refused) {
+        if (refused) {
+            _refused.increment();
+        } else {
+            _connections.increment();
+        }
+    }
+
+    /** Return the number of requests served. */
+    long requests() {
+        return _requests.sum();
+    }
+
+    /** Return the number of requests that failed. */
+    long errors() {
+        return _errors.sum();
+    }
+
+    /** Return the number of message characters converted. */
+    long chars() {
+        return _chars.sum();
+    }
+
+    /** Return the number of connections accepted. */
+    long connections() {
+        return _connections.sum();
+    }
+
+    /** Return the number of connections refused. */
+    long refused() {
+        return _refused.sum();
+    }
+
+    /** Return an upper bound on the latency, in nanoseconds, of the
+     *  fraction Q of requests served most quickly, or 0 if there have
+     *  been none.  See Histogram.quantile. */
+    long latency(double q) {
+        return _latencies.quantile(q);
+    }
+
+    /** Return a one-line report of the requests served, with rates over
+     *  the time since the previous report. */
+    synchronized String report() {
+        long now = System.nanoTime();
+        long requests = requests();
+        long chars = chars();
+        double seconds = Math.max(now - _lastTime, 1) / 1e9;
+        String result = String.format(
+            "%d requests (%.0f/s), %d chars (%.0f/s), %d errors, "
+            + "%d connections (%d refused); latency p50 <= %s, "
+            + "p99 <= %s, max <= %s",
+            requests, (requests - _lastRequests) / seconds, chars,
+            (chars - _lastChars) / seconds, errors(), connections(),
+            refused(), micros(latency(0.5)), micros(latency(0.99)),
+            micros(latency(1)));
+        _lastTime = now;
+        _lastRequests = requests;
+        _lastChars = chars;
+        return result;
+    }
+
+    /** Number of requests served. */
+    private final LongAdder _requests = new LongAdder();
+
+    /** Number of requests that failed. */
+    private final LongAdder _errors = new LongAdder();
+
+    /** Number of message characters converted. */
+    private final LongAdder _chars = new LongAdder();
+
+    /** Number of connections accepted. */
+    private final LongAdder _connections = new LongAdder();
+
+    /** Number of connections refused. */
+    private final LongAdder _refused = new LongAdder();
+
+    /** Latencies of the requests served, in nanoseconds. */
+    private final Histogram _latencies = new Histogram();
+
+    /** Time of the previous report. */
+    private long _lastTime = System.nanoTime();
+
+    /** Number of requests at the previous report. */
+    private long _lastRequests;
+
+    /** Number of characters at the previous report. */
+    private long _lastChars;
+}
@@ -0,0 +1,262 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A store of a very large number of conversion sessions, each of which
+ *  is a machine part way through a message.  Rather than a Machine (with
+ *  its rotors, plugboard and arrays) per session, a session is one long,
+ *  packing the settings of all its rotors, and the int id of its
+ *  configuration: a machine with rotors and plugboard set up, shared by
+ *  every session that uses it.  Both are kept in pages of primitive
+ *  arrays, so a session costs 12 bytes of heap, and ten million cost
+ *  about 120MB.  To convert text for a session, its configuration's
+ *  machine is set to the session's settings, converts the text, and its
+ *  new settings are packed back.  The ids of closed sessions are reused.
+ *  A store is used by one thread at a time.
+ *  @author Bon Hee Koo
+ */
+final class SessionStore {
+
+    /** An empty store for configurations over ALPHABET with NUMROTORS
+     *  rotors, whose settings must fit in a long. */
+    SessionStore(Alphabet alphabet, int numRotors) {
+        _bits = 32 - Integer.numberOfLeadingZeros(alphabet.size() - 1);
+        if ((long) _bits * numRotors > Long.SIZE) {
+            throw error("settings of %d rotors of %d positions do not fit "
+                        + "in a long", numRotors, alphabet.size());
+        }
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _mask = (1L << _bits) - 1;
+        _settings = new long[0][];
+        _configs = new int[0][];
+        _free = NONE;
+        _scratch = new int[numRotors];
+    }
+
+    /** Add M, which must have my alphabet and number of rotors, and have
+     *  its rotors and plugboard set up, as a configuration, and return
+     *  its id.  M is copied, so later changes to it do not affect the
+     *  store.  Its current settings are where sessions opened with
+     *  open(int) start. */
+    int addConfiguration(Machine M) {
+        if (M.alphabet().size() != _alphabet.size()
+            || M.numRotors() != _numRotors) {
+            throw error("configuration does not match the session store");
+        }
+        Machine copy = M.copy();
+        copy.setStateBudget(0);
+        _machines.add(copy);
+        _starts.add(pack(copy.settings()));
+        return _machines.size() - 1;
+    }
+
+    /** Return the number of configurations. */
+    int configurations() {
+        return _machines.size();
+    }
+
+    /** Open a session of configuration CONFIG, at the settings its
+     *  machine had when it was added, and return its id. */
+    int open(int config) {
+        machine(config);
+        return open(config, _starts.get(config));
+    }
+
+    /** Open a session of configuration CONFIG with its rotors at
+     *  SETTINGS, slot 0 first, and return its id. */
+    int open(int config, int[] settings) {
+        machine(config);
+        if (settings.length != _numRotors) {
+            throw error("wrong number of settings: %d", settings.length);
+        }
+        for (int s : settings) {
+            if (s < 0 || s >= _alphabet.size()) {
+                throw error("bad setting: %d", s);
+            }
+        }
+        return open(config, pack(settings));
+    }
+
+    /** Open a session of configuration CONFIG with packed settings
+     *  PACKED, and return its id. */
+    private int open(int config, long packed) {
+        int id;
+        if (_free != NONE) {
+            id = _free;
+            _free = (int) _settings[page(id)][slot(id)];
+        } else {
+            if (_limit == (long) _configs.length * PAGE_SIZE) {
+                grow();
+            }
+            id = _limit;
+            _limit += 1;
+        }
+        _settings[page(id)][slot(id)] = packed;
+        _configs[page(id)][slot(id)] = config;
+        _size += 1;
+        return id;
+    }
+
+    /** Close session ID, so that its id may be reused. */
+    void close(int id) {
+        check(id);
+        _configs[page(id)][slot(id)] = NONE;
+        _settings[page(id)][slot(id)] = _free;
+        _free = id;
+        _size -= 1;
+    }
+
+    /** Return the number of open sessions. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the configuration of session ID. */
+    int configuration(int id) {
+        check(id);
+        return _configs[page(id)][slot(id)];
+    }
+
+    /** Return the current settings of session ID, slot 0 first. */
+    int[] settings(int id) {
+        check(id);
+        return unpack(_settings[page(id)][slot(id)], new int[_numRotors]);
+    }
+
+    /** Convert the LEN characters of MSG starting at OFF as session ID's
+     *  machine would, as for Machine.convert(char[], int, int, char[],
+     *  int), writing the result into OUT starting at OUTOFF, and advance
+     *  the session.  Returns the number of characters written. */
+    int convert(int id, char[] msg, int off, int len, char[] out,
+                int outOff) {
+        check(id);
+        int p = page(id);
+        int s = slot(id);
+        Machine M = _machines.get(_configs[p][s]);
+        M.resume(unpack(_settings[p][s], _scratch));
+        int n = M.convert(msg, off, len, out, outOff);
+        _settings[p][s] = pack(M.settings());
+        return n;
+    }
+
+    /** Convert MSG in place as for convert(ID, MSG, 0, MSG.length, MSG,
+     *  0), and return the number of characters converted, which are at
+     *  the start of MSG. */
+    int convert(int id, char[] msg) {
+        return convert(id, msg, 0, msg.length, msg, 0);
+    }
+
+    /** Return an estimate of the bytes of heap taken by my sessions, not
+     *  counting the configurations. */
+    long footprint() {
+        return (long) _configs.length * PAGE_SIZE
+            * (Long.BYTES + Integer.BYTES);
+    }
+
+    /** Return the machine of configuration CONFIG. */
+    private Machine machine(int config) {
+        if (config < 0 || config >= _machines.size()) {
+            throw error("no configuration %d", config);
+        }
+        return _machines.get(config);
+    }
+
+    /** Check that ID is an open session. */
+    private void check(int id) {
+        if (id < 0 || id >= _limit || _configs[page(id)][slot(id)] == NONE) {
+            throw error("no open session %d", id);
+        }
+    }
+
+    /** Add a page of sessions. */
+    private void grow() {
+        int n = _configs.length;
+        if ((long) (n + 1) * PAGE_SIZE > Integer.MAX_VALUE) {
+            throw error("too many sessions");
+        }
+        _settings = Arrays.copyOf(_settings, n + 1);
+        _configs = Arrays.copyOf(_configs, n + 1);
+        _settings[n] = new long[PAGE_SIZE];
+        _configs[n] = new int[PAGE_SIZE];
+    }
+
+    /** Return SETTINGS packed into a long. */
+    private long pack(int[] settings) {
+        long result = 0;
+        for (int i = _numRotors - 1; i >= 0; i -= 1) {
+            result = (result << _bits) | settings[i];
+        }
+        return result;
+    }
+
+    /** Unpack PACKED into DST, which is returned. */
+    private int[] unpack(long packed, int[] dst) {
+        for (int i = 0; i < _numRotors; i += 1) {
+            dst[i] = (int) (packed & _mask);
+            packed >>>= _bits;
+        }
+        return dst;
+    }
+
+    /** Return the page holding session ID. */
+    private static int page(int id) {
+        return id >>> PAGE_BITS;
+    }
+
+    /** Return the index of session ID in its page. */
+    private static int slot(int id) {
+        return id & (PAGE_SIZE - 1);
+    }
+
+    /** Log base 2 of PAGE_SIZE. */
+    private static final int PAGE_BITS = 16;
+
+    /** Number of sessions per page. */
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /** Configuration of a closed session, and the end of the free
+     *  list. */
+    private static final int NONE = -1;
+
+    /** Alphabet of my configurations. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotors of my configurations. */
+    private final int _numRotors;
+
+    /** Bits per packed setting. */
+    private final int _bits;
+
+    /** Mask of the low _bits bits. */
+    private final long _mask;
+
+    /** Machine of each configuration. */
+    private final List<Machine> _machines = new ArrayList<>();
+
+    /** Packed starting settings of each configuration. */
+    private final List<Long> _starts = new ArrayList<>();
+
+    /** Pages of packed settings of each session, or, for a closed
+     *  session, the id of the next closed session. */
+    private long[][] _settings;
+
+    /** Pages of configurations of each session, NONE if closed. */
+    private int[][] _configs;
+
+    /** One more than the largest session id ever used. */
+    private int _limit;
+
+    /** The most recently closed session, or NONE. */
+    private int _free;
+
+    /** Number of open sessions. */
+    private int _size;
+
+    /** Unpacked settings being resumed. */
+    private final int[] _scratch;
+}
@@ -0,0 +1,118 @@
+package enigma;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SessionStore class.
+ *  @author Bon Hee Koo
+ */
+public class SessionStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a store for naval machines with configurations for each
+     *  of MACHINES added in order. */
+    private static SessionStore store(Machine... machines) {
+        SessionStore result = new SessionStore(UPPER, 5);
+        for (Machine M : machines) {
+            result.addConfiguration(M);
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSampleMessage() {
+        Machine M = navalMachine("B Beta III IV I", "AXLE",
+                                 "(HQ) (EX) (IP) (TR) (BY)");
+        SessionStore store = store(M);
+        int id = store.open(0);
+        char[] msg = "FROM his shoulder Hiawatha".toCharArray();
+        int n = store.convert(id, msg);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(msg, 0, n));
+        M.convert("FROM his shoulder Hiawatha");
+        assertArrayEquals(M.settings(), store.settings(id));
+    }
+
+    @Test
+    public void testInterleavedSessions() {
+        Random random = new Random(1);
+        Machine[] configs = {
+            navalMachine("B Beta III IV I", "AXLE", "(HQ) (EX)"),
+            navalMachine("C Gamma VI VII VIII", "ZZZZ", "(AB) (CD)"),
+        };
+        SessionStore store = store(configs);
+        int sessions = 50;
+        Machine[] machines = new Machine[sessions];
+        int[] ids = new int[sessions];
+        for (int i = 0; i < sessions; i += 1) {
+            int config = random.nextInt(configs.length);
+            machines[i] = configs[config].copy();
+            machines[i].setRotors(randomText(random, 4));
+            ids[i] = store.open(config, machines[i].settings());
+        }
+        for (int round = 0; round < 2000; round += 1) {
+            int i = random.nextInt(sessions);
+            String msg = randomText(random, 1 + random.nextInt(40));
+            char[] buf = msg.toCharArray();
+            int n = store.convert(ids[i], buf);
+            assertEquals(machines[i].convert(msg), new String(buf, 0, n));
+        }
+        for (int i = 0; i < sessions; i += 1) {
+            assertArrayEquals(machines[i].settings(), store.settings(ids[i]));
+        }
+    }
+
+    @Test
+    public void testCloseReusesIds() {
+        SessionStore store =
+            store(navalMachine("B Beta III IV I", "AAAA", ""));
+        int a = store.open(0);
+        int b = store.open(0);
+        store.convert(a, "HELLO".toCharArray());
+        store.close(a);
+        assertEquals(1, store.size());
+        int c = store.open(0);
+        assertEquals(a, c);
+        assertArrayEquals(store.settings(b), store.settings(c));
+        assertEquals(2, store.size());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testClosedSession() {
+        SessionStore store =
+            store(navalMachine("B Beta III IV I", "AAAA", ""));
+        int a = store.open(0);
+        store.close(a);
+        store.convert(a, "HELLO".toCharArray());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testWrongConfiguration() {
+        store().open(0);
+    }
+
+    @Test
+    public void testFootprint() {
+        SessionStore store =
+            store(navalMachine("B Beta III IV I", "AAAA", ""));
+        int n = 4 * SessionStore.PAGE_SIZE;
+        for (int i = 0; i < n; i += 1) {
+            store.open(0);
+        }
+        assertEquals(n, store.size());
+        assertEquals(12L * n, store.footprint());
+    }
+}
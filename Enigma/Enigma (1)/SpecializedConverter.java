@@ -0,0 +1,15 @@
+package enigma;
+
+/** A converter for one arrangement of rotors (their number, kinds,
+ *  wirings and notches), generated by ConverterCompiler as straight-line
+ *  code.  Converters hold no state of their own, so one may be shared by
+ *  any number of machines and threads.
+ *  @author Bon Hee Koo
+ */
+interface SpecializedConverter {
+
+    /** Advance rotors at the settings in SETTINGS (slot 0 first) as for a
+     *  keypress, updating SETTINGS, and return the conversion of C with
+     *  plugboard PLUGBOARD (the image of each index, in order). */
+    int convert(int[] settings, int[] plugboard, int c);
+}
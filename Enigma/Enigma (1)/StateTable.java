@@ -0,0 +1,125 @@
+package enigma;
+
+/** The substitution performed by a whole machine (plugboard, rotors and
+ *  reflector) at every rotor setting it passes through from a starting
+ *  setting, stored in a single flat array.  The settings are numbered in
+ *  the order of a SteppingSchedule's recorded sequence, so a machine
+ *  using the table needs only the number of its current settings: a
+ *  keypress moves it to successor(state), then converts c to
+ *  convert(state, c).  State tables are immutable and may be shared by
+ *  threads.
+ *  @author Bon Hee Koo
+ */
+final class StateTable {
+
+    /** Return the table for rotors SLOTS (the reflector first) with
+     *  plugboard PLUGBOARD, whose settings from their starting settings
+     *  are SCHEDULE, or null if SCHEDULE was not recorded, there are
+     *  fewer than two slots, or the table would take more than BUDGET
+     *  bytes. */
+    static StateTable build(Rotor[] slots, Permutation plugboard,
+                            SteppingSchedule schedule, long budget) {
+        int n = plugboard.size();
+        int length = schedule.length();
+        if (length < 0 || slots.length < 2 || n > MAX_ALPHABET
+            || (long) length * n > Math.min(budget, Integer.MAX_VALUE)) {
+            return null;
+        }
+        return new StateTable(slots, plugboard, schedule);
+    }
+
+    /** The table for SLOTS, PLUGBOARD and SCHEDULE, as for build. */
+    private StateTable(Rotor[] slots, Permutation plugboard,
+                       SteppingSchedule schedule) {
+        _n = plugboard.size();
+        _length = schedule.length();
+        _tail = (int) schedule.tail();
+        _table = new byte[_length * _n];
+        int r = slots.length;
+        int[] plug = plugboard.toArray();
+        int[] settings = new int[r];
+        int[] inner = new int[_n];
+        int[] innerSettings = null;
+        for (int state = 0; state < _length; state += 1) {
+            schedule.settingsAtIndex(state, settings);
+            if (innerSettings == null
+                || !sameInner(settings, innerSettings)) {
+                innerSettings = settings.clone();
+                for (int x = 0; x < _n; x += 1) {
+                    int y = x;
+                    for (int k = r - 2; k > 0; k -= 1) {
+                        y = slots[k].convertForward(y, settings[k]);
+                    }
+                    y = slots[0].convertForward(y, settings[0]);
+                    for (int l = 1; l < r - 1; l += 1) {
+                        y = slots[l].convertBackward(y, settings[l]);
+                    }
+                    inner[x] = y;
+                }
+            }
+            Rotor fast = slots[r - 1];
+            int posn = settings[r - 1];
+            int row = state * _n;
+            for (int c = 0; c < _n; c += 1) {
+                int y = fast.convertForward(plug[c], posn);
+                y = fast.convertBackward(inner[y], posn);
+                _table[row + c] = (byte) plug[y];
+            }
+        }
+    }
+
+    /** Returns true iff SETTINGS and OTHER agree on all but the last
+     *  slot. */
+    private static boolean sameInner(int[] settings, int[] other) {
+        for (int i = 0; i < settings.length - 1; i += 1) {
+            if (settings[i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of the settings that follow settings STATE. */
+    int successor(int state) {
+        return state + 1 == _length ? _tail : state + 1;
+    }
+
+    /** Return the conversion of C at settings STATE. */
+    int convert(int state, int c) {
+        return _table[state * _n + c] & BYTE_MASK;
+    }
+
+    /** Return the number of settings in the table. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the size of the table in bytes. */
+    long bytes() {
+        return _table.length;
+    }
+
+    /** Largest alphabet for which tables are built; entries are stored
+     *  as unsigned bytes. */
+    static final int MAX_ALPHABET = 1 << 8;
+
+    /** Default largest table size in bytes, which may be set with the
+     *  system property enigma.stateTableBudget. */
+    static final long DEFAULT_BUDGET =
+        Long.getLong("enigma.stateTableBudget", 1 << 22);
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Alphabet size. */
+    private final int _n;
+
+    /** Number of settings. */
+    private final int _length;
+
+    /** Number of the first settings of the cycle. */
+    private final int _tail;
+
+    /** Conversion of c at settings s, stored at s * _n + c. */
+    private final byte[] _table;
+}
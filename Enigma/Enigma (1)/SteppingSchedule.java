@@ -0,0 +1,248 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The sequence of rotor settings a machine passes through from a given
+ *  starting setting.  Stepping is a deterministic function of the
+ *  settings of the rotors that can move, so the sequence is eventually
+ *  periodic.  When the number of possible settings is small enough, the
+ *  whole sequence (a tail of length tail() followed by a cycle of length
+ *  period()) is recorded once, and the settings after any number of
+ *  keypresses are then found in constant time.  Otherwise they are found
+ *  by stepping.  Schedules are immutable and may be shared by threads.
+ *  @author Bon Hee Koo
+ */
+final class SteppingSchedule {
+
+    /** The schedule of SLOTS (as in a Machine, the reflector first)
+     *  starting from their current settings. */
+    SteppingSchedule(Rotor[] slots) {
+        int r = slots.length;
+        _size = slots[0].size();
+        _start = new int[r];
+        _notch = new boolean[r][];
+        int moving = 0;
+        for (int i = 0; i < r; i += 1) {
+            _start[i] = slots[i].setting();
+            if (slots[i].rotates()) {
+                moving += 1;
+            }
+            _notch[i] = new boolean[_size];
+            for (int p = 0; p < _size; p += 1) {
+                _notch[i][p] = slots[i].notchAt(p);
+            }
+        }
+        _moving = new int[moving];
+        _rotates = new boolean[r];
+        for (int i = 0, k = 0; i < r; i += 1) {
+            _rotates[i] = slots[i].rotates();
+            if (_rotates[i]) {
+                _moving[k] = i;
+                k += 1;
+            }
+        }
+        _gaps = new int[_size];
+        for (int pass = 0, d = -1; pass < 2; pass += 1) {
+            for (int p = _size - 1; p >= 0; p -= 1) {
+                d = _notch[r - 1][p] ? 0 : d < 0 ? d : d + 1;
+                _gaps[p] = d < 0 ? _size : d;
+            }
+        }
+        long space = 1;
+        for (int k = 0; k < moving && space <= TRAJECTORY_LIMIT; k += 1) {
+            space *= _size;
+        }
+        if (_rotates[r - 1] && space <= TRAJECTORY_LIMIT) {
+            recordTrajectory((int) space);
+        } else {
+            _states = null;
+            _tail = _period = -1;
+        }
+    }
+
+    /** Return the settings of every slot after K keypresses, in DST,
+     *  which is returned. */
+    int[] settingsAt(long k, int[] dst) {
+        System.arraycopy(_start, 0, dst, 0, _start.length);
+        if (k <= 0) {
+            return dst;
+        }
+        if (_states != null) {
+            unpack(_states[indexAt(k)], dst);
+        } else {
+            advance(dst, k, new boolean[dst.length]);
+        }
+        return dst;
+    }
+
+    /** Return the settings of every slot at index K of the recorded
+     *  sequence, where 0 <= K < length(), in DST, which is returned. */
+    int[] settingsAtIndex(int k, int[] dst) {
+        System.arraycopy(_start, 0, dst, 0, _start.length);
+        unpack(_states[k], dst);
+        return dst;
+    }
+
+    /** Return the index in the recorded sequence of the settings after K
+     *  keypresses.  The sequence must have been recorded. */
+    int indexAt(long k) {
+        return (int) (k < _tail ? k : _tail + (k - _tail) % _period);
+    }
+
+    /** Return the number of distinct settings in the recorded sequence,
+     *  tail() + period(), or -1 if it was not recorded. */
+    int length() {
+        return _states == null ? -1 : _states.length;
+    }
+
+    /** Return the number of keypresses before the settings enter their
+     *  cycle, or -1 if the sequence was not recorded. */
+    long tail() {
+        return _tail;
+    }
+
+    /** Return the length of the cycle of settings, or -1 if the sequence
+     *  was not recorded. */
+    long period() {
+        return _period;
+    }
+
+    /** Return the size of the alphabet of the rotors. */
+    int size() {
+        return _size;
+    }
+
+    /** Advance SETTINGS by one keypress, exactly as Machine.convert does,
+     *  using SCRATCH (all false, and left so) to mark the rotors that
+     *  move. */
+    void step(int[] settings, boolean[] scratch) {
+        int last = settings.length - 1;
+        if (!_rotates[last]) {
+            throw error("rightmost rotor cannot advance");
+        }
+        for (int i = last; i > 1; i -= 1) {
+            if (_notch[i][settings[i]] && _rotates[i - 1]) {
+                scratch[i] = true;
+                scratch[i - 1] = true;
+            }
+        }
+        for (int j = 0; j < last; j += 1) {
+            if (scratch[j]) {
+                scratch[j] = false;
+                settings[j] = settings[j] + 1 == _size ? 0 : settings[j] + 1;
+            }
+        }
+        scratch[last] = false;
+        settings[last] = settings[last] + 1 == _size ? 0 : settings[last] + 1;
+    }
+
+    /** Advance SETTINGS by K >= 0 keypresses, as K calls of
+     *  step(SETTINGS, SCRATCH) would, but passing over each run of
+     *  keypresses that move only the rightmost rotor at once, so that
+     *  the time taken is proportional to the number of notches passed. */
+    void advance(int[] settings, long k, boolean[] scratch) {
+        int last = settings.length - 1;
+        while (k > 0) {
+            long run = _rotates[last] ? k : 0;
+            for (int i = last - 1; i > 1 && run > 0; i -= 1) {
+                if (_notch[i][settings[i]] && _rotates[i - 1]) {
+                    run = 0;
+                }
+            }
+            if (run > 0 && last > 1 && _rotates[last - 1]) {
+                run = Math.min(run, _gaps[settings[last]]);
+            }
+            if (run == 0) {
+                step(settings, scratch);
+                k -= 1;
+            } else {
+                settings[last] = (int) ((settings[last] + run) % _size);
+                k -= run;
+            }
+        }
+    }
+
+    /** Step from the starting settings until they repeat, recording each
+     *  state, where SPACE is the number of possible states. */
+    private void recordTrajectory(int space) {
+        int[] firstSeen = new int[space];
+        Arrays.fill(firstSeen, -1);
+        int[] states = new int[INITIAL_STATES];
+        int[] settings = _start.clone();
+        boolean[] scratch = new boolean[settings.length];
+        int t = 0;
+        while (true) {
+            int code = pack(settings);
+            if (firstSeen[code] >= 0) {
+                _tail = firstSeen[code];
+                _period = t - firstSeen[code];
+                break;
+            }
+            firstSeen[code] = t;
+            if (t == states.length) {
+                states = Arrays.copyOf(states, 2 * t);
+            }
+            states[t] = code;
+            step(settings, scratch);
+            t += 1;
+        }
+        _states = Arrays.copyOf(states, t);
+    }
+
+    /** Return the settings of the moving rotors in SETTINGS as a single
+     *  number. */
+    private int pack(int[] settings) {
+        int code = 0;
+        for (int k = 0; k < _moving.length; k += 1) {
+            code = code * _size + settings[_moving[k]];
+        }
+        return code;
+    }
+
+    /** Store the settings of the moving rotors packed in CODE into
+     *  SETTINGS. */
+    private void unpack(int code, int[] settings) {
+        for (int k = _moving.length - 1; k >= 0; k -= 1) {
+            settings[_moving[k]] = code % _size;
+            code /= _size;
+        }
+    }
+
+    /** Largest number of moving-rotor states for which the sequence of
+     *  settings is recorded. */
+    static final long TRAJECTORY_LIMIT = 1 << 20;
+
+    /** Initial capacity of the recorded sequence. */
+    private static final int INITIAL_STATES = 1 << 10;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Starting settings of each slot. */
+    private final int[] _start;
+
+    /** Whether each slot can move. */
+    private final boolean[] _rotates;
+
+    /** Notches of each slot, indexed by setting. */
+    private final boolean[][] _notch;
+
+    /** _gaps[p] is the number of keypresses, from setting p, before the
+     *  rightmost slot reaches a notch (or the alphabet size, if it has
+     *  none). */
+    private final int[] _gaps;
+
+    /** Indices of the slots that can move. */
+    private final int[] _moving;
+
+    /** Packed settings after each keypress, or null. */
+    private int[] _states;
+
+    /** Length of the tail before the cycle. */
+    private long _tail;
+
+    /** Length of the cycle. */
+    private long _period;
+}
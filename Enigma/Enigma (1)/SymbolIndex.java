@@ -0,0 +1,112 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A constant-time map from the symbols (code points) of an alphabet to
+ *  their indices.  Symbols drawn from a small range are looked up in a
+ *  directly indexed table; sparse or supplementary symbols go through an
+ *  open-addressed hash table of primitive ints.  Instances are immutable.
+ *  @author Bon Hee Koo
+ */
+final class SymbolIndex {
+
+    /** An index mapping SYMBOLS[k] to k.  No symbol may be duplicated. */
+    SymbolIndex(int[] symbols) {
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int s : symbols) {
+            min = Math.min(min, s);
+            max = Math.max(max, s);
+        }
+        long span = symbols.length == 0 ? 0 : (long) max - min + 1;
+        if (span <= Math.max(DIRECT_SPAN, DENSITY * symbols.length)) {
+            _base = symbols.length == 0 ? 0 : min;
+            _direct = new int[(int) span];
+            Arrays.fill(_direct, -1);
+            _keys = _values = null;
+            _mask = _shift = 0;
+            for (int k = 0; k < symbols.length; k += 1) {
+                int i = symbols[k] - _base;
+                if (_direct[i] >= 0) {
+                    throw duplicate(symbols[k]);
+                }
+                _direct[i] = k;
+            }
+        } else {
+            int capacity = Integer.highestOneBit(symbols.length * 2 - 1) << 1;
+            _base = 0;
+            _direct = null;
+            _keys = new int[capacity];
+            _values = new int[capacity];
+            _mask = capacity - 1;
+            _shift = Integer.numberOfLeadingZeros(capacity) + 1;
+            Arrays.fill(_keys, EMPTY);
+            for (int k = 0; k < symbols.length; k += 1) {
+                int slot = slot(symbols[k]);
+                if (_keys[slot] != EMPTY) {
+                    throw duplicate(symbols[k]);
+                }
+                _keys[slot] = symbols[k];
+                _values[slot] = k;
+            }
+        }
+    }
+
+    /** Return the index of SYMBOL, or -1 if it is not indexed. */
+    int get(int symbol) {
+        if (_direct != null) {
+            int i = symbol - _base;
+            return i >= 0 && i < _direct.length ? _direct[i] : -1;
+        }
+        int slot = slot(symbol);
+        return _keys[slot] == symbol ? _values[slot] : -1;
+    }
+
+    /** Return the slot of the hash table that holds SYMBOL, or the empty
+     *  slot where it would be placed. */
+    private int slot(int symbol) {
+        int slot = (symbol * HASH_MULTIPLIER) >>> _shift;
+        while (_keys[slot] != EMPTY && _keys[slot] != symbol) {
+            slot = (slot + 1) & _mask;
+        }
+        return slot;
+    }
+
+    /** Return the error for duplicated SYMBOL. */
+    private static EnigmaException duplicate(int symbol) {
+        return error("duplicate character in alphabet: %s",
+                     new String(Character.toChars(symbol)));
+    }
+
+    /** Largest symbol range always handled by a direct table. */
+    static final int DIRECT_SPAN = 1 << 12;
+
+    /** Direct tables are also used when they are at most this many times
+     *  larger than the alphabet. */
+    static final int DENSITY = 4;
+
+    /** Fibonacci hashing multiplier. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /** Marks an unused hash table slot; code points are never negative. */
+    private static final int EMPTY = -1;
+
+    /** Smallest symbol in the direct table. */
+    private final int _base;
+
+    /** Direct table from symbol - _base to index, or -1. */
+    private final int[] _direct;
+
+    /** Hash table keys. */
+    private final int[] _keys;
+
+    /** Hash table values. */
+    private final int[] _values;
+
+    /** Hash table size - 1. */
+    private final int _mask;
+
+    /** Shift that reduces a hash to a slot number. */
+    private final int _shift;
+}
@@ -11,7 +11,23 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      AlphabetTest.class,
+                                      MachineTest.class,
+                                      ConfigSnapshotTest.class,
+                                      MachineCacheTest.class,
+                                      MetricsTest.class,
+                                      EnigmaServerTest.class,
+                                      BatchMachineTest.class,
+                                      GroupWriterTest.class,
+                                      MovingRotorTest.class,
+                                      ByteConverterTest.class,
+                                      EnigmaStreamTest.class,
+                                      EnigmaProcessorTest.class,
+                                      SessionStoreTest.class,
+                                      BombeTest.class,
+                                      InputTokenizerTest.class,
+                                      MappedOutputChannelTest.class,
+                                      SectionSchedulerTest.class));
     }
 
 }
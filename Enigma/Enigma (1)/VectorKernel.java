@@ -0,0 +1,121 @@
+package enigma;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A BatchMachine kernel that converts a vector of a group's lanes at a
+ *  time with the Vector API.  The lanes of a group share their rotors'
+ *  wirings, so each rotor is a register holding its permutation: a lane
+ *  at setting s takes c to W[(c + s) mod n] - s mod n, which is a lane-wise
+ *  add, a table lookup (selectFrom) and a subtract.  Settings advance
+ *  under masks.  Lanes left over from whole vectors, the ends of longer
+ *  messages, and alphabets too large for one register are converted by
+ *  the batch's scalar loop.  This is the only class that uses the
+ *  (incubating) Vector API; BatchMachine loads it by name only when the
+ *  jdk.incubator.vector module is present.
+ *  @author Bon Hee Koo
+ */
+final class VectorKernel implements BatchMachine.Kernel {
+
+    @Override
+    public void convert(BatchMachine batch, int g, byte[] in, byte[] out,
+                        int[] lengths) {
+        int start = batch.groupStart(g);
+        int end = batch.groupEnd(g);
+        int n = batch.alphabetSize();
+        int width = SPECIES.length();
+        if (n > width) {
+            batch.convertScalar(g, start, end, in, out, lengths, 0);
+            return;
+        }
+        int r = batch.numRotors();
+        int last = r - 1;
+        int lanes = batch.lanes();
+        byte[] settings = batch.settingArray();
+        byte[] forward = new byte[r * width];
+        byte[] backward = new byte[r * width];
+        byte[] notches = new byte[r * width];
+        boolean[] carries = new boolean[r];
+        for (int k = 0; k < r; k += 1) {
+            RotorWiring wiring = batch.wiring(g, k);
+            for (int p = 0; p < n; p += 1) {
+                forward[k * width + p] =
+                    (byte) wiring.permutation().permute(p);
+                backward[k * width + p] =
+                    (byte) wiring.permutation().invert(p);
+                notches[k * width + p] = (byte) (wiring.notchAt(p) ? 1 : 0);
+            }
+            carries[k] = k >= 2 && batch.rotates(g, k - 1);
+        }
+        VectorMask<Byte> fast = batch.rotates(g, last) ? ALL : NONE;
+        int col;
+        for (col = start; col + width <= end; col += width) {
+            int steps = Integer.MAX_VALUE;
+            for (int l = col; l < col + width; l += 1) {
+                steps = Math.min(steps, lengths[l]);
+            }
+            for (int t = 0; t < steps; t += 1) {
+                VectorMask<Byte> fromRight = fast;
+                for (int k = last; k >= 0; k -= 1) {
+                    int i = k * lanes + col;
+                    ByteVector set =
+                        ByteVector.fromArray(SPECIES, settings, i);
+                    VectorMask<Byte> carry = NONE;
+                    if (carries[k]) {
+                        carry = set.selectFrom(ByteVector.fromArray(
+                            SPECIES, notches, k * width))
+                            .compare(VectorOperators.NE, 0);
+                    }
+                    VectorMask<Byte> advance = carry.or(fromRight);
+                    if (advance.anyTrue()) {
+                        ByteVector next = set.add((byte) 1, advance);
+                        next.blend((byte) 0,
+                                   next.compare(VectorOperators.EQ, n))
+                            .intoArray(settings, i);
+                    }
+                    fromRight = carry;
+                }
+                ByteVector c = ByteVector.fromArray(SPECIES, in,
+                                                    t * lanes + col);
+                for (int k = last; k >= 0; k -= 1) {
+                    c = substitute(c, settings, k * lanes + col, forward,
+                                   k * width, n);
+                }
+                for (int k = 1; k < r; k += 1) {
+                    c = substitute(c, settings, k * lanes + col, backward,
+                                   k * width, n);
+                }
+                c.intoArray(out, t * lanes + col);
+            }
+            batch.convertScalar(g, col, col + width, in, out, lengths,
+                                steps);
+        }
+        batch.convertScalar(g, col, end, in, out, lengths, 0);
+    }
+
+    /** Return the substitution of C by the permutation at WIRING[OFF ..]
+     *  of a rotor at the settings at SETTINGS[I ..], in an alphabet of N
+     *  characters. */
+    private static ByteVector substitute(ByteVector c, byte[] settings,
+                                         int i, byte[] wiring, int off,
+                                         int n) {
+        ByteVector set = ByteVector.fromArray(SPECIES, settings, i);
+        ByteVector x = c.add(set);
+        x = x.sub((byte) n, x.compare(VectorOperators.GE, n));
+        ByteVector y = x.selectFrom(ByteVector.fromArray(SPECIES, wiring,
+                                                         off)).sub(set);
+        return y.add((byte) n, y.compare(VectorOperators.LT, 0));
+    }
+
+    /** Shape of the vectors used. */
+    private static final VectorSpecies<Byte> SPECIES =
+        ByteVector.SPECIES_PREFERRED;
+
+    /** A mask selecting all lanes. */
+    private static final VectorMask<Byte> ALL = SPECIES.maskAll(true);
+
+    /** A mask selecting no lanes. */
+    private static final VectorMask<Byte> NONE = SPECIES.maskAll(false);
+}
@@ -0,0 +1,165 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Generates configurations with random rotor wirings, for alphabets
+ *  (such as the byte alphabet) too large to be worth wiring by hand.  A
+ *  configuration has MOVING moving rotors named M0, M1, ..., each with
+ *  one to MAX_NOTCHES notches, two fixed rotors F0 and F1, and two
+ *  reflectors R0 and R1, for a machine of SLOTS slots, the last PAWLS of
+ *  which hold moving rotors.  Since the wirings are part of the key,
+ *  generators should be given a cryptographically strong source of
+ *  random numbers unless the configuration need only be repeatable.
+ *  @author Bon Hee Koo
+ */
+final class WiringGenerator {
+
+    /** A generator that draws its choices from RANDOM. */
+    WiringGenerator(Random random) {
+        _random = random;
+    }
+
+    /** Return a configuration over ALPHABET, which must have an even
+     *  number of characters, with rotors as described in the class
+     *  comment. */
+    ConfigSnapshot generate(Alphabet alphabet) {
+        int n = alphabet.size();
+        if (n < 2 || n % 2 != 0) {
+            throw error("reflectors need an alphabet of even size");
+        }
+        List<Rotor> rotors = new ArrayList<>();
+        for (int i = 0; i < MOVING; i += 1) {
+            StringBuilder notches = new StringBuilder();
+            int[] order = shuffled(n);
+            int count = 1 + _random.nextInt(MAX_NOTCHES);
+            for (int k = 0; k < count; k += 1) {
+                notches.appendCodePoint(alphabet.toCodePoint(order[k]));
+            }
+            rotors.add(new MovingRotor("M" + i, permutation(alphabet,
+                                                             shuffled(n)),
+                                       notches.toString()));
+        }
+        for (int i = 0; i < 2; i += 1) {
+            rotors.add(new FixedRotor("F" + i,
+                                      permutation(alphabet, shuffled(n))));
+        }
+        for (int i = 0; i < 2; i += 1) {
+            rotors.add(new Reflector("R" + i, permutation(alphabet,
+                                                           pairs(n, n / 2))));
+        }
+        return new ConfigSnapshot(alphabet, SLOTS, PAWLS, rotors);
+    }
+
+    /** Return a random key for a configuration generated by generate(),
+     *  in the notation of Main's --bytes option: rotor names, then each
+     *  rotor's setting as two hexadecimal digits, then a plugboard of
+     *  disjoint 2-cycles written in hexadecimal.  The alphabet must be
+     *  the byte alphabet. */
+    String byteKey() {
+        StringBuilder key = new StringBuilder();
+        key.append("R").append(_random.nextInt(2));
+        key.append(" F").append(_random.nextInt(2));
+        int[] moving = shuffled(MOVING);
+        for (int k = 0; k < PAWLS; k += 1) {
+            key.append(" M").append(moving[k]);
+        }
+        key.append(' ');
+        for (int k = 1; k < SLOTS; k += 1) {
+            key.append(String.format("%02X", _random.nextInt(
+                Alphabet.BYTES)));
+        }
+        int[] plugs = pairs(Alphabet.BYTES, PLUGS);
+        boolean[] done = new boolean[Alphabet.BYTES];
+        for (int c = 0; c < Alphabet.BYTES; c += 1) {
+            if (plugs[c] != c && !done[c]) {
+                done[c] = done[plugs[c]] = true;
+                key.append(String.format(" (%02X%02X)", c, plugs[c]));
+            }
+        }
+        return key.toString();
+    }
+
+    /** Return the permutation of ALPHABET taking each index i to
+     *  FORWARD[i]. */
+    private static Permutation permutation(Alphabet alphabet,
+                                           int[] forward) {
+        return new Permutation(cycles(alphabet, forward), alphabet,
+                               forward);
+    }
+
+    /** Return FORWARD, a permutation of the indices of ALPHABET, in cycle
+     *  notation, with each character written as its code point in
+     *  hexadecimal if ALPHABET is the byte alphabet. */
+    static String cycles(Alphabet alphabet, int[] forward) {
+        boolean hex = alphabet.isBytes();
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[forward.length];
+        for (int i = 0; i < forward.length; i += 1) {
+            if (!seen[i]) {
+                result.append('(');
+                for (int c = i; !seen[c]; c = forward[c]) {
+                    seen[c] = true;
+                    if (hex) {
+                        result.append(String.format("%02X", c));
+                    } else {
+                        result.appendCodePoint(alphabet.toCodePoint(c));
+                    }
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of 0 .. N-1. */
+    private int[] shuffled(int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = i;
+        }
+        for (int i = n - 1; i > 0; i -= 1) {
+            int j = _random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return a random permutation of 0 .. N-1 made of COUNT disjoint
+     *  2-cycles, where 2 * COUNT <= N. */
+    private int[] pairs(int n, int count) {
+        int[] order = shuffled(n);
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = i;
+        }
+        for (int k = 0; k < count; k += 1) {
+            result[order[2 * k]] = order[2 * k + 1];
+            result[order[2 * k + 1]] = order[2 * k];
+        }
+        return result;
+    }
+
+    /** Number of moving rotors. */
+    static final int MOVING = 8;
+
+    /** Largest number of notches on a moving rotor. */
+    static final int MAX_NOTCHES = 2;
+
+    /** Number of rotor slots. */
+    static final int SLOTS = 5;
+
+    /** Number of pawls. */
+    static final int PAWLS = 3;
+
+    /** Number of 2-cycles in a generated plugboard. */
+    static final int PLUGS = 32;
+
+    /** Source of random choices. */
+    private final Random _random;
+}
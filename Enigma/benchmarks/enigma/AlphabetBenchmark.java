@@ -0,0 +1,62 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Alphabet.toInt, per character looked up.
+ *  @author Bon Hee Koo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlphabetBenchmark {
+
+    /** Number of characters looked up per invocation. */
+    static final int CHARS = 1024;
+
+    /** Size of the alphabet. */
+    @Param({ "26", "64", "256" })
+    public int size;
+
+    /** Build the alphabet and the characters to look up. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        _alphabet = BenchmarkData.alphabet(size);
+        _chars = BenchmarkData.message(_alphabet, CHARS, random)
+            .toCharArray();
+    }
+
+    /** Look up each of _chars, returning the sum of their indices. */
+    @Benchmark
+    @OperationsPerInvocation(CHARS)
+    public int toInt() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _alphabet.toInt(c);
+        }
+        return sum;
+    }
+
+    /** The alphabet. */
+    private Alphabet _alphabet;
+
+    /** Characters to look up. */
+    private char[] _chars;
+}
@@ -0,0 +1,119 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Random alphabets, wirings, machines and messages for the benchmarks.
+ *  Everything is drawn from a Random with a fixed seed, so that each run
+ *  of a benchmark measures the same work.
+ *  @author Bon Hee Koo
+ */
+final class BenchmarkData {
+
+    /** Seed of the random numbers used. */
+    static final long SEED = 61;
+
+    /** Return an alphabet of SIZE characters: upper-case letters, then
+     *  digits, then CJK ideographs, none of which changes case. */
+    static Alphabet alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            if (i < 26) {
+                chars.append((char) ('A' + i));
+            } else if (i < 36) {
+                chars.append((char) ('0' + i - 26));
+            } else {
+                chars.append((char) (FIRST_IDEOGRAPH + i - 36));
+            }
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return a random permutation of ALPHABET, chosen using RANDOM. */
+    static Permutation permutation(Alphabet alphabet, Random random) {
+        List<Integer> images = shuffled(alphabet.size(), random);
+        int[] forward = new int[images.size()];
+        for (int i = 0; i < forward.length; i += 1) {
+            forward[i] = images.get(i);
+        }
+        return new Permutation("", alphabet, forward);
+    }
+
+    /** Return a random permutation of ALPHABET, which must have an even
+     *  size, made of 2-cycles only, chosen using RANDOM. */
+    static Permutation reflection(Alphabet alphabet, Random random) {
+        List<Integer> order = shuffled(alphabet.size(), random);
+        int[] forward = new int[order.size()];
+        for (int i = 0; i < forward.length; i += 2) {
+            forward[order.get(i)] = order.get(i + 1);
+            forward[order.get(i + 1)] = order.get(i);
+        }
+        return new Permutation("", alphabet, forward);
+    }
+
+    /** Return a machine over an alphabet of SIZE characters (an even
+     *  number) with NUMROTORS >= 3 slots: a reflector, a fixed rotor and
+     *  NUMROTORS - 2 moving rotors with one notch each.  Its rotors,
+     *  settings and plugboard are chosen using RANDOM.  It converts
+     *  through its rotors on every keypress: its state table budget is 0
+     *  and it has no inner cache, unless the caller changes them. */
+    static Machine machine(int size, int numRotors, Random random) {
+        Alphabet alphabet = alphabet(size);
+        List<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        names[0] = "R";
+        rotors.add(new Reflector("R", reflection(alphabet, random)));
+        names[1] = "F";
+        rotors.add(new FixedRotor("F", permutation(alphabet, random)));
+        for (int k = 2; k < numRotors; k += 1) {
+            names[k] = "M" + k;
+            String notch =
+                String.valueOf(alphabet.toChar(random.nextInt(size)));
+            rotors.add(new MovingRotor(names[k],
+                                       permutation(alphabet, random),
+                                       notch));
+        }
+        Machine result =
+            new Machine(alphabet, numRotors, numRotors - 2, rotors);
+        result.insertRotors(names);
+        result.setRotors(message(alphabet, numRotors - 1, random));
+        result.setPlugboard(permutation(alphabet, random));
+        result.setStateBudget(0);
+        return result;
+    }
+
+    /** Return a random message of LENGTH characters of ALPHABET, chosen
+     *  using RANDOM. */
+    static String message(Alphabet alphabet, int length, Random random) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = alphabet.toChar(random.nextInt(alphabet.size()));
+        }
+        return new String(result);
+    }
+
+    /** Return random indices of ALPHABET for a message of LENGTH
+     *  characters, chosen using RANDOM. */
+    static int[] indices(Alphabet alphabet, int length, Random random) {
+        int[] result = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = random.nextInt(alphabet.size());
+        }
+        return result;
+    }
+
+    /** Return 0 .. N-1 in an order chosen using RANDOM. */
+    private static List<Integer> shuffled(int n, Random random) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            result.add(i);
+        }
+        Collections.shuffle(result, random);
+        return result;
+    }
+
+    /** The first character used past the letters and digits. */
+    private static final char FIRST_IDEOGRAPH = '\u4e00';
+}
@@ -0,0 +1,100 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of writing a message line in groups of five, alone and as
+ *  Main.printMessageLine does it: converting the line a chunk at a time
+ *  and writing each chunk through a GroupWriter.  Output is encoded but
+ *  then discarded, and is flushed at the end of each line.
+ *  @author Bon Hee Koo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+
+    /** A channel that accepts and ignores everything written to it. */
+    private static final class Discard implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Number of characters in the message line. */
+    @Param({ "16", "1024", "65536" })
+    public int length;
+
+    /** Build the machine, message and writer. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        _machine = BenchmarkData.machine(26, 5, random);
+        _message = BenchmarkData.message(_machine.alphabet(), length,
+                                         random).toCharArray();
+        _chunk = new char[Main.CHUNK_SIZE];
+        _output = new GroupWriter(new Discard());
+    }
+
+    /** Write the message line in groups of five. */
+    @Benchmark
+    public void groups() {
+        _output.write(_message, 0, _message.length);
+        _output.endLine();
+        _output.flush();
+    }
+
+    /** Convert and write the message line a chunk at a time. */
+    @Benchmark
+    public void printMessageLine() {
+        for (int p = 0; p < _message.length; p += _chunk.length) {
+            int len = Math.min(_chunk.length, _message.length - p);
+            System.arraycopy(_message, p, _chunk, 0, len);
+            int n = _machine.convert(_chunk, 0, len, _chunk, 0);
+            _output.write(_chunk, 0, n);
+        }
+        _output.endLine();
+        _output.flush();
+    }
+
+    /** The machine converting the message. */
+    private Machine _machine;
+
+    /** The message line. */
+    private char[] _message;
+
+    /** Buffer for a chunk of the line. */
+    private char[] _chunk;
+
+    /** Destination of the formatted line. */
+    private GroupWriter _output;
+}
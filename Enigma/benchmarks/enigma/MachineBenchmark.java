@@ -0,0 +1,80 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Machine.convert(int) and Machine.convert(String), per
+ *  message converted.  The machine converts through its rotors (see
+ *  BenchmarkData.machine), and is not reset between messages, so its
+ *  rotors keep advancing as they would over a long section.
+ *  @author Bon Hee Koo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBenchmark {
+
+    /** Size of the machine's alphabet. */
+    @Param({ "26", "64", "256" })
+    public int size;
+
+    /** Number of rotor slots. */
+    @Param({ "3", "5", "8" })
+    public int rotors;
+
+    /** Number of characters in the message. */
+    @Param({ "16", "1024", "65536" })
+    public int length;
+
+    /** Build the machine and the message to convert. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        _machine = BenchmarkData.machine(size, rotors, random);
+        _message = BenchmarkData.message(_machine.alphabet(), length,
+                                         random);
+        _indices = BenchmarkData.indices(_machine.alphabet(), length,
+                                         random);
+    }
+
+    /** Convert the message's indices one keypress at a time, returning
+     *  the sum of the results. */
+    @Benchmark
+    public int convertInt() {
+        int sum = 0;
+        for (int c : _indices) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Convert the message as a string. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** The machine. */
+    private Machine _machine;
+
+    /** Message to convert as a string. */
+    private String _message;
+
+    /** Message to convert as indices. */
+    private int[] _indices;
+}
@@ -0,0 +1,464 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/** End-to-end throughput harness.  Generates each Workload's
+ *  configuration and input, runs them through Main in each mode, and
+ *  reports input MB/s, the median and 99th percentile section latency
+ *  (from Metrics.SECTION_NANOS) and the peak heap of each, as JSON.
+ *  Given a baseline report, it also flags every result that is worse
+ *  than the baseline's by more than a tolerance, and then exits with
+ *  code 1.
+ *
+ *  Each run is made in a fresh JVM, started with the harness's own JVM
+ *  options and class path, so that no run inherits the compiled code or
+ *  the heap of another, and results do not depend on the order of
+ *  workloads and modes.  The child times Main and reads its own heap
+ *  and Metrics, and reports them to the harness on its standard output.
+ *  A run that fails (for example, because Main reports an error) is
+ *  reported as such; the other results are still written, and the
+ *  harness then exits with code 1.
+ *  Options:
+ *    --scale=F        Multiply the sizes of the workloads by F (default
+ *                     1; 16 makes single-message 4G characters).
+ *    --runs=N         Run each workload N times, reporting the run of
+ *                     median throughput (default 3).
+ *    --warmups=N      In each run's JVM, convert the workload N times
+ *                     before the measured conversion (default 0, which
+ *                     measures a cold start, as from the command line).
+ *    --workloads=A,B  Run only the workloads named A, B, ....
+ *    --modes=A,B      Run only the modes named A, B, ... (serial,
+ *                     parallel, specialize).
+ *    --dir=DIR        Generate files in DIR (default: a new temporary
+ *                     directory, deleted afterwards).
+ *    --report=FILE    Write the report to FILE rather than the standard
+ *                     output.
+ *    --baseline=FILE  Compare the results with the report in FILE.
+ *    --tolerance=T    Flag throughput below 1 - T times the baseline's,
+ *                     and latency or heap above 1 + T times the
+ *                     baseline's (default 0.1).
+ *  @author Bon Hee Koo
+ */
+public final class MacroHarness {
+
+    /** One run of a workload in a mode. */
+    private static final class Result {
+        /** Name of the workload. */
+        private String _workload;
+        /** Name of the mode. */
+        private String _mode;
+        /** Measured values, by name, in report order. */
+        private final Map<String, Double> _values = new HashMap<>();
+
+        /** Return the key identifying my workload and mode. */
+        String key() {
+            return _workload + "/" + _mode;
+        }
+    }
+
+    /** Run the harness with options ARGS (see the class comment). */
+    public static void main(String... args) throws IOException {
+        if (args.length > 0 && args[0].equals(CHILD)) {
+            child(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        MacroHarness harness = new MacroHarness();
+        for (String arg : args) {
+            harness.setOption(arg);
+        }
+        System.exit(harness.run() ? 0 : 1);
+    }
+
+    /** Record the option ARG. */
+    private void setOption(String arg) {
+        String[] parts = arg.split("=", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("bad option " + arg);
+        }
+        String value = parts[1];
+        switch (parts[0]) {
+        case "--scale":
+            _scale = Double.parseDouble(value);
+            break;
+        case "--runs":
+            _runs = Integer.parseInt(value);
+            break;
+        case "--warmups":
+            _warmups = Integer.parseInt(value);
+            break;
+        case "--workloads":
+            _workloads = Arrays.asList(value.split(","));
+            break;
+        case "--modes":
+            _modes = Arrays.asList(value.split(","));
+            for (String mode : _modes) {
+                if (!MODES.containsKey(mode)) {
+                    throw new IllegalArgumentException("unknown mode "
+                                                       + mode);
+                }
+            }
+            break;
+        case "--dir":
+            _dir = Paths.get(value);
+            break;
+        case "--report":
+            _report = Paths.get(value);
+            break;
+        case "--baseline":
+            _baseline = Paths.get(value);
+            break;
+        case "--tolerance":
+            _tolerance = Double.parseDouble(value);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown option " + arg);
+        }
+    }
+
+    /** Run every selected workload in every selected mode, write the
+     *  report and compare it with the baseline, if any.  Returns false
+     *  iff there was a regression. */
+    private boolean run() throws IOException {
+        boolean temporary = _dir == null;
+        Path dir = temporary ? Files.createTempDirectory("enigma-macro")
+            : Files.createDirectories(_dir);
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Workload workload : Workload.standard(_scale)) {
+                if (_workloads != null
+                    && !_workloads.contains(workload.name())) {
+                    continue;
+                }
+                Path config = dir.resolve(workload.name() + ".conf");
+                Path input = dir.resolve(workload.name() + ".in");
+                Path output = dir.resolve(workload.name() + ".out");
+                System.err.printf("generating %s%n", workload.name());
+                workload.write(new Random(SEED), config, input);
+                for (String mode : _modes) {
+                    Result r = measure(workload, mode, config, input,
+                                       output);
+                    if (r != null) {
+                        results.add(r);
+                    }
+                }
+                Files.deleteIfExists(input);
+                Files.deleteIfExists(output);
+                Files.deleteIfExists(config);
+            }
+        } finally {
+            if (temporary) {
+                try (Stream<Path> files = Files.list(dir)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                Files.deleteIfExists(dir);
+            }
+        }
+        String json = toJson(results);
+        if (_report == null) {
+            System.out.print(json);
+        } else {
+            Files.write(_report, json.getBytes(StandardCharsets.UTF_8));
+        }
+        boolean ok = _failures.isEmpty();
+        for (String failure : _failures) {
+            System.err.printf("%s: FAILED%n", failure);
+        }
+        if (_baseline == null) {
+            return ok;
+        }
+        return compare(results, parse(new String(
+            Files.readAllBytes(_baseline), StandardCharsets.UTF_8))) && ok;
+    }
+
+    /** Run WORKLOAD _runs times in MODE, each in a fresh JVM,
+     *  converting CONFIG and INPUT to OUTPUT, and return the run of
+     *  median throughput, or null if any run failed. */
+    private Result measure(Workload workload, String mode, Path config,
+                           Path input, Path output) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin",
+                              "java").toString());
+        for (String option
+                 : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!option.startsWith("-agentlib")
+                && !option.startsWith("-javaagent")) {
+                command.add(option);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MacroHarness.class.getName());
+        command.add(CHILD);
+        command.add(Integer.toString(_warmups));
+        command.addAll(MODES.get(mode));
+        command.add(config.toString());
+        command.add(input.toString());
+        command.add(output.toString());
+        long bytes = Files.size(input);
+        String key = workload.name() + "/" + mode;
+        List<Result> runs = new ArrayList<>();
+        for (int i = 0; i < _runs; i += 1) {
+            Map<String, Double> values = runChild(command);
+            if (values == null) {
+                _failures.add(key);
+                return null;
+            }
+            Result r = new Result();
+            r._workload = workload.name();
+            r._mode = mode;
+            r._values.putAll(values);
+            r._values.put("bytes", (double) bytes);
+            r._values.put("mbPerSecond",
+                          bytes / 1e6 / values.get("seconds"));
+            System.err.printf("%s: %.1f MB/s%n", r.key(),
+                              r._values.get("mbPerSecond"));
+            runs.add(r);
+        }
+        runs.sort((a, b) -> Double.compare(a._values.get("mbPerSecond"),
+                                           b._values.get("mbPerSecond")));
+        return runs.get(runs.size() / 2);
+    }
+
+    /** Run COMMAND, which starts a child (see child()), passing on its
+     *  standard error, and return the values it reports, or null if it
+     *  fails. */
+    private static Map<String, Double> runChild(List<String> command)
+        throws IOException {
+        Process process = new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        process.getOutputStream().close();
+        String report = new String(process.getInputStream().readAllBytes(),
+                                   StandardCharsets.UTF_8);
+        int status;
+        try {
+            status = process.waitFor();
+        } catch (InterruptedException excp) {
+            process.destroyForcibly();
+            throw new IOException("interrupted while measuring");
+        }
+        Map<String, Double> values = new HashMap<>();
+        for (String line : report.split("\n")) {
+            if (line.startsWith(CHILD_REPORT)) {
+                Matcher v = VALUE.matcher(line);
+                while (v.find()) {
+                    values.put(v.group(1), Double.parseDouble(v.group(2)));
+                }
+            }
+        }
+        if (status != 0 || !values.containsKey("seconds")) {
+            System.err.printf("run failed with exit code %d: %s%n",
+                              status, String.join(" ", command));
+            return null;
+        }
+        return values;
+    }
+
+    /** In a child JVM, convert with Main according to ARGS (the number of
+     *  warm-up conversions, then Main's arguments) after the warm-ups,
+     *  and print the time taken, the section latencies and the peak heap
+     *  of the measured conversion on the standard output.  If Main fails,
+     *  it exits with code 1, which the harness reports. */
+    private static void child(String[] args) {
+        int warmups = Integer.parseInt(args[0]);
+        String[] mainArgs = Arrays.copyOfRange(args, 1, args.length);
+        for (int i = 0; i < warmups; i += 1) {
+            Main.main(mainArgs);
+        }
+        System.gc();
+        for (MemoryPoolMXBean pool
+                 : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        Metrics.SECTION_NANOS.reset();
+        long start = System.nanoTime();
+        Main.main(mainArgs);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long peak = 0;
+        for (MemoryPoolMXBean pool
+                 : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.printf(Locale.ROOT,
+                          "%s \"seconds\": %.9f, \"sections\": %d, "
+                          + "\"sectionP50Micros\": %.3f, "
+                          + "\"sectionP99Micros\": %.3f, "
+                          + "\"peakHeapBytes\": %d%n",
+                          CHILD_REPORT, seconds,
+                          Metrics.SECTION_NANOS.count(),
+                          Metrics.SECTION_NANOS.quantile(0.5) / 1e3,
+                          Metrics.SECTION_NANOS.quantile(0.99) / 1e3, peak);
+        System.out.flush();
+    }
+
+    /** Return RESULTS as a JSON report, one result per line. */
+    private String toJson(List<Result> results) {
+        StringBuilder out = new StringBuilder();
+        out.append("{\n");
+        out.append(String.format("  \"java\": \"%s\",%n",
+                                 System.getProperty("java.version")));
+        out.append(String.format("  \"cores\": %d,%n",
+                                 Runtime.getRuntime().availableProcessors()));
+        out.append(String.format(Locale.ROOT, "  \"scale\": %s,%n",
+                                 _scale));
+        out.append("  \"results\": [\n");
+        for (int i = 0; i < results.size(); i += 1) {
+            Result r = results.get(i);
+            out.append(String.format("    {\"workload\": \"%s\", "
+                                     + "\"mode\": \"%s\"", r._workload,
+                                     r._mode));
+            for (String name : FIELDS) {
+                out.append(String.format(Locale.ROOT, ", \"%s\": %.3f",
+                                         name, r._values.get(name)));
+            }
+            out.append(i + 1 < results.size() ? "},\n" : "}\n");
+        }
+        out.append("  ]\n}\n");
+        return out.toString();
+    }
+
+    /** Return the results in REPORT, a report written by toJson, by
+     *  key. */
+    private static Map<String, Result> parse(String report) {
+        Map<String, Result> results = new HashMap<>();
+        for (String line : report.split("\n")) {
+            Matcher m = RESULT.matcher(line);
+            if (!m.find()) {
+                continue;
+            }
+            Result r = new Result();
+            r._workload = m.group(1);
+            r._mode = m.group(2);
+            Matcher v = VALUE.matcher(line);
+            while (v.find()) {
+                r._values.put(v.group(1), Double.parseDouble(v.group(2)));
+            }
+            results.put(r.key(), r);
+        }
+        return results;
+    }
+
+    /** Print a comparison of RESULTS with BASELINE on the standard error,
+     *  returning false iff any result is worse than its baseline by more
+     *  than _tolerance. */
+    private boolean compare(List<Result> results,
+                            Map<String, Result> baseline) {
+        PrintStream err = System.err;
+        boolean ok = true;
+        for (Result r : results) {
+            Result base = baseline.get(r.key());
+            if (base == null) {
+                err.printf("%s: no baseline%n", r.key());
+                continue;
+            }
+            ok &= check(err, r, base, "mbPerSecond", -1);
+            ok &= check(err, r, base, "sectionP99Micros", 1);
+            ok &= check(err, r, base, "peakHeapBytes", 1);
+        }
+        err.println(ok ? "no regressions" : "REGRESSIONS FOUND");
+        return ok;
+    }
+
+    /** Print the change in value NAME from BASE to R on ERR, where
+     *  SIGN is 1 if larger values are worse and -1 if smaller ones are.
+     *  Returns false iff the change is a regression of more than
+     *  _tolerance. */
+    private boolean check(PrintStream err, Result r, Result base,
+                          String name, int sign) {
+        Double was = base._values.get(name);
+        double now = r._values.get(name);
+        if (was == null || was == 0) {
+            return true;
+        }
+        double change = now / was - 1;
+        boolean ok = sign * change <= _tolerance;
+        err.printf(Locale.ROOT, "%-32s %-18s %12.1f -> %12.1f (%+.1f%%)%s%n",
+                   r.key(), name, was, now, 100 * change,
+                   ok ? "" : "  REGRESSION");
+        return ok;
+    }
+
+    /** First argument of a child JVM's harness (see child()). */
+    private static final String CHILD = "--child";
+
+    /** Start of the line on which a child reports its values. */
+    private static final String CHILD_REPORT = "macro-result";
+
+    /** Seed from which workloads are generated. */
+    private static final long SEED = 61;
+
+    /** Main's options for each mode. */
+    private static final Map<String, List<String>> MODES = new HashMap<>();
+
+    static {
+        MODES.put("serial", Arrays.asList());
+        MODES.put("parallel", Arrays.asList("--parallel"));
+        MODES.put("specialize", Arrays.asList("--specialize"));
+    }
+
+    /** Names of the values reported for each result, in order. */
+    private static final List<String> FIELDS =
+        Arrays.asList("bytes", "seconds", "mbPerSecond", "sections",
+                      "sectionP50Micros", "sectionP99Micros",
+                      "peakHeapBytes");
+
+    /** Matches the workload and mode of a result in a report. */
+    private static final Pattern RESULT = Pattern.compile(
+        "\"workload\": \"([^\"]*)\", \"mode\": \"([^\"]*)\"");
+
+    /** Matches a numeric value of a result in a report. */
+    private static final Pattern VALUE =
+        Pattern.compile("\"(\\w+)\": ([-0-9.eE+]+)");
+
+    /** Multiplier of workload sizes. */
+    private double _scale = 1;
+
+    /** Number of runs of each workload in each mode. */
+    private int _runs = 3;
+
+    /** Number of unmeasured conversions before each measured one. */
+    private int _warmups;
+
+    /** Keys of the workloads and modes whose runs failed. */
+    private final List<String> _failures = new ArrayList<>();
+
+    /** Names of the workloads to run, or null for all. */
+    private List<String> _workloads;
+
+    /** Names of the modes to run. */
+    private List<String> _modes = Arrays.asList("serial", "parallel");
+
+    /** Directory for generated files, or null for a temporary one. */
+    private Path _dir;
+
+    /** File for the report, or null for the standard output. */
+    private Path _report;
+
+    /** File holding the baseline report, or null. */
+    private Path _baseline;
+
+    /** Largest fractional change that is not a regression. */
+    private double _tolerance = 0.1;
+}
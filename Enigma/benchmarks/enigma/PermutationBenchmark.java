@@ -0,0 +1,74 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Permutation.permute and Permutation.invert, per index
+ *  converted.
+ *  @author Bon Hee Koo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBenchmark {
+
+    /** Number of indices converted per invocation. */
+    static final int INDICES = 1024;
+
+    /** Size of the permutation's alphabet. */
+    @Param({ "26", "64", "256" })
+    public int size;
+
+    /** Build the permutation and the indices to convert. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        Alphabet alphabet = BenchmarkData.alphabet(size);
+        _perm = BenchmarkData.permutation(alphabet, random);
+        _indices = BenchmarkData.indices(alphabet, INDICES, random);
+    }
+
+    /** Permute each of _indices, returning the sum of the results. */
+    @Benchmark
+    @OperationsPerInvocation(INDICES)
+    public int permute() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /** Invert each of _indices, returning the sum of the results. */
+    @Benchmark
+    @OperationsPerInvocation(INDICES)
+    public int invert() {
+        int sum = 0;
+        for (int c : _indices) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** The permutation. */
+    private Permutation _perm;
+
+    /** Indices to convert. */
+    private int[] _indices;
+}
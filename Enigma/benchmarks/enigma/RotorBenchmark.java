@@ -0,0 +1,81 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Rotor.convertForward and Rotor.convertBackward on a
+ *  moving rotor, per index converted.  The rotor advances after each
+ *  conversion, as it would in a machine whose fast rotor it was.
+ *  @author Bon Hee Koo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBenchmark {
+
+    /** Number of indices converted per invocation. */
+    static final int INDICES = 1024;
+
+    /** Size of the rotor's alphabet. */
+    @Param({ "26", "64", "256" })
+    public int size;
+
+    /** Build the rotor and the indices to convert. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchmarkData.SEED);
+        Alphabet alphabet = BenchmarkData.alphabet(size);
+        _rotor = new MovingRotor("M",
+                                 BenchmarkData.permutation(alphabet, random),
+                                 String.valueOf(alphabet.toChar(0)));
+        _indices = BenchmarkData.indices(alphabet, INDICES, random);
+    }
+
+    /** Convert each of _indices forward, returning the sum of the
+     *  results. */
+    @Benchmark
+    @OperationsPerInvocation(INDICES)
+    public int convertForward() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _rotor.convertForward(p);
+            _rotor.advance();
+        }
+        return sum;
+    }
+
+    /** Convert each of _indices backward, returning the sum of the
+     *  results. */
+    @Benchmark
+    @OperationsPerInvocation(INDICES)
+    public int convertBackward() {
+        int sum = 0;
+        for (int e : _indices) {
+            sum += _rotor.convertBackward(e);
+            _rotor.advance();
+        }
+        return sum;
+    }
+
+    /** The rotor. */
+    private Rotor _rotor;
+
+    /** Indices to convert. */
+    private int[] _indices;
+}
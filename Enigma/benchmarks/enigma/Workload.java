@@ -0,0 +1,235 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** A shape of input for Main: how many sections it has, how many message
+ *  lines each has and how long they are, and how many distinct settings
+ *  lines (the key sheet) the sections draw on.  A workload writes a
+ *  random configuration in the format of Tests/default.conf and a random
+ *  input of its shape, both determined by a seed.  Input is written as it
+ *  is generated, so it may be far larger than memory.
+ *  @author Bon Hee Koo
+ */
+final class Workload {
+
+    /** A workload named NAME of SECTIONS sections, each with LINES
+     *  message lines of up to LENGTH characters (exactly LENGTH iff
+     *  FIXED), drawing on a key sheet of KEYS settings lines. */
+    Workload(String name, long sections, int lines, long length,
+             boolean fixed, int keys) {
+        _name = name;
+        _sections = sections;
+        _lines = lines;
+        _length = length;
+        _fixed = fixed;
+        _keys = keys;
+    }
+
+    /** Return the standard workloads, with their sizes multiplied by
+     *  SCALE: many one-line sections with a large key sheet, a day's
+     *  traffic of assorted sections under a month's key sheet, a few long
+     *  lines, and one message of 256M characters. */
+    static List<Workload> standard(double scale) {
+        List<Workload> result = new ArrayList<>();
+        result.add(new Workload("tiny-sections", (long) (200000 * scale),
+                                1, 16, true, 1000));
+        result.add(new Workload("key-sheet-day", (long) (20000 * scale),
+                                20, 120, false, 31));
+        result.add(new Workload("long-lines", 16, 1,
+                                (long) ((1 << 22) * scale), true, 16));
+        result.add(new Workload("single-message", 1, 1,
+                                (long) ((1L << 28) * scale), true, 1));
+        return result;
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Write a random configuration to CONFIG and a random input of my
+     *  shape for it to INPUT, using RANDOM. */
+    void write(Random random, Path config, Path input) throws IOException {
+        List<String> moving = new ArrayList<>();
+        List<String> fixed = new ArrayList<>();
+        List<String> reflectors = new ArrayList<>();
+        int slots = 4 + random.nextInt(3);
+        try (Writer out = Files.newBufferedWriter(config,
+                                                  StandardCharsets.US_ASCII)) {
+            out.write(ALPHABET + "\n");
+            out.write(" " + slots + " " + (slots - 2) + "\n");
+            for (int i = 0; i < slots + 3; i += 1) {
+                String name = "M" + i;
+                moving.add(name);
+                int[] perm = shuffled(random);
+                String notches = "";
+                for (int k = 0; k < 1 + random.nextInt(3); k += 1) {
+                    char c = ALPHABET.charAt(random.nextInt(N));
+                    if (notches.indexOf(c) < 0) {
+                        notches += c;
+                    }
+                }
+                out.write(" " + name + " M" + notches + " " + cycles(perm)
+                          + "\n");
+            }
+            for (int i = 0; i < 2; i += 1) {
+                String name = "F" + i;
+                fixed.add(name);
+                out.write(" " + name + " N " + cycles(shuffled(random))
+                          + "\n");
+            }
+            for (int i = 0; i < 2; i += 1) {
+                String name = "R" + i;
+                reflectors.add(name);
+                out.write(" " + name + " R " + pairs(random, N / 2) + "\n");
+            }
+        }
+        String[] keys = new String[_keys];
+        for (int i = 0; i < _keys; i += 1) {
+            keys[i] = settingsLine(random, slots, moving, fixed, reflectors);
+        }
+        try (BufferedWriter out =
+             Files.newBufferedWriter(input, StandardCharsets.US_ASCII)) {
+            for (long s = 0; s < _sections; s += 1) {
+                out.write(keys[random.nextInt(_keys)]);
+                out.newLine();
+                for (int k = 0; k < _lines; k += 1) {
+                    long length = _fixed ? _length
+                        : 1 + (long) (random.nextDouble() * _length);
+                    writeMessage(random, out, length);
+                    out.newLine();
+                }
+            }
+        }
+    }
+
+    /** Return a random settings line for a machine of SLOTS slots, whose
+     *  rotors are drawn from MOVING, FIXED and REFLECTORS, using
+     *  RANDOM. */
+    private static String settingsLine(Random random, int slots,
+                                       List<String> moving,
+                                       List<String> fixed,
+                                       List<String> reflectors) {
+        List<String> order = new ArrayList<>(moving);
+        Collections.shuffle(order, random);
+        StringBuilder result = new StringBuilder("* ");
+        result.append(reflectors.get(random.nextInt(reflectors.size())));
+        result.append(' ');
+        result.append(fixed.get(random.nextInt(fixed.size())));
+        for (String name : order.subList(0, slots - 2)) {
+            result.append(' ').append(name);
+        }
+        result.append(' ');
+        for (int k = 1; k < slots; k += 1) {
+            result.append(ALPHABET.charAt(random.nextInt(N)));
+        }
+        String plugboard = pairs(random, random.nextInt(11));
+        if (!plugboard.isEmpty()) {
+            result.append(' ').append(plugboard);
+        }
+        return result.toString();
+    }
+
+    /** Write a random message of LENGTH letters to OUT in groups of five,
+     *  using RANDOM. */
+    private static void writeMessage(Random random, Writer out, long length)
+        throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        int n = 0;
+        for (long i = 0; i < length; i += 1) {
+            if (i > 0 && i % 5 == 0) {
+                buffer[n] = ' ';
+                n += 1;
+            }
+            buffer[n] = ALPHABET.charAt(random.nextInt(N));
+            n += 1;
+            if (n >= BUFFER_SIZE - 1) {
+                out.write(buffer, 0, n);
+                n = 0;
+            }
+        }
+        out.write(buffer, 0, n);
+    }
+
+    /** Return a random permutation of 0 .. N-1, chosen using RANDOM. */
+    private static int[] shuffled(Random random) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < N; i += 1) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+        int[] result = new int[N];
+        for (int i = 0; i < N; i += 1) {
+            result[i] = order.get(i);
+        }
+        return result;
+    }
+
+    /** Return PERM, a permutation of 0 .. N-1, in cycle notation. */
+    private static String cycles(int[] perm) {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[N];
+        for (int i = 0; i < N; i += 1) {
+            if (!seen[i]) {
+                result.append('(');
+                for (int c = i; !seen[c]; c = perm[c]) {
+                    seen[c] = true;
+                    result.append(ALPHABET.charAt(c));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return COUNT random disjoint 2-cycles of letters, separated by
+     *  blanks, chosen using RANDOM. */
+    private static String pairs(Random random, int count) {
+        int[] order = shuffled(random);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i += 1) {
+            if (i > 0) {
+                result.append(' ');
+            }
+            result.append('(').append(ALPHABET.charAt(order[2 * i]))
+                .append(ALPHABET.charAt(order[2 * i + 1])).append(')');
+        }
+        return result.toString();
+    }
+
+    /** The alphabet of generated configurations. */
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** Size of ALPHABET. */
+    private static final int N = ALPHABET.length();
+
+    /** Number of characters of a message written at a time. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** My name. */
+    private final String _name;
+
+    /** Number of sections. */
+    private final long _sections;
+
+    /** Number of message lines in each section. */
+    private final int _lines;
+
+    /** Length, or largest length, of each message line. */
+    private final long _length;
+
+    /** True iff every message line is _length characters long. */
+    private final boolean _fixed;
+
+    /** Number of distinct settings lines. */
+    private final int _keys;
+}